@@ -44,6 +44,30 @@ public final class CoreProcessVariables {
      */
     public static final String MACHINES = "machines";
 
+    /**
+     * The machines whose setup process ended. This is the list published for a pool
+     * once it becomes ready - the other machines can still join later on.
+     *
+     * @see org.apache.provisionr.core.activities.CheckProcessesEnded
+     */
+    public static final String READY_MACHINES = "readyMachines";
+
+    /**
+     * Flag set when at least expectedSize machines are ready. Extra machines launched
+     * as a hedge against slow instances can be dropped at that point.
+     *
+     * @see org.apache.provisionr.core.activities.CheckProcessesEnded
+     */
+    public static final String EXPECTED_MACHINES_READY = "expectedMachinesReady";
+
+    /**
+     * Estimated time saved by dropping the machines that were slower than the
+     * others, in seconds
+     *
+     * @see org.apache.provisionr.core.activities.RecordHedgeSavings
+     */
+    public static final String HEDGE_TIME_SAVED_IN_SECONDS = "hedgeTimeSavedInSeconds";
+
     /**
      * Pool status stored as process variable
      * <p/>
@@ -63,9 +87,27 @@ public final class CoreProcessVariables {
      */
     public static final String BOOTSTRAP_TIMEOUT = "bootstrapTimeout";
 
+    /**
+     * How long to wait for the remaining machines after the pool became ready with
+     * minSize machines. The machines still being set up are dropped after that.
+     *
+     * @see org.apache.provisionr.core.activities.DropStragglers
+     */
+    public static final String STRAGGLER_TIMEOUT = "stragglerTimeout";
+
     /**
      * Flag that indicates if the image the machines are being built from already has all its software
      * installed and there's no need to download and install the packages and files.
      */
     public static final String IS_CACHED_IMAGE = "isCachedImage";
+
+    /**
+     * Flag that indicates if repositories, files and packages should be installed by applying a single
+     * combined puppet manifest instead of running a separate step for each one of them.
+     * <p/>
+     * Enabled by default. Can be changed by using a software option with the same name.
+     *
+     * @see org.apache.provisionr.core.activities.InstallSoftware
+     */
+    public static final String SINGLE_PASS_SETUP = "singlePassSetup";
 }
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core;
+
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool registry stored in memory. Call {@link #rebuild()} on startup to load
+ * the pools that were already active before a restart.
+ */
+public class InMemoryPoolRegistry implements PoolRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryPoolRegistry.class);
+
+    private final RuntimeService runtimeService;
+    private final ConcurrentMap<String, RegisteredPool> pools = Maps.newConcurrentMap();
+    private final AtomicLong version = new AtomicLong();
+
+    public InMemoryPoolRegistry(RuntimeService runtimeService) {
+        this.runtimeService = checkNotNull(runtimeService, "runtimeService is null");
+    }
+
+    /**
+     * Load all the active pool management processes from the database. Entries
+     * updated by running processes in the meantime are not overwritten.
+     */
+    public void rebuild() {
+        int count = 0;
+        for (ProcessInstance instance : runtimeService.createProcessInstanceQuery().list()) {
+            Optional<RegisteredPool> pool = RegisteredPool.fromVariables(instance.getBusinessKey(),
+                instance.getId(), runtimeService.getVariables(instance.getId()));
+            if (pool.isPresent() && pools.putIfAbsent(instance.getBusinessKey(), pool.get()) == null) {
+                version.incrementAndGet();
+                count++;
+            }
+        }
+        LOG.info("Loaded {} active pools in the registry", count);
+    }
+
+    @Override
+    public Optional<RegisteredPool> get(String businessKey) {
+        return Optional.fromNullable(pools.get(checkNotNull(businessKey, "businessKey is null")));
+    }
+
+    @Override
+    public Collection<RegisteredPool> list() {
+        return ImmutableList.copyOf(pools.values());
+    }
+
+    @Override
+    public void put(RegisteredPool pool) {
+        if (!pool.equals(pools.put(pool.getBusinessKey(), pool))) {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void remove(String businessKey) {
+        if (pools.remove(checkNotNull(businessKey, "businessKey is null")) != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+}
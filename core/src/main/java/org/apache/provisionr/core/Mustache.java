@@ -21,7 +21,17 @@ package org.apache.provisionr.core;
 import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.MustacheFactory;
 import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
@@ -29,15 +39,80 @@ import java.io.StringReader;
 import java.io.Writer;
 import java.net.URL;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility functions for rendering mustache templates as strings
+ * <p/>
+ * Compiled templates are cached by resource URL. The rendered output is also
+ * memoized by (template, scopes) so that a manifest that does not depend on the
+ * machine is rendered only once for all the machines of a pool.
  */
 public final class Mustache {
 
+    public static final int MAX_TEMPLATE_CACHE_SIZE = 100;
+
+    public static final int MAX_RENDER_CACHE_SIZE = 500;
+    public static final int RENDER_CACHE_EXPIRE_AFTER_ACCESS_IN_MINUTES = 30;
+
     private Mustache() {
     }
 
+    /**
+     * Compiled templates by resource URL as string (URL.equals() does DNS lookups)
+     */
+    private static final Cache<String, com.github.mustachejava.Mustache> TEMPLATES = CacheBuilder.newBuilder()
+        .maximumSize(MAX_TEMPLATE_CACHE_SIZE)
+        .recordStats()
+        .build();
+
+    private static final LoadingCache<RenderKey, String> RENDERED = CacheBuilder.newBuilder()
+        .maximumSize(MAX_RENDER_CACHE_SIZE)
+        .expireAfterAccess(RENDER_CACHE_EXPIRE_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+        .recordStats()
+        .build(new CacheLoader<RenderKey, String>() {
+            @Override
+            public String load(RenderKey key) throws Exception {
+                return render(key.resource, key.scopes);
+            }
+        });
+
+    /**
+     * Cache key for rendered templates. Scopes are compared by value.
+     */
+    private static class RenderKey {
+
+        private final URL resource;
+        private final String resourceAsString;
+        private final Map<String, ?> scopes;
+
+        RenderKey(URL resource, Map<String, ?> scopes) {
+            this.resource = checkNotNull(resource, "resource is null");
+            this.resourceAsString = resource.toString();
+            this.scopes = ImmutableMap.copyOf(scopes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(resourceAsString, scopes);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final RenderKey other = (RenderKey) obj;
+            return Objects.equal(this.resourceAsString, other.resourceAsString)
+                && Objects.equal(this.scopes, other.scopes);
+        }
+    }
+
     public static String toString(Class<?> contextClass, String resource, Map<String, ?> scopes)
         throws IOException {
         return toString(Resources.getResource(contextClass, resource), scopes);
@@ -45,6 +120,9 @@ public final class Mustache {
 
     /**
      * Render a Mustache template as a String
+     * <p/>
+     * The scopes should only contain values with proper equals / hashCode implementations
+     * (strings, immutable collections) because they are used as keys for memoization.
      *
      * @param resource url to resource
      * @param scopes
@@ -52,17 +130,65 @@ public final class Mustache {
      * @throws IOException
      */
     public static String toString(URL resource, Map<String, ?> scopes) throws IOException {
+        try {
+            return RENDERED.get(new RenderKey(resource, scopes));
+
+        } catch (ExecutionException e) {
+            throw propagateIOException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Hit / miss counts for the compiled templates cache
+     */
+    public static CacheStats getTemplateCacheStats() {
+        return TEMPLATES.stats();
+    }
+
+    /**
+     * Hit / miss counts for the rendered output cache
+     */
+    public static CacheStats getRenderCacheStats() {
+        return RENDERED.stats();
+    }
+
+    /**
+     * Drop all compiled templates and rendered output
+     */
+    public static void invalidateAll() {
+        TEMPLATES.invalidateAll();
+        RENDERED.invalidateAll();
+    }
+
+    private static String render(final URL resource, Map<String, ?> scopes) throws IOException {
+        com.github.mustachejava.Mustache template;
+        try {
+            template = TEMPLATES.get(resource.toString(), new Callable<com.github.mustachejava.Mustache>() {
+                @Override
+                public com.github.mustachejava.Mustache call() throws Exception {
+                    String content = Resources.toString(resource, Charsets.UTF_8);
+
+                    MustacheFactory factory = new DefaultMustacheFactory();
+                    return factory.compile(new StringReader(content), resource.toString());
+                }
+            });
+        } catch (ExecutionException e) {
+            throw propagateIOException(e.getCause());
+        }
+
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         Writer writer = new OutputStreamWriter(outputStream, Charsets.UTF_8);
 
-        String content = Resources.toString(resource, Charsets.UTF_8);
-
-        MustacheFactory factory = new DefaultMustacheFactory();
-        factory.compile(new StringReader(content), resource.toString())
-            .execute(writer, scopes);
+        template.execute(writer, scopes);
 
         writer.close();
         return outputStream.toString("UTF-8");
     }
 
+    private static IOException propagateIOException(Throwable cause) throws IOException {
+        Throwables.propagateIfInstanceOf(cause, IOException.class);
+        throw Throwables.propagate(cause);
+    }
 }
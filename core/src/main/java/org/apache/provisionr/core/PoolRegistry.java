@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core;
+
+import com.google.common.base.Optional;
+import java.util.Collection;
+
+/**
+ * Read model for active pools. Kept up to date by the pool management processes
+ * so that status and machine lookups don't have to query the process variables.
+ */
+public interface PoolRegistry {
+
+    /**
+     * Find a pool by the business key of the pool management process
+     */
+    Optional<RegisteredPool> get(String businessKey);
+
+    /**
+     * All the active pools
+     */
+    Collection<RegisteredPool> list();
+
+    void put(RegisteredPool pool);
+
+    void remove(String businessKey);
+
+    /**
+     * Incremented every time the content of the registry changes. Can be used
+     * to invalidate data derived from the list of pools.
+     */
+    long getVersion();
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.provisionr.api.pool.Machine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Check if a port is open on many machines at the same time using
+ * non-blocking connects and a single selector
+ */
+public final class PortProber {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PortProber.class);
+
+    public static final int DEFAULT_TIMEOUT_IN_MILLISECONDS = 1000;
+
+    private PortProber() {
+        /* singleton */
+    }
+
+    public static boolean isPortOpen(Machine machine, int port, int timeoutInMillis) {
+        return probe(Collections.singletonList(machine), port, timeoutInMillis).get(machine);
+    }
+
+    /**
+     * Try to connect to the same port on all machines in one pass
+     *
+     * @return true for each machine that accepted the connection before the timeout expired
+     */
+    public static Map<Machine, Boolean> probe(Collection<Machine> machines, int port, int timeoutInMillis) {
+        checkNotNull(machines, "machines is null");
+        checkArgument(port > 0, "invalid port number");
+        checkArgument(timeoutInMillis > 0, "timeoutInMillis should be positive");
+
+        Map<Machine, Boolean> result = Maps.newLinkedHashMap();
+        for (Machine machine : machines) {
+            result.put(machine, false);
+        }
+
+        Selector selector = null;
+        try {
+            selector = Selector.open();
+
+            int pending = 0;
+            for (Machine machine : result.keySet()) {
+                if (startConnect(selector, machine, port, result)) {
+                    pending++;
+                }
+            }
+
+            final long deadline = System.currentTimeMillis() + timeoutInMillis;
+            while (pending > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                selector.select(remaining);
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    try {
+                        if (channel.finishConnect()) {
+                            result.put((Machine) key.attachment(), true);
+                        }
+                    } catch (IOException e) {
+                        LOG.debug("Connection failed for {}: {}", key.attachment(), e.getMessage());
+                    } finally {
+                        key.cancel();
+                        Closeables.closeQuietly(channel);
+                        pending--;
+                    }
+                }
+            }
+            return result;
+
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+
+        } finally {
+            if (selector != null) {
+                closeQuietly(selector);
+            }
+        }
+    }
+
+    /**
+     * @return true if the connection is still in progress and was registered with the selector
+     */
+    private static boolean startConnect(Selector selector, Machine machine, int port, Map<Machine, Boolean> result) {
+        SocketChannel channel = null;
+        try {
+            InetSocketAddress address = new InetSocketAddress(hostOf(machine), port);
+            if (address.isUnresolved()) {
+                return false;
+            }
+
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+
+            if (channel.connect(address)) {
+                result.put(machine, true);
+                Closeables.closeQuietly(channel);
+                return false;
+            }
+
+            channel.register(selector, SelectionKey.OP_CONNECT, machine);
+            return true;
+
+        } catch (IOException e) {
+            LOG.debug("Unable to connect to {}: {}", hostOf(machine), e.getMessage());
+            Closeables.closeQuietly(channel);
+            return false;
+        }
+    }
+
+    /**
+     * Prefer the public IP so that probing does not block on a DNS lookup
+     */
+    private static String hostOf(Machine machine) {
+        return Strings.isNullOrEmpty(machine.getPublicIp()) ? machine.getPublicDnsName() : machine.getPublicIp();
+    }
+
+    /**
+     * Close the selector and all the channels still registered with it
+     */
+    private static void closeQuietly(Selector selector) {
+        for (SelectionKey key : selector.keys()) {
+            Closeables.closeQuietly(key.channel());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close selector", e);
+        }
+    }
+}
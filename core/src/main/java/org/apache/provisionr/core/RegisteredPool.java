@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+
+/**
+ * Snapshot of the variables of a pool management process
+ */
+public class RegisteredPool {
+
+    /**
+     * Build a snapshot from process variables
+     *
+     * @return absent if this is not a pool management process (e.g. a machine setup process)
+     */
+    public static Optional<RegisteredPool> fromVariables(String businessKey, String processInstanceId,
+                                                         Map<String, Object> variables) {
+        Pool pool = (Pool) variables.get(CoreProcessVariables.POOL);
+        if (pool == null || businessKey == null
+            || !businessKey.equals(variables.get(CoreProcessVariables.POOL_BUSINESS_KEY))) {
+            return Optional.absent();
+        }
+
+        /* once setup starts only the machines that are ready are visible */
+        @SuppressWarnings("unchecked")
+        List<Machine> machines = (List<Machine>) (variables.containsKey(CoreProcessVariables.READY_MACHINES)
+            ? variables.get(CoreProcessVariables.READY_MACHINES)
+            : variables.get(CoreProcessVariables.MACHINES));
+
+        return Optional.of(new RegisteredPool(businessKey, processInstanceId, pool,
+            Optional.fromNullable((String) variables.get(CoreProcessVariables.STATUS)).or(PoolStatus.UNDEFINED),
+            Optional.fromNullable(machines).or(Collections.<Machine>emptyList())));
+    }
+
+    private final String businessKey;
+    private final String processInstanceId;
+    private final Pool pool;
+    private final String status;
+    private final List<Machine> machines;
+
+    public RegisteredPool(String businessKey, String processInstanceId, Pool pool,
+                          String status, List<Machine> machines) {
+        this.businessKey = checkNotNull(businessKey, "businessKey is null");
+        this.processInstanceId = checkNotNull(processInstanceId, "processInstanceId is null");
+        this.pool = checkNotNull(pool, "pool is null");
+        this.status = checkNotNull(status, "status is null");
+        this.machines = ImmutableList.copyOf(machines);
+    }
+
+    public String getBusinessKey() {
+        return businessKey;
+    }
+
+    public String getProcessInstanceId() {
+        return processInstanceId;
+    }
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public List<Machine> getMachines() {
+        return machines;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(businessKey, processInstanceId, pool, status, machines);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final RegisteredPool other = (RegisteredPool) obj;
+        return Objects.equal(this.businessKey, other.businessKey)
+            && Objects.equal(this.processInstanceId, other.processInstanceId)
+            && Objects.equal(this.pool, other.pool)
+            && Objects.equal(this.status, other.status)
+            && Objects.equal(this.machines, other.machines);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("businessKey", businessKey)
+            .add("processInstanceId", processInstanceId).add("status", status)
+            .add("machines", machines.size()).toString();
+    }
+}
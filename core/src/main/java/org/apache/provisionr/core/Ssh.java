@@ -20,10 +20,13 @@ package org.apache.provisionr.core;
 
 import com.google.common.base.Charsets;
 import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.base.Throwables;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
 import net.schmizz.sshj.SSHClient;
 import net.schmizz.sshj.common.SecurityUtils;
 import net.schmizz.sshj.connection.channel.direct.Session;
@@ -32,8 +35,7 @@ import net.schmizz.sshj.userauth.keyprovider.OpenSSHKeyFile;
 import net.schmizz.sshj.xfer.InMemorySourceFile;
 import org.apache.provisionr.api.access.AdminAccess;
 import org.apache.provisionr.api.pool.Machine;
-import org.apache.provisionr.core.logging.ErrorStreamLogger;
-import org.apache.provisionr.core.logging.InfoStreamLogger;
+import org.apache.provisionr.core.logging.StreamPumpingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
@@ -97,16 +99,71 @@ public final class Ssh {
         return client;
     }
 
+    /**
+     * Max amount of time to wait for the command output to be logged after the command ended
+     */
+    public static final int DEFAULT_OUTPUT_DRAIN_TIMEOUT = 30 * 1000; /* milliseconds */
+
     /**
      * Stream command output as log message for easy debugging
+     * <p/>
+     * Both streams are drained by the shared {@link StreamPumpingService}. Close the returned
+     * handle after the command ended to make sure all the output was logged.
      */
-    public static void logCommandOutput(Logger logger, String instanceId, Session.Command command) {
+    public static Closeable logCommandOutput(final Logger logger, String instanceId, Session.Command command) {
         final Marker marker = MarkerFactory.getMarker("ssh-" + instanceId);
+        final StreamPumpingService service = StreamPumpingService.getDefault();
+
+        StreamPumpingService.PumpedStream output = null;
+        try {
+            output = service.pump(command.getInputStream(),
+                new StreamPumpingService.LineHandler() {
+                    @Override
+                    public void handle(String line) {
+                        logger.info(marker, line);
+                    }
+                });
+            final StreamPumpingService.PumpedStream error = service.pump(command.getErrorStream(),
+                new StreamPumpingService.LineHandler() {
+                    @Override
+                    public void handle(String line) {
+                        logger.error(marker, line);
+                    }
+                });
+
+            final StreamPumpingService.PumpedStream registeredOutput = output;
+            return new Closeable() {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        long deadline = System.currentTimeMillis() + DEFAULT_OUTPUT_DRAIN_TIMEOUT;
+                        boolean drained = registeredOutput.finish(DEFAULT_OUTPUT_DRAIN_TIMEOUT, TimeUnit.MILLISECONDS)
+                            & error.finish(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                        if (!drained) {
+                            LOG.warn("Timeout while waiting for the output of {} to be logged", marker.getName());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for command output", e);
+                    }
+                }
+            };
+
+        } catch (InterruptedException e) {
+            if (output != null) {
+                finishQuietly(output);
+            }
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        }
+    }
 
-        new InfoStreamLogger(command.getInputStream(), logger, marker)
-            .start();
-        new ErrorStreamLogger(command.getErrorStream(), logger, marker)
-            .start();
+    private static void finishQuietly(StreamPumpingService.PumpedStream stream) {
+        try {
+            stream.finish(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
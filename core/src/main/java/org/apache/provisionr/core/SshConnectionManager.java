@@ -0,0 +1,389 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core;
+
+import com.google.common.base.Objects;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import net.schmizz.sshj.SSHClient;
+import org.apache.provisionr.api.access.AdminAccess;
+import org.apache.provisionr.api.pool.Machine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps authenticated {@code SSHClient} instances alive between activities so that all
+ * the steps executed on a machine can share a single connection
+ * <p/>
+ * Connections are keyed by machine and admin access credentials, checked before being
+ * handed out again and closed after being idle for more than the configured timeout.
+ * The number of connections in use at the same time for a host is limited.
+ */
+public class SshConnectionManager implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SshConnectionManager.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 2;
+
+    /**
+     * Should be well below {@link Ssh#DEFAULT_READ_TIMEOUT} - an idle connection
+     * is dropped by the transport layer when the read timeout expires
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT_IN_SECONDS = 60;
+
+    private static class Key {
+
+        private final Machine machine;
+        private final AdminAccess adminAccess;
+
+        Key(Machine machine, AdminAccess adminAccess) {
+            this.machine = checkNotNull(machine, "machine is null");
+            this.adminAccess = checkNotNull(adminAccess, "adminAccess is null");
+        }
+
+        String getHost() {
+            return machine.getPublicDnsName() + ":" + machine.getSshPort();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(machine, adminAccess);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return Objects.equal(this.machine, other.machine)
+                && Objects.equal(this.adminAccess, other.adminAccess);
+        }
+
+        @Override
+        public String toString() {
+            return adminAccess.getUsername() + "@" + getHost();
+        }
+    }
+
+    private static class IdleConnection {
+
+        private final SSHClient client;
+        private final long idleSince;
+
+        IdleConnection(SSHClient client, long idleSince) {
+            this.client = checkNotNull(client, "client is null");
+            this.idleSince = idleSince;
+        }
+    }
+
+    /**
+     * Connection permits for a host, dropped once no caller holds or waits for one
+     */
+    private static class HostPermits {
+
+        private final Semaphore semaphore;
+        private int users = 0;
+
+        HostPermits(int maxConnectionsPerHost) {
+            this.semaphore = new Semaphore(maxConnectionsPerHost, /* fair= */ true);
+        }
+    }
+
+    private final int maxConnectionsPerHost;
+    private final long idleTimeoutInMillis;
+
+    /* guarded by this */
+    private final Map<String, HostPermits> permitsByHost = Maps.newHashMap();
+
+    /* guarded by this */
+    private final Map<Key, Deque<IdleConnection>> idleConnections = Maps.newHashMap();
+    private ScheduledExecutorService evictor;
+    private boolean closed = false;
+
+    public SshConnectionManager() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT_IN_SECONDS);
+    }
+
+    /**
+     * @param maxConnectionsPerHost max number of connections in use at the same time for a host
+     * @param idleTimeoutInSeconds  use 0 to close connections as soon as they are released
+     */
+    public SshConnectionManager(int maxConnectionsPerHost, int idleTimeoutInSeconds) {
+        checkArgument(maxConnectionsPerHost > 0, "maxConnectionsPerHost should be positive");
+        checkArgument(idleTimeoutInSeconds >= 0, "idleTimeoutInSeconds should be positive or 0");
+
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutInMillis = TimeUnit.SECONDS.toMillis(idleTimeoutInSeconds);
+    }
+
+    /**
+     * Get a connected and authenticated client for this machine. Every client
+     * returned by this method should be handed back by calling {@link #release}
+     */
+    public SSHClient borrow(Machine machine, AdminAccess adminAccess) throws IOException {
+        final Key key = new Key(machine, adminAccess);
+        acquirePermit(key);
+
+        try {
+            SSHClient client = pollHealthyIdleConnection(key);
+            if (client != null) {
+                LOG.info("<< Reusing SSH connection to {}", key);
+                return client;
+            }
+
+            LOG.info(">> Opening new SSH connection to {}", key);
+            return connect(machine, adminAccess);
+
+        } catch (IOException e) {
+            releasePermit(key);
+            throw e;
+
+        } catch (RuntimeException e) {
+            releasePermit(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Hand back a client obtained by calling {@link #borrow}. The connection is kept
+     * open for reuse only if it's still healthy.
+     */
+    public void release(Machine machine, AdminAccess adminAccess, SSHClient client) {
+        final Key key = new Key(machine, adminAccess);
+        try {
+            if (idleTimeoutInMillis == 0 || !isHealthy(client) || !offerIdleConnection(key, client)) {
+                closeQuietly(key, client);
+            }
+        } finally {
+            releasePermit(key);
+        }
+    }
+
+    /**
+     * Close all idle connections that exceeded the idle timeout or are no longer healthy
+     */
+    public void evictIdleConnections() {
+        final long now = System.currentTimeMillis();
+        List<IdleConnection> evicted = Lists.newArrayList();
+
+        synchronized (this) {
+            Iterator<Map.Entry<Key, Deque<IdleConnection>>> entries = idleConnections.entrySet().iterator();
+            while (entries.hasNext()) {
+                Deque<IdleConnection> connections = entries.next().getValue();
+
+                Iterator<IdleConnection> iterator = connections.iterator();
+                while (iterator.hasNext()) {
+                    IdleConnection connection = iterator.next();
+                    if (now - connection.idleSince >= idleTimeoutInMillis || !isHealthy(connection.client)) {
+                        evicted.add(connection);
+                        iterator.remove();
+                    }
+                }
+                if (connections.isEmpty()) {
+                    entries.remove();
+                }
+            }
+        }
+
+        if (!evicted.isEmpty()) {
+            LOG.info("Closing {} idle SSH connections", evicted.size());
+            for (IdleConnection connection : evicted) {
+                Closeables.closeQuietly(connection.client);
+            }
+        }
+    }
+
+    /**
+     * Number of connections currently kept open for reuse
+     */
+    public synchronized int getIdleConnectionsCount() {
+        int count = 0;
+        for (Deque<IdleConnection> connections : idleConnections.values()) {
+            count += connections.size();
+        }
+        return count;
+    }
+
+    /**
+     * Number of hosts with connections in use or callers waiting for one
+     */
+    synchronized int getHostsWithPermitsCount() {
+        return permitsByHost.size();
+    }
+
+    @Override
+    public void close() {
+        List<IdleConnection> remaining = Lists.newArrayList();
+        synchronized (this) {
+            closed = true;
+            if (evictor != null) {
+                evictor.shutdownNow();
+                evictor = null;
+            }
+            for (Deque<IdleConnection> connections : idleConnections.values()) {
+                remaining.addAll(connections);
+            }
+            idleConnections.clear();
+        }
+
+        LOG.info("Closing all {} idle SSH connections", remaining.size());
+        for (IdleConnection connection : remaining) {
+            Closeables.closeQuietly(connection.client);
+        }
+    }
+
+    /**
+     * Create a new connected and authenticated client. Can be overridden for testing.
+     */
+    protected SSHClient connect(Machine machine, AdminAccess adminAccess) throws IOException {
+        return Ssh.newClient(machine, adminAccess);
+    }
+
+    /**
+     * Health check performed before handing out an idle connection
+     */
+    protected boolean isHealthy(SSHClient client) {
+        return client.isConnected() && client.isAuthenticated();
+    }
+
+    private void acquirePermit(Key key) throws IOException {
+        final Semaphore permits = retainPermits(key.getHost());
+        try {
+            if (!permits.tryAcquire(Ssh.DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                forgetPermits(key.getHost());
+                throw new IOException(String.format("Timeout while waiting for one of the %d " +
+                    "SSH connections allowed for %s", maxConnectionsPerHost, key.getHost()));
+            }
+        } catch (InterruptedException e) {
+            forgetPermits(key.getHost());
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a SSH connection to " + key.getHost(), e);
+        }
+    }
+
+    private synchronized Semaphore retainPermits(String host) {
+        HostPermits permits = permitsByHost.get(host);
+        if (permits == null) {
+            permits = new HostPermits(maxConnectionsPerHost);
+            permitsByHost.put(host, permits);
+        }
+        permits.users++;
+        return permits.semaphore;
+    }
+
+    private synchronized void releasePermit(Key key) {
+        HostPermits permits = permitsByHost.get(key.getHost());
+        if (permits != null) {
+            permits.semaphore.release();
+        }
+        forgetPermits(key.getHost());
+    }
+
+    private synchronized void forgetPermits(String host) {
+        HostPermits permits = permitsByHost.get(host);
+        if (permits != null && --permits.users == 0) {
+            permitsByHost.remove(host);
+        }
+    }
+
+    private SSHClient pollHealthyIdleConnection(Key key) {
+        while (true) {
+            IdleConnection connection;
+            synchronized (this) {
+                Deque<IdleConnection> connections = idleConnections.get(key);
+                if (connections == null) {
+                    return null;
+                }
+                connection = connections.pollFirst();
+                if (connections.isEmpty()) {
+                    idleConnections.remove(key);
+                }
+            }
+            if (connection == null) {
+                return null;
+            }
+            if (isHealthy(connection.client)) {
+                return connection.client;
+            }
+            LOG.info("Discarding broken idle SSH connection to {}", key);
+            Closeables.closeQuietly(connection.client);
+        }
+    }
+
+    private synchronized boolean offerIdleConnection(Key key, SSHClient client) {
+        if (closed) {
+            return false;
+        }
+
+        Deque<IdleConnection> connections = idleConnections.get(key);
+        if (connections == null) {
+            connections = new ArrayDeque<IdleConnection>();
+            idleConnections.put(key, connections);
+        }
+        if (connections.size() >= maxConnectionsPerHost) {
+            return false;
+        }
+
+        connections.addFirst(new IdleConnection(client, System.currentTimeMillis()));
+        startEvictorIfNeeded();
+        return true;
+    }
+
+    /* guarded by this */
+    private void startEvictorIfNeeded() {
+        if (evictor == null) {
+            evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("ssh-connection-evictor-%d").setDaemon(true).build());
+            evictor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        evictIdleConnections();
+                    } catch (RuntimeException e) {
+                        LOG.warn("Unable to evict idle SSH connections", e);
+                    }
+                }
+            }, idleTimeoutInMillis, idleTimeoutInMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void closeQuietly(Key key, SSHClient client) {
+        LOG.info("<< Closing SSH connection to {}", key);
+        Closeables.closeQuietly(client);
+    }
+}
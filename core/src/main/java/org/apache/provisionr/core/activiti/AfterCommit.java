@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activiti;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import org.activiti.engine.impl.cfg.TransactionListener;
+import org.activiti.engine.impl.cfg.TransactionState;
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.impl.interceptor.CommandContext;
+
+/**
+ * Defer side effects outside the database until the current Activiti transaction
+ * commits. If the job fails and the transaction is rolled back nothing happens.
+ * <p/>
+ * Runs the action immediately when called outside of an Activiti command.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    public static void run(final Runnable action) {
+        checkNotNull(action, "action is null");
+
+        CommandContext commandContext = Context.getCommandContext();
+        if (commandContext == null) {
+            action.run();
+            return;
+        }
+        commandContext.getTransactionContext().addTransactionListener(TransactionState.COMMITTED,
+            new TransactionListener() {
+                @Override
+                public void execute(CommandContext commandContext) {
+                    action.run();
+                }
+            });
+    }
+}
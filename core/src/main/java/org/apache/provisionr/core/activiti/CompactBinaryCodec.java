@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activiti;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Range;
+import com.google.common.collect.Ranges;
+import com.google.common.collect.Sets;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.provisionr.api.access.AdminAccess;
+import org.apache.provisionr.api.hardware.BlockDevice;
+import org.apache.provisionr.api.hardware.BlockDeviceBuilder;
+import org.apache.provisionr.api.hardware.Hardware;
+import org.apache.provisionr.api.network.Network;
+import org.apache.provisionr.api.network.Protocol;
+import org.apache.provisionr.api.network.Rule;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.api.provider.Provider;
+import org.apache.provisionr.api.software.Repository;
+import org.apache.provisionr.api.software.Software;
+
+/**
+ * Versioned compact binary encoding for the API types we store as process variables.
+ * <p/>
+ * Each blob starts with the format version and a tag for the top level type. Fields
+ * are written in a fixed order, without any class metadata, and all the lengths are
+ * stored as variable length integers.
+ */
+public final class CompactBinaryCodec {
+
+    public static final byte FORMAT_VERSION = 1;
+
+    static final byte POOL_TAG = 1;
+    static final byte MACHINE_TAG = 2;
+    static final byte MACHINE_LIST_TAG = 3;
+
+    private CompactBinaryCodec() {
+        /* singleton */
+    }
+
+    /**
+     * @return true for {@link Pool}, {@link Machine} and non-empty lists of {@link Machine}
+     */
+    public static boolean canEncode(Object value) {
+        if (value instanceof Pool || value instanceof Machine) {
+            return true;
+        }
+        if (value instanceof List && !((List<?>) value).isEmpty()) {
+            for (Object element : (List<?>) value) {
+                if (!(element instanceof Machine)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public static byte[] encode(Object value) {
+        checkArgument(canEncode(value), "unable to encode value of type %s",
+            value == null ? null : value.getClass());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(FORMAT_VERSION);
+            if (value instanceof Pool) {
+                out.writeByte(POOL_TAG);
+                writePool(out, (Pool) value);
+
+            } else if (value instanceof Machine) {
+                out.writeByte(MACHINE_TAG);
+                writeMachine(out, (Machine) value);
+
+            } else {
+                out.writeByte(MACHINE_LIST_TAG);
+                List<?> machines = (List<?>) value;
+                writeVarInt(out, machines.size());
+                for (Object machine : machines) {
+                    writeMachine(out, (Machine) machine);
+                }
+            }
+            out.flush();
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode " + value, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Object decode(byte[] bytes) {
+        checkNotNull(bytes, "bytes is null");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported format version: " + version);
+            }
+
+            byte tag = in.readByte();
+            switch (tag) {
+                case POOL_TAG:
+                    return readPool(in);
+
+                case MACHINE_TAG:
+                    return readMachine(in);
+
+                case MACHINE_LIST_TAG:
+                    int size = readVarInt(in);
+                    List<Machine> machines = Lists.newArrayListWithCapacity(size);
+                    for (int i = 0; i < size; i++) {
+                        machines.add(readMachine(in));
+                    }
+                    return machines;
+
+                default:
+                    throw new IllegalArgumentException("Unknown type tag: " + tag);
+            }
+
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to decode a truncated or corrupted blob", e);
+        }
+    }
+
+    private static void writePool(DataOutputStream out, Pool pool) throws IOException {
+        writeProvider(out, pool.getProvider());
+        writeNetwork(out, pool.getNetwork());
+        writeAdminAccess(out, pool.getAdminAccess());
+        writeSoftware(out, pool.getSoftware());
+        writeHardware(out, pool.getHardware());
+        writeVarInt(out, pool.getMinSize());
+        writeVarInt(out, pool.getExpectedSize());
+        writeVarInt(out, pool.getBootstrapTimeInSeconds());
+        writeStringMap(out, pool.getOptions());
+    }
+
+    private static Pool readPool(DataInputStream in) throws IOException {
+        return Pool.builder()
+            .provider(readProvider(in))
+            .network(readNetwork(in))
+            .adminAccess(readAdminAccess(in))
+            .software(readSoftware(in))
+            .hardware(readHardware(in))
+            .minSize(readVarInt(in))
+            .expectedSize(readVarInt(in))
+            .bootstrapTimeInSeconds(readVarInt(in))
+            .options(readStringMap(in))
+            .createPool();
+    }
+
+    private static void writeMachine(DataOutputStream out, Machine machine) throws IOException {
+        writeString(out, machine.getExternalId());
+        writeString(out, machine.getPublicDnsName());
+        writeString(out, machine.getPublicIp());
+        writeString(out, machine.getPrivateDnsName());
+        writeString(out, machine.getPrivateIp());
+        writeVarInt(out, machine.getSshPort());
+        writeStringMap(out, machine.getOptions());
+    }
+
+    private static Machine readMachine(DataInputStream in) throws IOException {
+        return Machine.builder()
+            .externalId(readString(in))
+            .publicDnsName(readString(in))
+            .publicIp(readString(in))
+            .privateDnsName(readString(in))
+            .privateIp(readString(in))
+            .sshPort(readVarInt(in))
+            .options(readStringMap(in))
+            .createMachine();
+    }
+
+    private static void writeProvider(DataOutputStream out, Provider provider) throws IOException {
+        writeString(out, provider.getId());
+        writeOptionalString(out, provider.getEndpoint());
+        writeString(out, provider.getAccessKey());
+        writeString(out, provider.getSecretKey());
+        writeStringMap(out, provider.getOptions());
+    }
+
+    private static Provider readProvider(DataInputStream in) throws IOException {
+        return Provider.builder()
+            .id(readString(in))
+            .endpoint(readOptionalString(in))
+            .accessKey(readString(in))
+            .secretKey(readString(in))
+            .options(readStringMap(in))
+            .createProvider();
+    }
+
+    private static void writeNetwork(DataOutputStream out, Network network) throws IOException {
+        writeString(out, network.getType());
+        writeVarInt(out, network.getIngress().size());
+        for (Rule rule : network.getIngress()) {
+            writeRule(out, rule);
+        }
+        writeStringMap(out, network.getOptions());
+    }
+
+    private static Network readNetwork(DataInputStream in) throws IOException {
+        String type = readString(in);
+
+        int size = readVarInt(in);
+        Set<Rule> ingress = Sets.newLinkedHashSetWithExpectedSize(size);
+        for (int i = 0; i < size; i++) {
+            ingress.add(readRule(in));
+        }
+
+        return Network.builder().type(type).ingress(ImmutableSet.copyOf(ingress))
+            .options(readStringMap(in)).createNetwork();
+    }
+
+    private static void writeRule(DataOutputStream out, Rule rule) throws IOException {
+        writeString(out, rule.getCidr());
+        out.writeByte(rule.getProtocol().ordinal());
+
+        Range<Integer> ports = rule.getPorts();
+        if (ports.equals(Rule.EMPTY_RANGE)) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            writeVarInt(out, ports.lowerEndpoint());
+            out.writeBoolean(ports.lowerBoundType() == BoundType.CLOSED);
+            writeVarInt(out, ports.upperEndpoint());
+            out.writeBoolean(ports.upperBoundType() == BoundType.CLOSED);
+        }
+    }
+
+    private static Rule readRule(DataInputStream in) throws IOException {
+        String cidr = readString(in);
+        Protocol protocol = Protocol.values()[in.readUnsignedByte()];
+
+        if (!in.readBoolean()) {
+            return Rule.builder().cidr(cidr).protocol(protocol).createRule();
+        }
+        int lower = readVarInt(in);
+        BoundType lowerType = in.readBoolean() ? BoundType.CLOSED : BoundType.OPEN;
+        int upper = readVarInt(in);
+        BoundType upperType = in.readBoolean() ? BoundType.CLOSED : BoundType.OPEN;
+
+        return Rule.builder().cidr(cidr).protocol(protocol)
+            .ports(Ranges.range(lower, lowerType, upper, upperType)).createRule();
+    }
+
+    private static void writeAdminAccess(DataOutputStream out, AdminAccess adminAccess) throws IOException {
+        writeString(out, adminAccess.getUsername());
+        writeString(out, adminAccess.getPublicKey());
+        writeString(out, adminAccess.getPrivateKey());
+    }
+
+    private static AdminAccess readAdminAccess(DataInputStream in) throws IOException {
+        return AdminAccess.builder()
+            .username(readString(in))
+            .publicKey(readString(in))
+            .privateKey(readString(in))
+            .createAdminAccess();
+    }
+
+    private static void writeSoftware(DataOutputStream out, Software software) throws IOException {
+        writeString(out, software.getImageId());
+        out.writeBoolean(software.isCachedImage());
+        writeStringMap(out, software.getFiles());
+        writeStringList(out, software.getPackages());
+        writeVarInt(out, software.getRepositories().size());
+        for (Repository repository : software.getRepositories()) {
+            writeString(out, repository.getName());
+            writeStringList(out, repository.getEntries());
+            writeOptionalString(out, repository.getKey());
+        }
+        writeStringMap(out, software.getOptions());
+    }
+
+    private static Software readSoftware(DataInputStream in) throws IOException {
+        String imageId = readString(in);
+        boolean cachedImage = in.readBoolean();
+        Map<String, String> files = readStringMap(in);
+        List<String> packages = readStringList(in);
+
+        int size = readVarInt(in);
+        List<Repository> repositories = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            repositories.add(Repository.builder()
+                .name(readString(in))
+                .entries(readStringList(in))
+                .key(readOptionalString(in))
+                .createRepository());
+        }
+
+        return Software.builder().imageId(imageId).cachedImage(cachedImage).files(files)
+            .packages(packages).repositories(repositories).options(readStringMap(in))
+            .createSoftware();
+    }
+
+    private static void writeHardware(DataOutputStream out, Hardware hardware) throws IOException {
+        writeString(out, hardware.getType());
+        writeVarInt(out, hardware.getBlockDevices().size());
+        for (BlockDevice device : hardware.getBlockDevices()) {
+            writeVarInt(out, device.getSize());
+            writeOptionalString(out, Optional.fromNullable(device.getName()));
+            writeStringMap(out, device.getOptions());
+        }
+        writeStringMap(out, hardware.getOptions());
+    }
+
+    private static Hardware readHardware(DataInputStream in) throws IOException {
+        String type = readString(in);
+
+        int size = readVarInt(in);
+        List<BlockDevice> blockDevices = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            BlockDeviceBuilder builder = BlockDevice.builder().size(readVarInt(in));
+
+            Optional<String> name = readOptionalString(in);
+            if (name.isPresent()) {
+                builder.name(name.get());
+            }
+            blockDevices.add(builder.options(readStringMap(in)).createBlockDevice());
+        }
+
+        return Hardware.builder().type(type).blockDevices(blockDevices)
+            .options(readStringMap(in)).createHardware();
+    }
+
+    private static void writeStringMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        writeVarInt(out, map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readStringMap(DataInputStream in) throws IOException {
+        int size = readVarInt(in);
+        Map<String, String> map = Maps.newLinkedHashMap();
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    private static void writeStringList(DataOutputStream out, List<String> list) throws IOException {
+        writeVarInt(out, list.size());
+        for (String element : list) {
+            writeString(out, element);
+        }
+    }
+
+    private static List<String> readStringList(DataInputStream in) throws IOException {
+        int size = readVarInt(in);
+        List<String> list = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+
+    private static void writeOptionalString(DataOutputStream out, Optional<String> value) throws IOException {
+        out.writeBoolean(value.isPresent());
+        if (value.isPresent()) {
+            writeString(out, value.get());
+        }
+    }
+
+    private static Optional<String> readOptionalString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? Optional.of(readString(in)) : Optional.<String>absent();
+    }
+
+    /**
+     * Unlike {@link DataOutputStream#writeUTF} this has no 64k limit (e.g. large files or keys)
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        checkArgument(value >= 0, "negative values are not supported");
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activiti;
+
+import org.activiti.engine.impl.variable.ByteArrayType;
+import org.activiti.engine.impl.variable.ValueFields;
+
+/**
+ * Stores {@link org.apache.provisionr.api.pool.Pool} and {@link org.apache.provisionr.api.pool.Machine}
+ * process variables using {@link CompactBinaryCodec} instead of Java serialization
+ * <p/>
+ * Registered before the default types so it takes precedence over the generic
+ * serializable type. Existing variables are still read using the type they were stored with.
+ */
+public class CompactBinaryVariableType extends ByteArrayType {
+
+    public static final String TYPE_NAME = "provisionr-compact";
+
+    @Override
+    public String getTypeName() {
+        return TYPE_NAME;
+    }
+
+    @Override
+    public boolean isAbleToStore(Object value) {
+        return CompactBinaryCodec.canEncode(value);
+    }
+
+    @Override
+    public Object getValue(ValueFields valueFields) {
+        Object cachedValue = valueFields.getCachedValue();
+        if (cachedValue != null) {
+            return cachedValue;
+        }
+
+        byte[] bytes = (byte[]) super.getValue(valueFields);
+        if (bytes == null) {
+            return null;
+        }
+
+        Object value = CompactBinaryCodec.decode(bytes);
+        valueFields.setCachedValue(value);
+        return value;
+    }
+
+    @Override
+    public void setValue(Object value, ValueFields valueFields) {
+        super.setValue(CompactBinaryCodec.encode(value), valueFields);
+        valueFields.setCachedValue(value);
+    }
+}
@@ -20,28 +20,36 @@ package org.apache.provisionr.core.activiti;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableMap;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Date;
-import java.util.UUID;
-import org.activiti.engine.impl.calendar.BusinessCalendar;
-import org.activiti.engine.impl.calendar.CycleBusinessCalendar;
+import java.util.Map;
 import org.activiti.engine.impl.context.Context;
 import org.activiti.engine.impl.interceptor.Command;
 import org.activiti.engine.impl.interceptor.CommandContext;
 import org.activiti.engine.impl.jobexecutor.FailedJobCommandFactory;
 import org.activiti.engine.impl.persistence.entity.JobEntity;
+import org.activiti.engine.impl.util.ClockUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * We need a custom @{link FailedJobCommandFactory} implementation that allows
- * us to customize the global number of retries per job
+ * us to customize the number of retries and the time between retries
+ * <p/>
+ * Failures are classified as throttling, transient or fatal and each category
+ * has its own {@link RetryPolicy} with exponential backoff and jitter.
  */
 public class ConfigurableFailedJobCommandFactory implements FailedJobCommandFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(ConfigurableFailedJobCommandFactory.class);
 
+    /**
+     * Upper bound for the time between retries when using the legacy constructor
+     */
+    public static final int DEFAULT_MAX_DELAY_MULTIPLIER = 32;
+
     /**
      * This class is a bit of a hack because there is no easy way to
      * change @{link JobEntity.DEFAULT_RETRIES}
@@ -53,21 +61,19 @@ public class ConfigurableFailedJobCommandFactory implements FailedJobCommandFact
      */
     public static class IncrementJobRetriesCmd implements Command<Object> {
 
-        private final String LOCK_OWNER = "job-retries-" + UUID.randomUUID().toString();
-
         private final String jobId;
         private final Throwable exception;
 
-        private final int maxNumberOfRetries;
-        private final int waitBetweenRetriesInSeconds;
+        private final FailureType failureType;
+        private final RetryPolicy policy;
 
-        public IncrementJobRetriesCmd(String jobId, Throwable exception, int maxNumberOfRetries,
-                                      int waitBetweenRetriesInSeconds) {
+        public IncrementJobRetriesCmd(String jobId, Throwable exception, FailureType failureType,
+                                      RetryPolicy policy) {
             this.jobId = checkNotNull(jobId, "jobId is null");
             this.exception = exception;
 
-            this.maxNumberOfRetries = maxNumberOfRetries;
-            this.waitBetweenRetriesInSeconds = waitBetweenRetriesInSeconds;
+            this.failureType = checkNotNull(failureType, "failureType is null");
+            this.policy = checkNotNull(policy, "policy is null");
         }
 
         @Override
@@ -87,46 +93,33 @@ public class ConfigurableFailedJobCommandFactory implements FailedJobCommandFact
         }
 
         private void updateNumberOfRetries(JobEntity job) {
-            if (maxNumberOfRetries == -1) {
-                job.setLockOwner(LOCK_OWNER);
-                job.setLockExpirationTime(calculateDueDate());
-                return; /* always retry without counting */
-            }
+            final int retriesDone = Math.max(0, job.getRetries() - JobEntity.DEFAULT_RETRIES);
+
+            /* release the lock taken by the job executor - the due date controls the next attempt */
+            job.setLockOwner(null);
+            job.setLockExpirationTime(null);
 
-            int realUpperBound = maxNumberOfRetries + JobEntity.DEFAULT_RETRIES;
-            if (job.getRetries() >= realUpperBound) {
-                LOG.warn("Job {} from process {} has no more retries left. The process will block and may " +
-                    "require human intervention.", job.getId(), job.getProcessInstanceId());
+            if (!policy.hasRetriesLeft(retriesDone)) {
+                LOG.warn("Job {} from process {} has no more retries left after a {} failure. The process " +
+                    "will block and may require human intervention.",
+                    new Object[]{job.getId(), job.getProcessInstanceId(), failureType});
 
                 job.setRetries(0);  /* stop retrying this job */
-                job.setLockOwner(null);
+                policy.recordRetriesExhausted();
 
             } else {
-                final Date newDate = calculateDueDate();
-                LOG.info("Scheduling job {} from process {} to be retried at {}. Try {}/{}",
-                    new Object[]{job.getId(), job.getProcessInstanceId(), newDate,
-                        job.getRetries() - JobEntity.DEFAULT_RETRIES, maxNumberOfRetries});
-
-                /* I've tried to use job.setDuedate() but it doesn't work as expected */
+                final long delayInMillis = policy.computeDelayInMillis(retriesDone);
+                final Date dueDate = new Date(ClockUtil.getCurrentTime().getTime() + delayInMillis);
 
-                job.setLockOwner(LOCK_OWNER);
-                job.setLockExpirationTime(newDate);
+                LOG.info("Scheduling job {} from process {} to be retried at {} after a {} failure. Try {}/{}",
+                    new Object[]{job.getId(), job.getProcessInstanceId(), dueDate, failureType,
+                        retriesDone + 1, policy.getMaxNumberOfRetries()});
 
+                job.setDuedate(dueDate);
                 job.setRetries(job.getRetries() + 1);
-            }
-        }
 
-        /**
-         * Based on code from @{link TimerEntity.calculateDueDate}
-         */
-        private Date calculateDueDate() {
-            BusinessCalendar businessCalendar = Context
-                .getProcessEngineConfiguration()
-                .getBusinessCalendarManager()
-                .getBusinessCalendar(CycleBusinessCalendar.NAME);
-
-            return businessCalendar.resolveDuedate(
-                String.format("R/PT%dS", waitBetweenRetriesInSeconds));
+                policy.recordRetryScheduled(delayInMillis);
+            }
         }
 
         private String getExceptionStacktrace() {
@@ -136,20 +129,48 @@ public class ConfigurableFailedJobCommandFactory implements FailedJobCommandFact
         }
     }
 
-    private final int maxNumberOfRetries;
-    private final int waitBetweenRetriesInSeconds;
+    private final FailureClassifier classifier;
+    private final Map<FailureType, RetryPolicy> policies;
 
+    /**
+     * Exponential backoff starting from waitBetweenRetriesInSeconds for throttling and
+     * transient failures. Fatal failures are not retried.
+     */
     public ConfigurableFailedJobCommandFactory(int maxNumberOfRetries, int waitBetweenRetriesInSeconds) {
-        checkArgument(maxNumberOfRetries > 0 || maxNumberOfRetries == -1,
-            "Max number of retries should be a positive number or -1 (infinite)");
-        checkArgument(waitBetweenRetriesInSeconds > 0, "waitBetweenRetriesInSeconds should be positive");
+        this(new FailureClassifier(),
+            newLegacyRetryPolicy(maxNumberOfRetries, waitBetweenRetriesInSeconds),
+            newLegacyRetryPolicy(maxNumberOfRetries, waitBetweenRetriesInSeconds),
+            RetryPolicy.noRetries());
+    }
 
-        this.maxNumberOfRetries = maxNumberOfRetries;
-        this.waitBetweenRetriesInSeconds = waitBetweenRetriesInSeconds;
+    public ConfigurableFailedJobCommandFactory(FailureClassifier classifier, RetryPolicy throttling,
+                                               RetryPolicy transientFailures, RetryPolicy fatal) {
+        this.classifier = checkNotNull(classifier, "classifier is null");
+        this.policies = ImmutableMap.of(
+            FailureType.THROTTLING, checkNotNull(throttling, "throttling is null"),
+            FailureType.TRANSIENT, checkNotNull(transientFailures, "transientFailures is null"),
+            FailureType.FATAL, checkNotNull(fatal, "fatal is null"));
     }
 
     @Override
     public Command<Object> getCommand(String jobId, Throwable exception) {
-        return new IncrementJobRetriesCmd(jobId, exception, maxNumberOfRetries, waitBetweenRetriesInSeconds);
+        FailureType failureType = classifier.classify(exception);
+        return new IncrementJobRetriesCmd(jobId, exception, failureType, policies.get(failureType));
+    }
+
+    /**
+     * Policies together with their usage counters
+     */
+    public Map<FailureType, RetryPolicy> getPolicies() {
+        return policies;
+    }
+
+    private static RetryPolicy newLegacyRetryPolicy(int maxNumberOfRetries, int waitBetweenRetriesInSeconds) {
+        checkArgument(maxNumberOfRetries > 0 || maxNumberOfRetries == -1,
+            "Max number of retries should be a positive number or -1 (infinite)");
+        checkArgument(waitBetweenRetriesInSeconds > 0, "waitBetweenRetriesInSeconds should be positive");
+
+        return new RetryPolicy(maxNumberOfRetries, waitBetweenRetriesInSeconds,
+            waitBetweenRetriesInSeconds * DEFAULT_MAX_DELAY_MULTIPLIER);
     }
 }
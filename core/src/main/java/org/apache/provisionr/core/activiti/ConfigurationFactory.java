@@ -18,17 +18,37 @@
 
 package org.apache.provisionr.core.activiti;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.Lists;
 import javax.sql.DataSource;
 import org.activiti.engine.impl.cfg.StandaloneProcessEngineConfiguration;
 import org.activiti.engine.impl.jobexecutor.FailedJobCommandFactory;
 import org.activiti.engine.impl.jobexecutor.JobExecutor;
+import org.activiti.engine.impl.variable.VariableType;
 
 public class ConfigurationFactory {
 
-    private DataSource dataSource;
+    private String jdbcDriver;
+    private String jdbcUrl;
+    private String jdbcUsername;
+    private String jdbcPassword = "";
     private String databaseSchemaUpdate;
 
+    /* Connections are pooled by the engine. See org.apache.provisionr.cfg for the defaults */
+    private boolean jdbcPoolEnabled = true;
+    private int jdbcMaxActiveConnections;
+    private int jdbcMaxIdleConnections;
+    private int jdbcMaxCheckoutTime;
+    private int jdbcMaxWaitTime;
+
+    private boolean jdbcPingEnabled;
+    private String jdbcPingQuery = "";
+    private int jdbcPingConnectionNotUsedFor;
+
+    /* Only used when the pool is disabled - a new physical connection for every command */
+    private DataSource dataSource;
+
     private boolean jobExecutorActivate = true;
     private JobExecutor jobExecutor;
 
@@ -37,7 +57,29 @@ public class ConfigurationFactory {
     public StandaloneProcessEngineConfiguration getConfiguration() {
         StandaloneProcessEngineConfiguration conf = new StandaloneProcessEngineConfiguration();
 
-        conf.setDataSource(dataSource);
+        if (jdbcPoolEnabled) {
+            /* The engine creates a MyBatis PooledDataSource and loads the driver through the
+             * thread context class loader set by the activiti-osgi ProcessEngineFactory */
+            conf.setJdbcDriver(jdbcDriver);
+            conf.setJdbcUrl(jdbcUrl);
+            conf.setJdbcUsername(jdbcUsername);
+            conf.setJdbcPassword(jdbcPassword);
+
+            conf.setJdbcMaxActiveConnections(jdbcMaxActiveConnections);
+            conf.setJdbcMaxIdleConnections(jdbcMaxIdleConnections);
+            conf.setJdbcMaxCheckoutTime(jdbcMaxCheckoutTime);
+            conf.setJdbcMaxWaitTime(jdbcMaxWaitTime);
+
+            if (jdbcPingEnabled) {
+                checkArgument(!jdbcPingQuery.isEmpty(), "jdbcPingQuery is required when ping is enabled");
+                conf.setJdbcPingEnabled(true);
+                conf.setJdbcPingQuery(jdbcPingQuery);
+                conf.setJdbcPingConnectionNotUsedFor(jdbcPingConnectionNotUsedFor);
+            }
+        } else {
+            conf.setDataSource(checkNotNull(dataSource, "dataSource is required when the pool is disabled"));
+        }
+
         conf.setDatabaseSchemaUpdate(databaseSchemaUpdate);
 
         conf.setJobExecutorActivate(jobExecutorActivate);
@@ -45,9 +87,65 @@ public class ConfigurationFactory {
 
         conf.setFailedJobCommandFactory(failedJobCommandFactory);
 
+        /* Pool and Machine variables are read by almost every activity */
+        conf.setCustomPreVariableTypes(Lists.<VariableType>newArrayList(new CompactBinaryVariableType()));
+
         return conf;
     }
 
+    public void setJdbcDriver(String jdbcDriver) {
+        this.jdbcDriver = checkNotNull(jdbcDriver, "jdbcDriver is null");
+    }
+
+    public void setJdbcUrl(String jdbcUrl) {
+        this.jdbcUrl = checkNotNull(jdbcUrl, "jdbcUrl is null");
+    }
+
+    public void setJdbcUsername(String jdbcUsername) {
+        this.jdbcUsername = checkNotNull(jdbcUsername, "jdbcUsername is null");
+    }
+
+    public void setJdbcPassword(String jdbcPassword) {
+        this.jdbcPassword = checkNotNull(jdbcPassword, "jdbcPassword is null");
+    }
+
+    public void setJdbcPoolEnabled(boolean jdbcPoolEnabled) {
+        this.jdbcPoolEnabled = jdbcPoolEnabled;
+    }
+
+    public void setJdbcMaxActiveConnections(int jdbcMaxActiveConnections) {
+        checkArgument(jdbcMaxActiveConnections > 0, "jdbcMaxActiveConnections should be positive");
+        this.jdbcMaxActiveConnections = jdbcMaxActiveConnections;
+    }
+
+    public void setJdbcMaxIdleConnections(int jdbcMaxIdleConnections) {
+        checkArgument(jdbcMaxIdleConnections >= 0, "jdbcMaxIdleConnections should be positive or 0");
+        this.jdbcMaxIdleConnections = jdbcMaxIdleConnections;
+    }
+
+    public void setJdbcMaxCheckoutTime(int jdbcMaxCheckoutTime) {
+        checkArgument(jdbcMaxCheckoutTime > 0, "jdbcMaxCheckoutTime should be positive");
+        this.jdbcMaxCheckoutTime = jdbcMaxCheckoutTime;
+    }
+
+    public void setJdbcMaxWaitTime(int jdbcMaxWaitTime) {
+        checkArgument(jdbcMaxWaitTime > 0, "jdbcMaxWaitTime should be positive");
+        this.jdbcMaxWaitTime = jdbcMaxWaitTime;
+    }
+
+    public void setJdbcPingEnabled(boolean jdbcPingEnabled) {
+        this.jdbcPingEnabled = jdbcPingEnabled;
+    }
+
+    public void setJdbcPingQuery(String jdbcPingQuery) {
+        this.jdbcPingQuery = checkNotNull(jdbcPingQuery, "jdbcPingQuery is null");
+    }
+
+    public void setJdbcPingConnectionNotUsedFor(int jdbcPingConnectionNotUsedFor) {
+        checkArgument(jdbcPingConnectionNotUsedFor >= 0, "jdbcPingConnectionNotUsedFor should be positive or 0");
+        this.jdbcPingConnectionNotUsedFor = jdbcPingConnectionNotUsedFor;
+    }
+
     public void setDataSource(DataSource dataSource) {
         this.dataSource = checkNotNull(dataSource, "dataSource is null");
     }
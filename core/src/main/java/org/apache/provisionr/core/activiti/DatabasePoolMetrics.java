@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activiti;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import org.activiti.engine.ProcessEngineConfiguration;
+import org.apache.ibatis.datasource.pooled.PoolState;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exposes the state of the MyBatis pool created by the engine over JMX
+ * <p/>
+ * The data source is looked up on every read because the engine only creates
+ * it while the process engine is built. Nothing is registered if the pool is disabled.
+ */
+public class DatabasePoolMetrics implements DatabasePoolMetricsMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DatabasePoolMetrics.class);
+
+    public static final String OBJECT_NAME = "org.apache.provisionr:type=DatabasePool,name=activiti";
+
+    private final ProcessEngineConfiguration configuration;
+
+    public DatabasePoolMetrics(ProcessEngineConfiguration configuration) {
+        this.configuration = checkNotNull(configuration, "configuration is null");
+    }
+
+    public void register() throws Exception {
+        if (!(configuration.getDataSource() instanceof PooledDataSource)) {
+            LOG.info("The Activiti database connections are not pooled. No metrics to register.");
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOG.warn("Unable to unregister database pool metrics", e);
+        }
+    }
+
+    @Override
+    public int getActiveConnectionCount() {
+        return getPoolState().getActiveConnectionCount();
+    }
+
+    @Override
+    public int getIdleConnectionCount() {
+        return getPoolState().getIdleConnectionCount();
+    }
+
+    @Override
+    public long getAverageWaitTimeInMillis() {
+        return getPoolState().getAverageWaitTime();
+    }
+
+    @Override
+    public long getHadToWaitCount() {
+        return getPoolState().getHadToWaitCount();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return getPoolState().getRequestCount();
+    }
+
+    @Override
+    public long getAverageRequestTimeInMillis() {
+        return getPoolState().getAverageRequestTime();
+    }
+
+    @Override
+    public long getClaimedOverdueConnectionCount() {
+        return getPoolState().getClaimedOverdueConnectionCount();
+    }
+
+    private PoolState getPoolState() {
+        DataSource dataSource = configuration.getDataSource();
+        checkNotNull(dataSource, "the process engine was not built yet");
+
+        return ((PooledDataSource) dataSource).getPoolState();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activiti;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Classify job failures by looking at the whole chain of causes
+ * <p/>
+ * Core has no dependency on the provider SDKs so service errors are recognized
+ * by their error code and HTTP status code, read through the {@code getErrorCode()}
+ * and {@code getStatusCode()} accessors exposed by {@code AmazonServiceException}
+ * <p/>
+ * Only failures that are known to be permanent are classified as fatal. Everything
+ * else (including programming errors caused by inconsistent provider responses) is
+ * treated as transient and retried.
+ */
+public class FailureClassifier {
+
+    public static final Set<String> DEFAULT_THROTTLING_ERROR_CODES = ImmutableSet.of(
+        "RequestLimitExceeded", "Throttling", "ThrottlingException");
+
+    public static final Set<String> DEFAULT_FATAL_ERROR_CODES = ImmutableSet.of(
+        "AuthFailure", "UnauthorizedOperation", "OptInRequired", "Blocked",
+        "InvalidAMIID.Malformed", "InvalidAMIID.NotFound", "InvalidParameterValue",
+        "InvalidParameterCombination", "Unsupported");
+
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private final Set<String> throttlingErrorCodes;
+    private final Set<String> fatalErrorCodes;
+
+    public FailureClassifier() {
+        this(DEFAULT_THROTTLING_ERROR_CODES, DEFAULT_FATAL_ERROR_CODES);
+    }
+
+    public FailureClassifier(Set<String> throttlingErrorCodes, Set<String> fatalErrorCodes) {
+        this.throttlingErrorCodes = ImmutableSet.copyOf(throttlingErrorCodes);
+        this.fatalErrorCodes = ImmutableSet.copyOf(fatalErrorCodes);
+    }
+
+    public FailureType classify(Throwable exception) {
+        if (exception == null) {
+            return FailureType.TRANSIENT;
+        }
+
+        List<Throwable> causes = Throwables.getCausalChain(exception);
+        for (Throwable cause : causes) {
+            if (isThrottling(cause)) {
+                return FailureType.THROTTLING;
+            }
+        }
+        for (Throwable cause : causes) {
+            if (cause instanceof IOException) {
+                return FailureType.TRANSIENT;
+            }
+        }
+        for (Throwable cause : causes) {
+            if (isFatal(cause)) {
+                return FailureType.FATAL;
+            }
+        }
+        return FailureType.TRANSIENT;
+    }
+
+    protected boolean isThrottling(Throwable cause) {
+        Optional<String> errorCode = getErrorCode(cause);
+        if (errorCode.isPresent() && throttlingErrorCodes.contains(errorCode.get())) {
+            return true;
+        }
+        Optional<Integer> statusCode = getStatusCode(cause);
+        return statusCode.isPresent() && statusCode.get() == SERVICE_UNAVAILABLE;
+    }
+
+    /**
+     * Errors that are the same no matter how many times we retry
+     */
+    protected boolean isFatal(Throwable cause) {
+        if (cause instanceof UnsupportedOperationException) {
+            return true;
+        }
+        Optional<String> errorCode = getErrorCode(cause);
+        return errorCode.isPresent() && fatalErrorCodes.contains(errorCode.get());
+    }
+
+    protected Optional<String> getErrorCode(Throwable cause) {
+        Object value = invokeAccessor(cause, "getErrorCode");
+        return (value instanceof String) ? Optional.of((String) value) : Optional.<String>absent();
+    }
+
+    protected Optional<Integer> getStatusCode(Throwable cause) {
+        Object value = invokeAccessor(cause, "getStatusCode");
+        return (value instanceof Integer) ? Optional.of((Integer) value) : Optional.<Integer>absent();
+    }
+
+    private Object invokeAccessor(Throwable cause, String name) {
+        try {
+            Method method = cause.getClass().getMethod(name);
+            return method.invoke(cause);
+
+        } catch (NoSuchMethodException e) {
+            return null;   /* not a service exception */
+
+        } catch (Exception e) {
+            return null;   /* unable to read the accessor, fall back on the exception type */
+        }
+    }
+
+    public Set<String> getThrottlingErrorCodes() {
+        return throttlingErrorCodes;
+    }
+
+    public Set<String> getFatalErrorCodes() {
+        return fatalErrorCodes;
+    }
+
+    @Override
+    public String toString() {
+        return "FailureClassifier{throttlingErrorCodes=" + throttlingErrorCodes +
+            ", fatalErrorCodes=" + fatalErrorCodes + '}';
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activiti;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exponential backoff with jitter for failed jobs
+ * <p/>
+ * The delay before retry n (starting from 0) is min(maxDelay, initialDelay * 2^n)
+ * plus a random extra of up to jitterFactor of that value. The jitter spreads jobs
+ * that failed at the same time (e.g. because of throttling) so they don't retry in lockstep.
+ * <p/>
+ * Also keeps a few counters that show how often the policy is used.
+ */
+public class RetryPolicy {
+
+    public static final double DEFAULT_JITTER_FACTOR = 0.5;
+
+    /**
+     * A policy that never retries
+     */
+    public static RetryPolicy noRetries() {
+        return new RetryPolicy(0, 1, 1, 0);
+    }
+
+    private final int maxNumberOfRetries;
+    private final long initialDelayInMillis;
+    private final long maxDelayInMillis;
+    private final double jitterFactor;
+
+    private final Random random = new Random();
+
+    private final AtomicLong retriesScheduled = new AtomicLong();
+    private final AtomicLong retriesExhausted = new AtomicLong();
+    private final AtomicLong totalDelayInMillis = new AtomicLong();
+
+    public RetryPolicy(int maxNumberOfRetries, int initialDelayInSeconds, int maxDelayInSeconds) {
+        this(maxNumberOfRetries, initialDelayInSeconds, maxDelayInSeconds, DEFAULT_JITTER_FACTOR);
+    }
+
+    /**
+     * @param maxNumberOfRetries use -1 for infinity
+     */
+    public RetryPolicy(int maxNumberOfRetries, int initialDelayInSeconds, int maxDelayInSeconds,
+                       double jitterFactor) {
+        checkArgument(maxNumberOfRetries >= -1, "maxNumberOfRetries should be positive, 0 or -1 (infinite)");
+        checkArgument(initialDelayInSeconds > 0, "initialDelayInSeconds should be positive");
+        checkArgument(maxDelayInSeconds >= initialDelayInSeconds,
+            "maxDelayInSeconds should be greater or equal to initialDelayInSeconds");
+        checkArgument(jitterFactor >= 0 && jitterFactor <= 1, "jitterFactor should be between 0 and 1");
+
+        this.maxNumberOfRetries = maxNumberOfRetries;
+        this.initialDelayInMillis = TimeUnit.SECONDS.toMillis(initialDelayInSeconds);
+        this.maxDelayInMillis = TimeUnit.SECONDS.toMillis(maxDelayInSeconds);
+        this.jitterFactor = jitterFactor;
+    }
+
+    /**
+     * @param retriesDone number of times the job was already retried
+     */
+    public boolean hasRetriesLeft(int retriesDone) {
+        return maxNumberOfRetries == -1 || retriesDone < maxNumberOfRetries;
+    }
+
+    /**
+     * @param retriesDone number of times the job was already retried
+     * @return delay before the next retry
+     */
+    public long computeDelayInMillis(int retriesDone) {
+        long delay = maxDelayInMillis;
+        if (retriesDone < Long.SIZE - 1) {
+            long multiplier = 1L << retriesDone;
+            if (initialDelayInMillis <= maxDelayInMillis / multiplier) {
+                delay = initialDelayInMillis * multiplier;
+            }
+        }
+        return delay + (long) (delay * jitterFactor * random.nextDouble());
+    }
+
+    void recordRetryScheduled(long delayInMillis) {
+        retriesScheduled.incrementAndGet();
+        totalDelayInMillis.addAndGet(delayInMillis);
+    }
+
+    void recordRetriesExhausted() {
+        retriesExhausted.incrementAndGet();
+    }
+
+    public int getMaxNumberOfRetries() {
+        return maxNumberOfRetries;
+    }
+
+    public long getRetriesScheduledCount() {
+        return retriesScheduled.get();
+    }
+
+    public long getRetriesExhaustedCount() {
+        return retriesExhausted.get();
+    }
+
+    public long getTotalDelayInMillis() {
+        return totalDelayInMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+            "maxNumberOfRetries=" + maxNumberOfRetries +
+            ", initialDelayInMillis=" + initialDelayInMillis +
+            ", maxDelayInMillis=" + maxDelayInMillis +
+            ", jitterFactor=" + jitterFactor +
+            ", retriesScheduled=" + retriesScheduled +
+            ", retriesExhausted=" + retriesExhausted +
+            ", totalDelayInMillis=" + totalDelayInMillis +
+            '}';
+    }
+}
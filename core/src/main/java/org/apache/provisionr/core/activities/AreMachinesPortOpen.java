@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activities;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.Maps;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.delegate.JavaDelegate;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.apache.provisionr.core.PortProber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Check that a specific port is open on all the machines of a pool in one pass
+ * <p/>
+ * Stores a flag that is true only if the port is open everywhere and the
+ * result for each machine as a map of (external ID, open).
+ */
+public class AreMachinesPortOpen implements JavaDelegate {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AreMachinesPortOpen.class);
+
+    private final String resultVariable;
+    private final String perMachineResultVariable;
+    private final int port;
+
+    public AreMachinesPortOpen(String resultVariable, String perMachineResultVariable, int port) {
+        checkArgument(port > 0, "invalid port number");
+        this.resultVariable = checkNotNull(resultVariable, "resultVariable is null");
+        this.perMachineResultVariable = checkNotNull(perMachineResultVariable, "perMachineResultVariable is null");
+        this.port = port;
+    }
+
+    @Override
+    public void execute(DelegateExecution execution) {
+        @SuppressWarnings("unchecked")
+        List<Machine> machines = (List<Machine>) execution.getVariable(CoreProcessVariables.MACHINES);
+        checkNotNull(machines, "expecting a process variable named '%s'", CoreProcessVariables.MACHINES);
+
+        Map<Machine, Boolean> results = PortProber.probe(machines, port, PortProber.DEFAULT_TIMEOUT_IN_MILLISECONDS);
+
+        HashMap<String, Boolean> perMachine = Maps.newHashMap();
+        int open = 0;
+        for (Map.Entry<Machine, Boolean> entry : results.entrySet()) {
+            perMachine.put(entry.getKey().getExternalId(), entry.getValue());
+            if (entry.getValue()) {
+                open++;
+            } else {
+                LOG.info("<< Port {} is CLOSED on {}", port, entry.getKey().getPublicDnsName());
+            }
+        }
+
+        LOG.info("<< Port {} is OPEN on {} out of {} machines", new Object[]{port, open, results.size()});
+
+        execution.setVariable(perMachineResultVariable, perMachine);
+        execution.setVariable(resultVariable, open == results.size());
+    }
+}
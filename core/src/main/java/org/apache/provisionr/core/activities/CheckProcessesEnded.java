@@ -18,34 +18,77 @@
 
 package org.apache.provisionr.core.activities;
 
+import com.google.common.base.Optional;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.activiti.engine.HistoryService;
 import org.activiti.engine.RuntimeService;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.activiti.engine.delegate.JavaDelegate;
+import org.activiti.engine.history.HistoricProcessInstance;
 import org.activiti.engine.runtime.ProcessInstance;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.core.CoreProcessVariables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Check if all the background processes ended
+ * <p/>
+ * Can also check if enough processes ended for the pool to be ready (minSize). In
+ * that case the machines whose process ended are published as readyMachines - the
+ * list of process IDs is expected to follow the order of the list of machines.
+ * The expectedMachinesReady flag is also set when expectedSize machines are ready.
+ * <p/>
+ * Only processes that completed normally count as ready. Processes that were deleted
+ * (killed on pool termination or dropped as stragglers) have a delete reason in history.
+ */
 public class CheckProcessesEnded implements JavaDelegate {
 
     private static final Logger LOG = LoggerFactory.getLogger(CheckProcessesEnded.class);
 
     private final RuntimeService runtimeService;
+    private final Optional<HistoryService> historyService;
 
     private final String variableWithProcessIds;
     private final String resultVariable;
+    private final Optional<String> minimumResultVariable;
 
     public CheckProcessesEnded(RuntimeService runtimeService, String variableWithProcessIds,
                                String resultVariable) {
+        this(runtimeService, Optional.<HistoryService>absent(), variableWithProcessIds,
+            resultVariable, Optional.<String>absent());
+    }
+
+    /**
+     * @param historyService        used to tell apart processes that completed normally
+     * @param minimumResultVariable set to true when processes ended for at least minSize machines
+     */
+    public CheckProcessesEnded(RuntimeService runtimeService, HistoryService historyService,
+                               String variableWithProcessIds, String resultVariable,
+                               String minimumResultVariable) {
+        this(runtimeService, Optional.of(checkNotNull(historyService, "historyService is null")),
+            variableWithProcessIds, resultVariable,
+            Optional.of(checkNotNull(minimumResultVariable, "minimumResultVariable is null")));
+    }
+
+    private CheckProcessesEnded(RuntimeService runtimeService, Optional<HistoryService> historyService,
+                                String variableWithProcessIds, String resultVariable,
+                                Optional<String> minimumResultVariable) {
         this.runtimeService = checkNotNull(runtimeService, "runtimeService is null");
+        this.historyService = historyService;
         this.variableWithProcessIds = checkNotNull(variableWithProcessIds, "variableWithProcessIds is null");
         this.resultVariable = checkNotNull(resultVariable, "resultVariable is null");
+        this.minimumResultVariable = minimumResultVariable;
     }
 
     @Override
@@ -53,16 +96,10 @@ public class CheckProcessesEnded implements JavaDelegate {
         @SuppressWarnings("unchecked")
         List<String> processIds = (List<String>) execution.getVariable(variableWithProcessIds);
 
-        List<String> ended = Lists.newArrayList(Iterables.filter(processIds,
-            new Predicate<String>() {
-                @Override
-                public boolean apply(String processInstanceId) {
-                    ProcessInstance instance = runtimeService.createProcessInstanceQuery()
-                        .processInstanceId(processInstanceId).singleResult();
-
-                    return instance == null || instance.isEnded();
-                }
-            }));
+        final String poolBusinessKey = (String) execution.getVariable(CoreProcessVariables.POOL_BUSINESS_KEY);
+        final List<String> ended = (poolBusinessKey != null)
+            ? findEndedWithSingleQuery(processIds, poolBusinessKey)
+            : findEndedOneByOne(processIds);
 
         boolean done = (processIds.size() == ended.size());
         execution.setVariable(resultVariable, done);
@@ -75,5 +112,88 @@ public class CheckProcessesEnded implements JavaDelegate {
                     ImmutableSet.copyOf(ended)));
             }
         }
+
+        if (minimumResultVariable.isPresent()) {
+            publishReadyMachines(execution, processIds, ImmutableSet.copyOf(ended));
+        }
+    }
+
+    private void publishReadyMachines(DelegateExecution execution, List<String> processIds, Set<String> ended) {
+        final Pool pool = (Pool) execution.getVariable(CoreProcessVariables.POOL);
+        checkNotNull(pool, "Expecting to find a pool description as process variable");
+
+        @SuppressWarnings("unchecked")
+        List<Machine> machines = (List<Machine>) execution.getVariable(CoreProcessVariables.MACHINES);
+        checkNotNull(machines, "Expecting to find the list of machines as process variable");
+
+        final Map<String, HistoricProcessInstance> history = findHistoricProcessInstances(ended);
+
+        List<Machine> ready = Lists.newArrayList();
+        for (int index = 0; index < Math.min(processIds.size(), machines.size()); index++) {
+            if (completedNormally(history.get(processIds.get(index)))) {
+                ready.add(machines.get(index));
+            }
+        }
+
+        final boolean enough = ready.size() >= pool.getMinSize();
+        LOG.info("{} out of {} machines are ready (minSize is {})",
+            new Object[]{ready.size(), machines.size(), pool.getMinSize()});
+
+        execution.setVariable(CoreProcessVariables.READY_MACHINES, ready);
+        execution.setVariable(minimumResultVariable.get(), enough);
+        execution.setVariable(CoreProcessVariables.EXPECTED_MACHINES_READY, ready.size() >= pool.getExpectedSize());
+    }
+
+    /**
+     * A single history query for all the ended processes indexed by process instance ID
+     */
+    private Map<String, HistoricProcessInstance> findHistoricProcessInstances(Set<String> processIds) {
+        final Map<String, HistoricProcessInstance> instances = Maps.newHashMap();
+        if (processIds.isEmpty()) {
+            return instances;   /* the query does not accept an empty set */
+        }
+        for (HistoricProcessInstance instance : historyService.get().createHistoricProcessInstanceQuery()
+            .processInstanceIds(processIds).finished().list()) {
+            instances.put(instance.getId(), instance);
+        }
+        return instances;
+    }
+
+    private boolean completedNormally(HistoricProcessInstance instance) {
+        return instance != null && instance.getEndTime() != null && instance.getDeleteReason() == null;
+    }
+
+    /**
+     * All the processes that take part in setting up a pool share the pool business key as
+     * a variable. Ended processes are no longer returned by runtime queries.
+     */
+    private List<String> findEndedWithSingleQuery(List<String> processIds, String poolBusinessKey) {
+        final Set<String> running = Sets.newHashSet();
+        for (ProcessInstance instance : runtimeService.createProcessInstanceQuery()
+            .variableValueEquals(CoreProcessVariables.POOL_BUSINESS_KEY, poolBusinessKey).list()) {
+            if (!instance.isEnded()) {
+                running.add(instance.getId());
+            }
+        }
+
+        return Lists.newArrayList(Iterables.filter(processIds, new Predicate<String>() {
+            @Override
+            public boolean apply(String processInstanceId) {
+                return !running.contains(processInstanceId);
+            }
+        }));
+    }
+
+    private List<String> findEndedOneByOne(List<String> processIds) {
+        return Lists.newArrayList(Iterables.filter(processIds,
+            new Predicate<String>() {
+                @Override
+                public boolean apply(String processInstanceId) {
+                    ProcessInstance instance = runtimeService.createProcessInstanceQuery()
+                        .processInstanceId(processInstanceId).singleResult();
+
+                    return instance == null || instance.isEnded();
+                }
+            }));
     }
 }
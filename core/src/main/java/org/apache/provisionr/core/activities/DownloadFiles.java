@@ -30,6 +30,7 @@ import org.apache.provisionr.api.pool.Machine;
 import org.apache.provisionr.api.pool.Pool;
 import org.apache.provisionr.api.software.Software;
 import org.apache.provisionr.core.Mustache;
+import org.apache.provisionr.core.SshConnectionManager;
 
 public class DownloadFiles extends PuppetActivity {
 
@@ -39,6 +40,10 @@ public class DownloadFiles extends PuppetActivity {
         super("files");
     }
 
+    public DownloadFiles(SshConnectionManager connectionManager) {
+        super("files", connectionManager);
+    }
+
     @Override
     public String createPuppetScript(Pool pool, Machine machine) {
         try {
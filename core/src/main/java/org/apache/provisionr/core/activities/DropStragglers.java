@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activities;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.delegate.JavaDelegate;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Give up on the machines that are still being set up after the straggler timeout
+ * <p/>
+ * Kills their setup processes and keeps only the ready machines in the pool, up to
+ * expectedSize (in launch order). The provider should terminate the instances that are
+ * no longer in the list of machines.
+ */
+public class DropStragglers implements JavaDelegate {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DropStragglers.class);
+
+    private final RuntimeService runtimeService;
+    private final String variableWithProcessIds;
+
+    public DropStragglers(RuntimeService runtimeService, String variableWithProcessIds) {
+        this.runtimeService = checkNotNull(runtimeService, "runtimeService is null");
+        this.variableWithProcessIds = checkNotNull(variableWithProcessIds, "variableWithProcessIds is null");
+    }
+
+    @Override
+    public void execute(DelegateExecution execution) {
+        final Pool pool = (Pool) execution.getVariable(CoreProcessVariables.POOL);
+        checkNotNull(pool, "Expecting to find a pool description as process variable");
+
+        @SuppressWarnings("unchecked")
+        List<String> processIds = (List<String>) execution.getVariable(variableWithProcessIds);
+        checkNotNull(processIds, "%s not found as a process variable", variableWithProcessIds);
+
+        @SuppressWarnings("unchecked")
+        List<Machine> machines = (List<Machine>) execution.getVariable(CoreProcessVariables.MACHINES);
+        checkNotNull(machines, "Expecting to find the list of machines as process variable");
+
+        List<String> keptProcessIds = Lists.newArrayList();
+        List<Machine> keptMachines = Lists.newArrayList();
+        List<String> dropped = Lists.newArrayList();
+
+        /* machines without a setup process are dropped too */
+        for (int index = 0; index < machines.size(); index++) {
+            final Machine machine = machines.get(index);
+            if (index >= processIds.size()) {
+                dropped.add(machine.getExternalId());
+                continue;
+            }
+            final String processId = processIds.get(index);
+            if (isRunning(processId)) {
+                runtimeService.deleteProcessInstance(processId, "Straggler dropped from the pool");
+                dropped.add(machine.getExternalId());
+
+            } else if (keptMachines.size() < pool.getExpectedSize()) {
+                keptProcessIds.add(processId);
+                keptMachines.add(machine);
+
+            } else {
+                dropped.add(machine.getExternalId());
+            }
+        }
+
+        LOG.warn("Dropped {} machines from the pool: {}", dropped.size(), dropped);
+
+        execution.setVariable(variableWithProcessIds, keptProcessIds);
+        execution.setVariable(CoreProcessVariables.MACHINES, keptMachines);
+        execution.setVariable(CoreProcessVariables.READY_MACHINES, keptMachines);
+    }
+
+    private boolean isRunning(String processInstanceId) {
+        ProcessInstance instance = runtimeService.createProcessInstanceQuery()
+            .processInstanceId(processInstanceId).singleResult();
+        return instance != null && !instance.isEnded();
+    }
+}
@@ -28,6 +28,7 @@ import org.apache.provisionr.api.pool.Machine;
 import org.apache.provisionr.api.pool.Pool;
 import org.apache.provisionr.api.software.Software;
 import org.apache.provisionr.core.Mustache;
+import org.apache.provisionr.core.SshConnectionManager;
 
 public class InstallPackages extends PuppetActivity {
 
@@ -37,6 +38,10 @@ public class InstallPackages extends PuppetActivity {
         super("packages");
     }
 
+    public InstallPackages(SshConnectionManager connectionManager) {
+        super("packages", connectionManager);
+    }
+
     @Override
     public String createPuppetScript(Pool pool, Machine machine) {
         try {
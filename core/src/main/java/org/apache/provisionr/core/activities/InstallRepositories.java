@@ -31,6 +31,7 @@ import org.apache.provisionr.api.pool.Pool;
 import org.apache.provisionr.api.software.Repository;
 import org.apache.provisionr.api.software.Software;
 import org.apache.provisionr.core.Mustache;
+import org.apache.provisionr.core.SshConnectionManager;
 
 public class InstallRepositories extends PuppetActivity {
 
@@ -41,6 +42,10 @@ public class InstallRepositories extends PuppetActivity {
         super("repositories");
     }
 
+    public InstallRepositories(SshConnectionManager connectionManager) {
+        super("repositories", connectionManager);
+    }
+
     @Override
     public String createPuppetScript(Pool pool, Machine machine) {
         try {
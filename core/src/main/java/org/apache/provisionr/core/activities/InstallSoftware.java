@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activities;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.core.Mustache;
+import org.apache.provisionr.core.SshConnectionManager;
+
+/**
+ * Register repositories, download files and install packages by applying
+ * a single combined puppet manifest
+ * <p/>
+ * This avoids paying the puppet startup and fact collection cost for each step.
+ * The individual activities are still available for running the steps separately.
+ */
+public class InstallSoftware extends PuppetActivity {
+
+    public static final String SOFTWARE_TEMPLATE = "/org/apache/provisionr/core/puppet/software.pp.mustache";
+
+    private final InstallRepositories installRepositories;
+    private final InstallPackages installPackages;
+    private final DownloadFiles downloadFiles;
+
+    public InstallSoftware() {
+        super("software");
+        this.installRepositories = new InstallRepositories();
+        this.installPackages = new InstallPackages();
+        this.downloadFiles = new DownloadFiles();
+    }
+
+    public InstallSoftware(SshConnectionManager connectionManager) {
+        super("software", connectionManager);
+        this.installRepositories = new InstallRepositories(connectionManager);
+        this.installPackages = new InstallPackages(connectionManager);
+        this.downloadFiles = new DownloadFiles(connectionManager);
+    }
+
+    /**
+     * The order is relevant only for evaluation: the packages manifest should be
+     * evaluated before the files manifest to avoid declaring wget twice. The order
+     * in which resources are applied is given by the dependency edges.
+     */
+    @Override
+    public String createPuppetScript(Pool pool, Machine machine) {
+        try {
+            return Joiner.on("\n\n").join(
+                installRepositories.createPuppetScript(pool, machine),
+                installPackages.createPuppetScript(pool, machine),
+                downloadFiles.createPuppetScript(pool, machine),
+                Mustache.toString(InstallSoftware.class, SOFTWARE_TEMPLATE, ImmutableMap.<String, Object>of())
+            );
+
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+}
@@ -20,12 +20,10 @@ package org.apache.provisionr.core.activities;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.Socket;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.activiti.engine.delegate.JavaDelegate;
 import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.core.PortProber;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,7 +37,7 @@ public class IsMachinePortOpen implements JavaDelegate {
     private static final Logger LOG = LoggerFactory.getLogger(IsMachinePortOpen.class);
 
     public static final String MACHINE = "machine";
-    public static final int TIMEOUT_IN_MILLISECONDS = 1000;
+    public static final int TIMEOUT_IN_MILLISECONDS = PortProber.DEFAULT_TIMEOUT_IN_MILLISECONDS;
 
     private final String resultVariable;
     private final int port;
@@ -55,7 +53,7 @@ public class IsMachinePortOpen implements JavaDelegate {
         Machine machine = (Machine) execution.getVariable(MACHINE);
         checkNotNull(machine, "expecting a process variable named machine (multi-instance?)");
 
-        if (isPortOpen(machine, port)) {
+        if (PortProber.isPortOpen(machine, port, TIMEOUT_IN_MILLISECONDS)) {
             LOG.info("<< Port {} is OPEN on {}", port, machine.getPublicDnsName());
             execution.setVariable(resultVariable, true);
 
@@ -64,29 +62,4 @@ public class IsMachinePortOpen implements JavaDelegate {
             execution.setVariable(resultVariable, false);
         }
     }
-
-    private boolean isPortOpen(Machine machine, int port) {
-        InetSocketAddress socketAddress = new InetSocketAddress(machine.getPublicDnsName(), port);
-
-        Socket socket = null;
-        try {
-            socket = new Socket();
-            socket.setReuseAddress(false);
-            socket.setSoLinger(false, 1);
-            socket.setSoTimeout(TIMEOUT_IN_MILLISECONDS);
-            socket.connect(socketAddress, TIMEOUT_IN_MILLISECONDS);
-
-        } catch (IOException e) {
-            return false;
-        } finally {
-            if (socket != null) {
-                try {
-                    socket.close();
-                } catch (IOException ioe) {
-                    // no work to do
-                }
-            }
-        }
-        return true;
-    }
 }
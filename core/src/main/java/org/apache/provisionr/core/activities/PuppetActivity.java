@@ -20,6 +20,7 @@ package org.apache.provisionr.core.activities;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.ImmutableMap;
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.Map;
 import net.schmizz.sshj.SSHClient;
@@ -31,6 +32,7 @@ import org.apache.provisionr.api.pool.Machine;
 import org.apache.provisionr.api.pool.Pool;
 import org.apache.provisionr.core.CoreProcessVariables;
 import org.apache.provisionr.core.Ssh;
+import org.apache.provisionr.core.SshConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,9 +57,23 @@ public abstract class PuppetActivity implements JavaDelegate {
     public static final int PUPPET_FINISHED_WITH_NO_FAILURES = 2;
 
     private final String remoteFileName;
+    private final SshConnectionManager connectionManager;
 
+    /**
+     * Opens a new SSH connection every time the activity is executed
+     */
     public PuppetActivity(String remoteFileName) {
+        this(remoteFileName, new SshConnectionManager(SshConnectionManager.DEFAULT_MAX_CONNECTIONS_PER_HOST,
+            /* idleTimeoutInSeconds= */ 0));
+    }
+
+    /**
+     * Borrows SSH connections from a shared manager so that they can be reused by
+     * all the activities executed on the same machine
+     */
+    public PuppetActivity(String remoteFileName, SshConnectionManager connectionManager) {
         this.remoteFileName = checkNotNull(remoteFileName);
+        this.connectionManager = checkNotNull(connectionManager, "connectionManager is null");
     }
 
     /**
@@ -90,7 +106,8 @@ public abstract class PuppetActivity implements JavaDelegate {
 
         LOG.info(">> Connecting to machine {} to run puppet script", machine);
 
-        SSHClient client = Ssh.newClient(machine, overrideAdminAccess(pool));
+        final AdminAccess adminAccess = overrideAdminAccess(pool);
+        SSHClient client = connectionManager.borrow(machine, adminAccess);
         try {
             for (Map.Entry<String, String> entry : createAdditionalFiles(pool, machine).entrySet()) {
                 Ssh.createFile(client, /* content = */ entry.getValue(), 0600, /* destination= */ entry.getKey());
@@ -111,8 +128,12 @@ public abstract class PuppetActivity implements JavaDelegate {
                     "&& sudo puppet apply --detailed-exitcodes --debug --verbose " + destination;
                 Session.Command command = session.exec(runScriptWithWaitCommand);
 
-                Ssh.logCommandOutput(LOG, machine.getExternalId(), command);
-                command.join();
+                Closeable output = Ssh.logCommandOutput(LOG, machine.getExternalId(), command);
+                try {
+                    command.join();
+                } finally {
+                    output.close();
+                }
 
                 final Integer exitStatus = command.getExitStatus();
                 if (exitStatus != PUPPET_FINISHED_WITH_NO_FAILURES && exitStatus != 0) {
@@ -128,7 +149,7 @@ public abstract class PuppetActivity implements JavaDelegate {
                 session.close();
             }
         } finally {
-            client.close();
+            connectionManager.release(machine, adminAccess, client);
         }
     }
 }
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activities;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.Lists;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.delegate.JavaDelegate;
+import org.activiti.engine.history.HistoricProcessInstance;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Estimate how much time was saved by not waiting for the machines that are still
+ * being set up once expectedSize machines are ready. Should run before the stragglers
+ * are dropped.
+ * <p/>
+ * The estimate is a lower bound: how far behind the median setup time of the ready
+ * machines the slowest straggler already was. The result is stored as a process
+ * variable so that it's kept in the process history.
+ */
+public class RecordHedgeSavings implements JavaDelegate {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecordHedgeSavings.class);
+
+    private final ProcessEngine processEngine;
+    private final String variableWithProcessIds;
+
+    public RecordHedgeSavings(ProcessEngine processEngine, String variableWithProcessIds) {
+        this.processEngine = checkNotNull(processEngine, "processEngine is null");
+        this.variableWithProcessIds = checkNotNull(variableWithProcessIds, "variableWithProcessIds is null");
+    }
+
+    @Override
+    public void execute(DelegateExecution execution) {
+        @SuppressWarnings("unchecked")
+        List<String> processIds = (List<String>) execution.getVariable(variableWithProcessIds);
+        checkNotNull(processIds, "%s not found as a process variable", variableWithProcessIds);
+
+        final long now = System.currentTimeMillis();
+
+        List<Long> readyDurations = Lists.newArrayList();
+        long slowestStraggler = 0;
+
+        for (String processId : processIds) {
+            HistoricProcessInstance instance = processEngine.getHistoryService()
+                .createHistoricProcessInstanceQuery().processInstanceId(processId).singleResult();
+            if (instance == null) {
+                continue;
+            }
+            if (instance.getEndTime() != null) {
+                readyDurations.add(instance.getEndTime().getTime() - instance.getStartTime().getTime());
+            } else {
+                slowestStraggler = Math.max(slowestStraggler, now - instance.getStartTime().getTime());
+            }
+        }
+
+        long savedInMillis = 0;
+        if (!readyDurations.isEmpty() && slowestStraggler > 0) {
+            Collections.sort(readyDurations);
+            savedInMillis = Math.max(0, slowestStraggler - readyDurations.get(readyDurations.size() / 2));
+        }
+
+        final long savedInSeconds = TimeUnit.MILLISECONDS.toSeconds(savedInMillis);
+        LOG.info("Dropping the slowest machines saved at least {} seconds ({} machines ready)",
+            savedInSeconds, readyDurations.size());
+
+        execution.setVariable(CoreProcessVariables.HEDGE_TIME_SAVED_IN_SECONDS, savedInSeconds);
+    }
+}
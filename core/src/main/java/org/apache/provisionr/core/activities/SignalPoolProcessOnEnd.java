@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activities;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.List;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.delegate.ExecutionListener;
+import org.activiti.engine.delegate.JavaDelegate;
+import org.activiti.engine.runtime.Execution;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.apache.provisionr.core.activiti.AfterCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wake up the pool management process every time a machine setup process ends
+ * <p/>
+ * Meant to be used as an end listener for the per-machine processes. The pool process
+ * decides if enough machines are ready (e.g. at least the min size of the pool) and goes
+ * back to waiting otherwise. The signal is received in an event gateway together with
+ * a (long) timer that acts as fallback for signals sent while the pool process was busy.
+ * <p/>
+ * The signal is sent after the transaction that ends the machine process commits so that
+ * the pool process never checks before the end is visible.
+ * <p/>
+ * Also implements {@link JavaDelegate} because only delegates are made available to
+ * process definitions through the blueprint expression resolver.
+ */
+public class SignalPoolProcessOnEnd implements ExecutionListener, JavaDelegate {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SignalPoolProcessOnEnd.class);
+
+    private final RuntimeService runtimeService;
+    private final String signalName;
+
+    /**
+     * @param signalName signal expected by the pool management process
+     */
+    public SignalPoolProcessOnEnd(RuntimeService runtimeService, String signalName) {
+        this.runtimeService = checkNotNull(runtimeService, "runtimeService is null");
+        this.signalName = checkNotNull(signalName, "signalName is null");
+    }
+
+    @Override
+    public void execute(DelegateExecution execution) {
+        notify(execution);
+    }
+
+    @Override
+    public void notify(DelegateExecution execution) {
+        final String poolBusinessKey = (String) execution.getVariable(CoreProcessVariables.POOL_BUSINESS_KEY);
+        if (poolBusinessKey == null) {
+            LOG.warn("No pool business key found for process {}. Unable to notify the pool process.",
+                execution.getProcessInstanceId());
+            return;
+        }
+
+        final String processInstanceId = execution.getProcessInstanceId();
+        AfterCommit.run(new Runnable() {
+            @Override
+            public void run() {
+                signalPoolProcess(poolBusinessKey, processInstanceId);
+            }
+        });
+    }
+
+    /**
+     * The machine process already ended when this runs so failures can no longer be
+     * reported to it. They are logged as errors - the pool process only notices the end
+     * when the fallback timer fires.
+     */
+    private void signalPoolProcess(String poolBusinessKey, String processInstanceId) {
+        try {
+            List<Execution> waiting = runtimeService.createExecutionQuery()
+                .processInstanceBusinessKey(poolBusinessKey).signalEventSubscription(signalName).list();
+
+            for (Execution target : waiting) {
+                LOG.info(">> Sending signal {} to pool process {}", signalName, poolBusinessKey);
+                runtimeService.signalEventReceived(signalName, target.getId());
+            }
+
+        } catch (RuntimeException e) {
+            LOG.error(String.format("Unable to send signal %s to pool process %s after process %s ended. " +
+                "Waiting for the fallback timer.", signalName, poolBusinessKey, processInstanceId), e);
+        }
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.apache.provisionr.core.activities;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
@@ -25,6 +26,7 @@ import java.util.List;
 import org.activiti.engine.ProcessEngine;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.activiti.engine.delegate.JavaDelegate;
+import org.activiti.engine.history.HistoricProcessInstance;
 import org.activiti.engine.runtime.ProcessInstance;
 import org.apache.provisionr.api.pool.Machine;
 import org.apache.provisionr.api.pool.Pool;
@@ -35,6 +37,13 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Create an Activiti process for each machine and store the process IDs
+ * <p/>
+ * Processes can be started in chunks: each execution starts at most chunkSize processes
+ * and appends the new IDs to the result variable. The done variable is set to true
+ * when there is a process for every machine. The business process should loop over
+ * this activity (as an async task) so that each chunk runs in a separate transaction.
+ * A retry resumes after the last chunk that completed and reuses any process that was
+ * already started for a machine.
  */
 public class SpawnProcessForEachMachine implements JavaDelegate {
 
@@ -50,14 +59,30 @@ public class SpawnProcessForEachMachine implements JavaDelegate {
     private final String processKey;
     private final String type;
     private final String resultVariable;
+    private final String doneVariable;
+    private final int chunkSize;
 
+    /**
+     * Start all processes in a single transaction
+     */
     public SpawnProcessForEachMachine(
         ProcessEngine processEngine, String processKey, String type, String resultVariable
     ) {
+        this(processEngine, processKey, type, resultVariable, resultVariable + "Done", Integer.MAX_VALUE);
+    }
+
+    public SpawnProcessForEachMachine(
+        ProcessEngine processEngine, String processKey, String type,
+        String resultVariable, String doneVariable, int chunkSize
+    ) {
+        checkArgument(chunkSize > 0, "chunkSize should be positive");
+
         this.processEngine = checkNotNull(processEngine, "processEngine is null");
         this.processKey = checkNotNull(processKey, "processKey is null");
         this.type = checkNotNull(type, "type is null");
         this.resultVariable = checkNotNull(resultVariable, "resultVariable is null");
+        this.doneVariable = checkNotNull(doneVariable, "doneVariable is null");
+        this.chunkSize = chunkSize;
     }
 
     @Override
@@ -75,16 +100,36 @@ public class SpawnProcessForEachMachine implements JavaDelegate {
         /* Authenticate as kermit to make the process visible in the Explorer UI */
         processEngine.getIdentityService().setAuthenticatedUserId(CoreConstants.ACTIVITI_EXPLORER_DEFAULT_USER);
 
-        List<String> processIds = Lists.newArrayList();
-        for (Machine machine : machines) {
+        final boolean singlePassSetup = Boolean.parseBoolean(
+            pool.getSoftware().getOptionOr(CoreProcessVariables.SINGLE_PASS_SETUP, "true"));
+
+        /* resume after the processes started by previous chunks */
+        @SuppressWarnings("unchecked")
+        List<String> previous = (List<String>) execution.getVariable(resultVariable);
+        List<String> processIds = (previous == null) ? Lists.<String>newArrayList() : Lists.newArrayList(previous);
+
+        final int start = processIds.size();
+        final int end = (int) Math.min((long) start + chunkSize, machines.size());
+
+        for (Machine machine : machines.subList(Math.min(start, end), end)) {
             final String perMachineProcessBusinessKey = String.format("%s-%s-%s",
                 execution.getProcessBusinessKey(), type, machine.getExternalId());
 
+            /* processes started by a chunk that failed later on may already be committed */
+            final String existingProcessId = findProcessIdByBusinessKey(perMachineProcessBusinessKey);
+            if (existingProcessId != null) {
+                LOG.info("Found existing '" + type + "' process {} ({}) for machine {}",
+                    new Object[]{perMachineProcessBusinessKey, existingProcessId, machine.getExternalId()});
+                processIds.add(existingProcessId);
+                continue;
+            }
+
             ProcessInstance perMachineProcess = processEngine.getRuntimeService().startProcessInstanceByKey(
                 processKey, perMachineProcessBusinessKey,
                 ImmutableMap.<String, Object>of(CoreProcessVariables.POOL, pool,
                     CoreProcessVariables.POOL_BUSINESS_KEY, poolBusinessKey,
                     CoreProcessVariables.IS_CACHED_IMAGE, pool.getSoftware().isCachedImage(),
+                    CoreProcessVariables.SINGLE_PASS_SETUP, singlePassSetup,
                     MACHINE, machine));
 
             LOG.info("Started background '" + type + "' process {} ({}) for machine {}",
@@ -92,7 +137,17 @@ public class SpawnProcessForEachMachine implements JavaDelegate {
             processIds.add(perMachineProcess.getId());
         }
 
-        LOG.info("Saving process IDs {} as {}", processIds, resultVariable);
+        final boolean done = processIds.size() >= machines.size();
+        LOG.info("Saving process IDs as {} ({} out of {} machines)",
+            new Object[]{resultVariable, processIds.size(), machines.size()});
+
         execution.setVariable(resultVariable, processIds);
+        execution.setVariable(doneVariable, done);
+    }
+
+    private String findProcessIdByBusinessKey(String businessKey) {
+        List<HistoricProcessInstance> instances = processEngine.getHistoryService()
+            .createHistoricProcessInstanceQuery().processInstanceBusinessKey(businessKey).list();
+        return instances.isEmpty() ? null : instances.get(0).getId();
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activities;
+
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkNotNull;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.delegate.ExecutionListener;
+import org.activiti.engine.delegate.JavaDelegate;
+import org.apache.provisionr.core.PoolRegistry;
+import org.apache.provisionr.core.RegisteredPool;
+import org.apache.provisionr.core.activiti.AfterCommit;
+
+/**
+ * Copy the pool, status and list of machines to the {@link PoolRegistry}
+ * <p/>
+ * Meant to be used as a start listener for the pool management process and as an
+ * end listener for all the activities that change one of those variables.
+ */
+public class UpdatePoolRegistry implements ExecutionListener, JavaDelegate {
+
+    private final PoolRegistry poolRegistry;
+
+    public UpdatePoolRegistry(PoolRegistry poolRegistry) {
+        this.poolRegistry = checkNotNull(poolRegistry, "poolRegistry is null");
+    }
+
+    @Override
+    public void execute(DelegateExecution execution) {
+        notify(execution);
+    }
+
+    @Override
+    public void notify(DelegateExecution execution) {
+        final Optional<RegisteredPool> pool = RegisteredPool.fromVariables(execution.getProcessBusinessKey(),
+            execution.getProcessInstanceId(), execution.getVariables());
+        if (pool.isPresent()) {
+            /* the snapshot is taken now but only published if the transaction commits */
+            AfterCommit.run(new Runnable() {
+                @Override
+                public void run() {
+                    poolRegistry.put(pool.get());
+                }
+            });
+        }
+    }
+}
@@ -29,6 +29,12 @@ import java.io.InputStreamReader;
 import org.slf4j.Logger;
 import org.slf4j.Marker;
 
+/**
+ * Drains a stream using a dedicated thread
+ * <p/>
+ * Fine for a few long lived streams. Use {@link StreamPumpingService} when draining
+ * many streams at the same time (e.g. remote commands on all the machines of a pool).
+ */
 public abstract class StreamLogger extends Thread {
 
     private final InputStream inputStream;
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.logging;
+
+import com.google.common.base.Charsets;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drains many input streams (e.g. remote command stdout / stderr) line by line
+ * using a small fixed set of worker threads
+ * <p/>
+ * Streams are polled without blocking: a worker only reads the bytes that are already
+ * available and moves on to the next stream. Each stream uses a bounded amount of memory
+ * and the number of streams pumped at the same time is limited - registering a new stream
+ * blocks until there is room for it. Thread count and memory usage stay flat no matter
+ * how many machines are being configured.
+ * <p/>
+ * The worker threads are daemon threads so they never keep the JVM alive. The shared
+ * instance is closed by the core bundle blueprint container when the bundle stops.
+ */
+public class StreamPumpingService implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamPumpingService.class);
+
+    public static final int DEFAULT_WORKERS = 2;
+    public static final int DEFAULT_MAX_STREAMS = 2048;
+
+    /**
+     * Max number of bytes read from a stream in one go. Also used as max line length.
+     */
+    public static final int CHUNK_SIZE_IN_BYTES = 4096;
+
+    /**
+     * Time to wait before polling again a stream that had no data available
+     */
+    public static final long IDLE_POLL_DELAY_IN_MILLIS = 100;
+
+    /**
+     * Callback invoked for every non-empty line read from a stream
+     */
+    public interface LineHandler {
+        void handle(String line);
+    }
+
+    private static StreamPumpingService defaultInstance;
+
+    /**
+     * Lazily created service shared by all the activities running in this process. A new
+     * instance is created if the previous one was closed.
+     */
+    public static synchronized StreamPumpingService getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new StreamPumpingService(DEFAULT_WORKERS, DEFAULT_MAX_STREAMS);
+        }
+        return defaultInstance;
+    }
+
+    private final int maxStreams;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Semaphore streamPermits;
+
+    public StreamPumpingService(int workers, int maxStreams) {
+        checkArgument(workers > 0, "workers should be positive");
+        checkArgument(maxStreams > 0, "maxStreams should be positive");
+
+        this.maxStreams = maxStreams;
+        this.executor = new ScheduledThreadPoolExecutor(workers, new ThreadFactoryBuilder()
+            .setNameFormat("stream-pump-%d").setDaemon(true).build());
+        this.streamPermits = new Semaphore(maxStreams);
+    }
+
+    /**
+     * Start draining this stream in the background. Blocks if the max
+     * number of streams are already being pumped.
+     */
+    public PumpedStream pump(InputStream inputStream, LineHandler handler) throws InterruptedException {
+        PumpedStream stream = new PumpedStream(inputStream, handler);
+
+        streamPermits.acquire();
+        try {
+            executor.execute(stream);
+        } catch (RejectedExecutionException e) {
+            streamPermits.release();
+            throw e;
+        }
+        return stream;
+    }
+
+    /**
+     * Number of streams currently being pumped
+     */
+    public int getActiveStreamsCount() {
+        return maxStreams - streamPermits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        synchronized (StreamPumpingService.class) {
+            if (defaultInstance == this) {
+                defaultInstance = null;
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Handle for a stream that is being drained
+     */
+    public class PumpedStream implements Runnable {
+
+        private final InputStream inputStream;
+        private final LineHandler handler;
+
+        private final byte[] chunk = new byte[CHUNK_SIZE_IN_BYTES];
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile boolean finishing = false;
+
+        private PumpedStream(InputStream inputStream, LineHandler handler) {
+            this.inputStream = checkNotNull(inputStream, "inputStream is null");
+            this.handler = checkNotNull(handler, "handler is null");
+        }
+
+        /**
+         * Signal that no more data will be written to the stream (e.g. the remote command ended)
+         * and wait for all the buffered content to be handled.
+         *
+         * @return false if the timeout expired before the stream was fully drained
+         */
+        public boolean finish(long timeout, TimeUnit unit) throws InterruptedException {
+            finishing = true;
+            return completed.await(timeout, unit);
+        }
+
+        public boolean isCompleted() {
+            return completed.getCount() == 0;
+        }
+
+        /**
+         * Executed by the worker threads. Reads only what's available and reschedules itself.
+         */
+        @Override
+        public void run() {
+            if (isCompleted()) {
+                return;
+            }
+            try {
+                /* read the flag before checking for data to avoid missing the last chunk */
+                final boolean noMoreData = finishing;
+
+                int available = inputStream.available();
+                if (available > 0) {
+                    int count = inputStream.read(chunk, 0, Math.min(available, chunk.length));
+                    if (count == -1) {
+                        complete();
+                        return;
+                    }
+                    consume(count);
+
+                    /* go to the end of the queue to give all streams a fair chance */
+                    executor.execute(this);
+
+                } else if (noMoreData) {
+                    complete();
+
+                } else {
+                    executor.schedule(this, IDLE_POLL_DELAY_IN_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+            } catch (IOException e) {
+                LOG.warn("Unable to read from stream. Stopping.", e);
+                complete();
+
+            } catch (RejectedExecutionException e) {
+                LOG.warn("Stream pumping service was shutdown. Stopping.");
+                complete();
+            }
+        }
+
+        private void consume(int count) {
+            for (int i = 0; i < count; i++) {
+                byte current = chunk[i];
+                if (current == '\n') {
+                    flushLine();
+                } else {
+                    line.write(current);
+                    if (line.size() >= CHUNK_SIZE_IN_BYTES) {
+                        flushLine();
+                    }
+                }
+            }
+        }
+
+        private void flushLine() {
+            String content = new String(line.toByteArray(), Charsets.UTF_8);
+            line.reset();
+
+            if (content.endsWith("\r")) {
+                content = content.substring(0, content.length() - 1);
+            }
+            if (!content.isEmpty()) {
+                try {
+                    handler.handle(content);
+                } catch (RuntimeException e) {
+                    LOG.warn("Line handler failed", e);
+                }
+            }
+        }
+
+        private void complete() {
+            if (!isCompleted()) {
+                flushLine();
+                completed.countDown();
+                streamPermits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.activiti.engine.runtime.ProcessInstanceQuery;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class InMemoryPoolRegistryTest {
+
+    @Test
+    public void testRebuildLoadsOnlyPoolManagementProcesses() {
+        final Pool pool = mock(Pool.class);
+        final Machine machine = Machine.builder().localhost().createMachine();
+
+        RuntimeService runtimeService = mock(RuntimeService.class);
+        ProcessInstanceQuery query = mock(ProcessInstanceQuery.class);
+        when(runtimeService.createProcessInstanceQuery()).thenReturn(query);
+        when(query.list()).thenReturn(ImmutableList.of(
+            newProcessInstanceMock("p1", "k1"),
+            newProcessInstanceMock("p2", "k1-setup"),
+            newProcessInstanceMock("p3", null)
+        ));
+
+        when(runtimeService.getVariables("p1")).thenReturn(ImmutableMap.<String, Object>of(
+            CoreProcessVariables.POOL, pool,
+            CoreProcessVariables.POOL_BUSINESS_KEY, "k1",
+            CoreProcessVariables.STATUS, PoolStatus.READY,
+            CoreProcessVariables.MACHINES, ImmutableList.of(machine)));
+        when(runtimeService.getVariables("p2")).thenReturn(ImmutableMap.<String, Object>of(
+            CoreProcessVariables.POOL, pool,
+            CoreProcessVariables.POOL_BUSINESS_KEY, "k1"));
+        when(runtimeService.getVariables("p3")).thenReturn(ImmutableMap.<String, Object>of());
+
+        InMemoryPoolRegistry registry = new InMemoryPoolRegistry(runtimeService);
+        registry.rebuild();
+
+        assertThat(registry.list()).containsOnly(
+            new RegisteredPool("k1", "p1", pool, PoolStatus.READY, ImmutableList.of(machine)));
+        assertThat(registry.get("k1-setup").isPresent()).isFalse();
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        final Pool pool = mock(Pool.class);
+        Map<String, Object> variables = ImmutableMap.<String, Object>of(
+            CoreProcessVariables.POOL, pool,
+            CoreProcessVariables.POOL_BUSINESS_KEY, "k1");
+
+        InMemoryPoolRegistry registry = new InMemoryPoolRegistry(mock(RuntimeService.class));
+        registry.put(RegisteredPool.fromVariables("k1", "p1", variables).get());
+        assertThat(registry.getVersion()).isEqualTo(1);
+
+        RegisteredPool registered = registry.get("k1").get();
+        assertThat(registered.getStatus()).isEqualTo(PoolStatus.UNDEFINED);
+        assertThat(registered.getMachines()).isEmpty();
+
+        /* same snapshot - nothing changed */
+        registry.put(RegisteredPool.fromVariables("k1", "p1", variables).get());
+        assertThat(registry.getVersion()).isEqualTo(1);
+
+        registry.remove("k1");
+        assertThat(registry.get("k1").isPresent()).isFalse();
+        assertThat(registry.list()).isEmpty();
+        assertThat(registry.getVersion()).isEqualTo(2);
+    }
+
+    private ProcessInstance newProcessInstanceMock(String id, String businessKey) {
+        ProcessInstance instance = mock(ProcessInstance.class);
+
+        when(instance.getId()).thenReturn(id);
+        when(instance.getBusinessKey()).thenReturn(businessKey);
+
+        return instance;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import org.apache.provisionr.core.activities.InstallPackages;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class MustacheTest {
+
+    @Test
+    public void testRenderedOutputIsMemoized() throws Exception {
+        Map<String, ?> scopes = ImmutableMap.of("packages",
+            ImmutableList.of(ImmutableMap.of("package", "git-core")));
+
+        CacheStats before = Mustache.getRenderCacheStats();
+
+        String first = Mustache.toString(InstallPackages.class, InstallPackages.PACKAGES_TEMPLATE, scopes);
+        String second = Mustache.toString(InstallPackages.class, InstallPackages.PACKAGES_TEMPLATE,
+            ImmutableMap.of("packages", ImmutableList.of(ImmutableMap.of("package", "git-core"))));
+
+        assertThat(second).isEqualTo(first).contains("package { \"git-core\": }");
+
+        CacheStats delta = Mustache.getRenderCacheStats().minus(before);
+        assertThat(delta.hitCount()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void testTemplateIsCompiledOnce() throws Exception {
+        Mustache.toString(InstallPackages.class, InstallPackages.PACKAGES_TEMPLATE,
+            ImmutableMap.of("packages", ImmutableList.of(ImmutableMap.of("package", "vim"))));
+
+        CacheStats before = Mustache.getTemplateCacheStats();
+        Mustache.toString(InstallPackages.class, InstallPackages.PACKAGES_TEMPLATE,
+            ImmutableMap.of("packages", ImmutableList.of(ImmutableMap.of("package", "emacs"))));
+
+        CacheStats delta = Mustache.getTemplateCacheStats().minus(before);
+        assertThat(delta.missCount()).isEqualTo(0);
+        assertThat(delta.hitCount()).isEqualTo(1);
+    }
+}
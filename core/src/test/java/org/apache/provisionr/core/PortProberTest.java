@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Map;
+import org.apache.provisionr.api.pool.Machine;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class PortProberTest {
+
+    @Test
+    public void testProbeManyMachinesInOnePass() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            Machine open = Machine.builder().localhost().sshPort(socket.getLocalPort()).createMachine();
+            Machine unknown = Machine.builder().localhost().externalId("local-2")
+                .publicDnsName("unknown.host.invalid").publicIp("").createMachine();
+
+            Map<Machine, Boolean> results = PortProber.probe(ImmutableList.of(open, unknown),
+                socket.getLocalPort(), PortProber.DEFAULT_TIMEOUT_IN_MILLISECONDS);
+
+            assertThat(results).hasSize(2);
+            assertThat(results.get(open)).isTrue();
+            assertThat(results.get(unknown)).isFalse();
+
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testPublicIpIsPreferredOverTheDnsName() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            Machine machine = Machine.builder().localhost()
+                .publicDnsName("unknown.host.invalid").createMachine();
+
+            assertThat(PortProber.isPortOpen(machine, socket.getLocalPort(),
+                PortProber.DEFAULT_TIMEOUT_IN_MILLISECONDS)).isTrue();
+
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testClosedPort() throws Exception {
+        Machine machine = Machine.builder().localhost().createMachine();
+        assertThat(PortProber.isPortOpen(machine, findRandomNotUsedPort(),
+            PortProber.DEFAULT_TIMEOUT_IN_MILLISECONDS)).isFalse();
+    }
+
+    private int findRandomNotUsedPort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activiti;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.impl.cfg.StandaloneProcessEngineConfiguration;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class DatabasePoolMetricsTest {
+
+    private static final String JDBC_URL = "jdbc:h2:mem:poolMetrics;DB_CLOSE_DELAY=-1";
+
+    @Test
+    public void testPoolStateIsExposedOverJmx() throws Exception {
+        StandaloneProcessEngineConfiguration configuration = newConfigurationFactory().getConfiguration();
+        assertThat(configuration.isJdbcPingEnabled()).isTrue();
+        assertThat(configuration.getJdbcPingQuery()).isEqualTo("SELECT 1");
+
+        ProcessEngine processEngine = configuration.buildProcessEngine();
+        DatabasePoolMetrics metrics = new DatabasePoolMetrics(configuration);
+        try {
+            metrics.register();
+            processEngine.getRepositoryService().createDeploymentQuery().count();
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DatabasePoolMetrics.OBJECT_NAME);
+
+            assertThat((Long) server.getAttribute(name, "RequestCount")).isGreaterThan(0);
+            assertThat((Integer) server.getAttribute(name, "ActiveConnectionCount")).isEqualTo(0);
+            assertThat((Integer) server.getAttribute(name, "IdleConnectionCount")).isGreaterThan(0);
+
+            metrics.unregister();
+            assertThat(server.isRegistered(name)).isFalse();
+
+        } finally {
+            metrics.unregister();
+            processEngine.close();
+        }
+    }
+
+    @Test
+    public void testNothingIsRegisteredWhenThePoolIsDisabled() throws Exception {
+        ConfigurationFactory factory = newConfigurationFactory();
+        factory.setJdbcPoolEnabled(false);
+        factory.setDataSource(new UnpooledDataSource("org.h2.Driver", JDBC_URL, "sa", ""));
+
+        new DatabasePoolMetrics(factory.getConfiguration()).register();
+
+        assertThat(ManagementFactory.getPlatformMBeanServer()
+            .isRegistered(new ObjectName(DatabasePoolMetrics.OBJECT_NAME))).isFalse();
+    }
+
+    private ConfigurationFactory newConfigurationFactory() {
+        ConfigurationFactory factory = new ConfigurationFactory();
+
+        factory.setJdbcDriver("org.h2.Driver");
+        factory.setJdbcUrl(JDBC_URL);
+        factory.setJdbcUsername("sa");
+        factory.setJdbcMaxActiveConnections(5);
+        factory.setJdbcMaxIdleConnections(2);
+        factory.setJdbcMaxCheckoutTime(20000);
+        factory.setJdbcMaxWaitTime(20000);
+        factory.setJdbcPingEnabled(true);
+        factory.setJdbcPingQuery("SELECT 1");
+        factory.setJdbcPingConnectionNotUsedFor(1000);
+        factory.setDatabaseSchemaUpdate("true");
+        factory.setJobExecutorActivate(false);
+
+        return factory;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activiti;
+
+import java.net.SocketTimeoutException;
+import org.activiti.engine.ActivitiException;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class FailureClassifierTest {
+
+    /**
+     * Same accessors as the AWS SDK AmazonServiceException
+     */
+    public static class ServiceException extends RuntimeException {
+
+        private final String errorCode;
+        private final int statusCode;
+
+        public ServiceException(String errorCode, int statusCode) {
+            super("AWS Error Code: " + errorCode);
+            this.errorCode = errorCode;
+            this.statusCode = statusCode;
+        }
+
+        public String getErrorCode() {
+            return errorCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    private final FailureClassifier classifier = new FailureClassifier();
+
+    @Test
+    public void testThrottlingIsDetectedAnywhereInTheChain() {
+        Exception throttled = new ServiceException("RequestLimitExceeded", 400);
+
+        assertThat(classifier.classify(throttled)).isEqualTo(FailureType.THROTTLING);
+        assertThat(classifier.classify(new ActivitiException("wrapped", throttled)))
+            .isEqualTo(FailureType.THROTTLING);
+        assertThat(classifier.classify(new ServiceException("ServiceUnavailable", 503)))
+            .isEqualTo(FailureType.THROTTLING);
+    }
+
+    @Test
+    public void testThrottlingIsNotDetectedFromTheMessage() {
+        assertThat(classifier.classify(new RuntimeException("RequestLimitExceeded")))
+            .isEqualTo(FailureType.TRANSIENT);
+    }
+
+    @Test
+    public void testTransientFailures() {
+        assertThat(classifier.classify(new RuntimeException(new SocketTimeoutException())))
+            .isEqualTo(FailureType.TRANSIENT);
+        assertThat(classifier.classify(new RuntimeException("unknown"))).isEqualTo(FailureType.TRANSIENT);
+        assertThat(classifier.classify(new ServiceException("InternalError", 500)))
+            .isEqualTo(FailureType.TRANSIENT);
+        assertThat(classifier.classify(null)).isEqualTo(FailureType.TRANSIENT);
+    }
+
+    @Test
+    public void testProgrammingErrorsAreRetried() {
+        assertThat(classifier.classify(new ActivitiException("wrapped", new NullPointerException())))
+            .isEqualTo(FailureType.TRANSIENT);
+        assertThat(classifier.classify(new IllegalArgumentException("invalid")))
+            .isEqualTo(FailureType.TRANSIENT);
+        assertThat(classifier.classify(new ClassCastException())).isEqualTo(FailureType.TRANSIENT);
+    }
+
+    @Test
+    public void testFatalFailures() {
+        assertThat(classifier.classify(new ActivitiException("wrapped", new ServiceException("AuthFailure", 401))))
+            .isEqualTo(FailureType.FATAL);
+        assertThat(classifier.classify(new ServiceException("InvalidAMIID.NotFound", 400)))
+            .isEqualTo(FailureType.FATAL);
+        assertThat(classifier.classify(new UnsupportedOperationException())).isEqualTo(FailureType.FATAL);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activiti;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testExponentialBackoffWithoutJitter() {
+        RetryPolicy policy = new RetryPolicy(10, 1, 10, 0);
+
+        assertThat(policy.computeDelayInMillis(0)).isEqualTo(1000);
+        assertThat(policy.computeDelayInMillis(1)).isEqualTo(2000);
+        assertThat(policy.computeDelayInMillis(3)).isEqualTo(8000);
+
+        /* capped */
+        assertThat(policy.computeDelayInMillis(4)).isEqualTo(10000);
+        assertThat(policy.computeDelayInMillis(100)).isEqualTo(10000);
+    }
+
+    @Test
+    public void testJitterOnlyExtendsTheDelay() {
+        RetryPolicy policy = new RetryPolicy(10, 2, 60, 0.5);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.computeDelayInMillis(1)).isGreaterThanOrEqualTo(4000).isLessThanOrEqualTo(6000);
+        }
+    }
+
+    @Test
+    public void testNumberOfRetries() {
+        RetryPolicy policy = new RetryPolicy(2, 1, 1);
+        assertThat(policy.hasRetriesLeft(1)).isTrue();
+        assertThat(policy.hasRetriesLeft(2)).isFalse();
+
+        assertThat(RetryPolicy.noRetries().hasRetriesLeft(0)).isFalse();
+        assertThat(new RetryPolicy(-1, 1, 1).hasRetriesLeft(Integer.MAX_VALUE)).isTrue();
+    }
+}
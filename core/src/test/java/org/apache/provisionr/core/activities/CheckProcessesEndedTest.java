@@ -19,15 +19,33 @@
 package org.apache.provisionr.core.activities;
 
 import org.apache.provisionr.test.ProcessVariablesCollector;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.activiti.engine.HistoryService;
 import org.activiti.engine.RuntimeService;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.activiti.engine.delegate.JavaDelegate;
+import org.activiti.engine.history.HistoricProcessInstance;
+import org.activiti.engine.history.HistoricProcessInstanceQuery;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.activiti.engine.runtime.ProcessInstanceQuery;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.core.CoreProcessVariables;
 import static org.fest.assertions.api.Assertions.assertThat;
 import org.junit.Test;
+import org.mockito.Matchers;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CheckProcessesEndedTest extends CheckProcessesTest {
@@ -36,6 +54,8 @@ public class CheckProcessesEndedTest extends CheckProcessesTest {
 
     private static final String RESULT = "result";
 
+    private static final String MINIMUM_RESULT = "minimum_result";
+
     @Test
     public void testWithAListOfEndedProcesses() throws Exception {
         DelegateExecution execution = mock(DelegateExecution.class);
@@ -74,6 +94,34 @@ public class CheckProcessesEndedTest extends CheckProcessesTest {
         assertThat((Boolean) collector.getVariable(RESULT)).isFalse();
     }
 
+    @Test
+    public void testWithSingleQueryByPoolBusinessKey() throws Exception {
+        DelegateExecution execution = mock(DelegateExecution.class);
+        when(execution.getVariable(eq(PROCESS_IDS))).thenReturn(Lists.newArrayList("1", "2", "3"));
+        when(execution.getVariable(eq(CoreProcessVariables.POOL_BUSINESS_KEY))).thenReturn("pool");
+
+        ProcessVariablesCollector collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        ProcessInstance parent = mockProcessInstance(/* ended= */ false);
+        when(parent.getId()).thenReturn("parent");
+        ProcessInstance running = mockProcessInstance(/* ended= */ false);
+        when(running.getId()).thenReturn("2");
+
+        ProcessInstanceQuery query = mock(ProcessInstanceQuery.class);
+        when(query.variableValueEquals(CoreProcessVariables.POOL_BUSINESS_KEY, "pool")).thenReturn(query);
+        when(query.list()).thenReturn(ImmutableList.of(parent, running));
+
+        RuntimeService runtimeService = mock(RuntimeService.class);
+        when(runtimeService.createProcessInstanceQuery()).thenReturn(query);
+
+        JavaDelegate delegate = new CheckProcessesEnded(runtimeService, PROCESS_IDS, RESULT);
+        delegate.execute(execution);
+
+        assertThat((Boolean) collector.getVariable(RESULT)).isFalse();
+        verify(query, never()).processInstanceId(anyString());
+    }
+
     /**
      * We consider an invalid process instance ID as ended by default
      */
@@ -94,4 +142,137 @@ public class CheckProcessesEndedTest extends CheckProcessesTest {
         assertThat((Boolean) collector.getVariable(RESULT)).isTrue();
     }
 
+    @Test
+    public void testPublishesReadyMachinesWhenMinSizeReached() throws Exception {
+        Machine first = Machine.builder().localhost().externalId("i-1").createMachine();
+        Machine second = Machine.builder().localhost().externalId("i-2").createMachine();
+        Machine third = Machine.builder().localhost().externalId("i-3").createMachine();
+
+        Pool pool = mock(Pool.class);
+        when(pool.getMinSize()).thenReturn(2);
+        when(pool.getExpectedSize()).thenReturn(3);
+
+        DelegateExecution execution = mock(DelegateExecution.class);
+        when(execution.getVariable(eq(PROCESS_IDS))).thenReturn(Lists.newArrayList("1", "2", "3"));
+        when(execution.getVariable(eq(CoreProcessVariables.POOL))).thenReturn(pool);
+        when(execution.getVariable(eq(CoreProcessVariables.MACHINES)))
+            .thenReturn(Lists.newArrayList(first, second, third));
+
+        ProcessVariablesCollector collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        RuntimeService runtimeService = mockRuntimeService(ImmutableMap.of(
+            "1", mockProcessInstance(/* ended= */ true),
+            "2", mockProcessInstance(/* ended= */ false),
+            "3", mockProcessInstance(/* ended= */ true)
+        ));
+
+        HistoryService historyService = mockHistoryService(ImmutableMap.of("1", "", "3", ""));
+
+        JavaDelegate delegate = new CheckProcessesEnded(runtimeService, historyService,
+            PROCESS_IDS, RESULT, MINIMUM_RESULT);
+        delegate.execute(execution);
+
+        assertThat((Boolean) collector.getVariable(RESULT)).isFalse();
+        assertThat((Boolean) collector.getVariable(MINIMUM_RESULT)).isTrue();
+        assertThat((Boolean) collector.getVariable(CoreProcessVariables.EXPECTED_MACHINES_READY)).isFalse();
+
+        @SuppressWarnings("unchecked")
+        List<Machine> ready = (List<Machine>) collector.getVariable(CoreProcessVariables.READY_MACHINES);
+        assertThat(ready).containsExactly(first, third);
+
+        HistoricProcessInstanceQuery query = historyService.createHistoricProcessInstanceQuery();
+        verify(query).processInstanceIds(ImmutableSet.of("1", "3"));
+        verify(query, never()).processInstanceId(anyString());
+    }
+
+    @Test
+    public void testNotReadyBelowMinSize() throws Exception {
+        Pool pool = mock(Pool.class);
+        when(pool.getMinSize()).thenReturn(2);
+
+        DelegateExecution execution = mock(DelegateExecution.class);
+        when(execution.getVariable(eq(PROCESS_IDS))).thenReturn(Lists.newArrayList("1", "2"));
+        when(execution.getVariable(eq(CoreProcessVariables.POOL))).thenReturn(pool);
+        when(execution.getVariable(eq(CoreProcessVariables.MACHINES))).thenReturn(Lists.newArrayList(
+            Machine.builder().localhost().externalId("i-1").createMachine(),
+            Machine.builder().localhost().externalId("i-2").createMachine()));
+
+        ProcessVariablesCollector collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        RuntimeService runtimeService = mockRuntimeService(ImmutableMap.of(
+            "1", mockProcessInstance(/* ended= */ true),
+            "2", mockProcessInstance(/* ended= */ false)
+        ));
+
+        HistoryService historyService = mockHistoryService(ImmutableMap.of("1", ""));
+
+        JavaDelegate delegate = new CheckProcessesEnded(runtimeService, historyService,
+            PROCESS_IDS, RESULT, MINIMUM_RESULT);
+        delegate.execute(execution);
+
+        assertThat((Boolean) collector.getVariable(MINIMUM_RESULT)).isFalse();
+    }
+
+    @Test
+    public void testKilledProcessesAreNotReady() throws Exception {
+        Machine first = Machine.builder().localhost().externalId("i-1").createMachine();
+        Machine second = Machine.builder().localhost().externalId("i-2").createMachine();
+
+        Pool pool = mock(Pool.class);
+        when(pool.getMinSize()).thenReturn(2);
+        when(pool.getExpectedSize()).thenReturn(2);
+
+        DelegateExecution execution = mock(DelegateExecution.class);
+        when(execution.getVariable(eq(PROCESS_IDS))).thenReturn(Lists.newArrayList("1", "2"));
+        when(execution.getVariable(eq(CoreProcessVariables.POOL))).thenReturn(pool);
+        when(execution.getVariable(eq(CoreProcessVariables.MACHINES))).thenReturn(Lists.newArrayList(first, second));
+
+        ProcessVariablesCollector collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        /* the second process was deleted so it is no longer returned by runtime queries */
+        RuntimeService runtimeService = mockRuntimeService(ImmutableMap.of(
+            "1", mockProcessInstance(/* ended= */ true)), "2");
+        HistoryService historyService = mockHistoryService(ImmutableMap.of(
+            "1", "", "2", "Pool terminated"));
+
+        JavaDelegate delegate = new CheckProcessesEnded(runtimeService, historyService,
+            PROCESS_IDS, RESULT, MINIMUM_RESULT);
+        delegate.execute(execution);
+
+        assertThat((Boolean) collector.getVariable(RESULT)).isTrue();
+        assertThat((Boolean) collector.getVariable(MINIMUM_RESULT)).isFalse();
+        assertThat((Boolean) collector.getVariable(CoreProcessVariables.EXPECTED_MACHINES_READY)).isFalse();
+
+        @SuppressWarnings("unchecked")
+        List<Machine> ready = (List<Machine>) collector.getVariable(CoreProcessVariables.READY_MACHINES);
+        assertThat(ready).containsExactly(first);
+    }
+
+    /**
+     * @param deleteReasons for ended processes, an empty string if the process completed normally
+     */
+    private HistoryService mockHistoryService(Map<String, String> deleteReasons) {
+        HistoryService historyService = mock(HistoryService.class);
+
+        List<HistoricProcessInstance> instances = Lists.newArrayList();
+        for (Map.Entry<String, String> entry : deleteReasons.entrySet()) {
+            HistoricProcessInstance instance = mock(HistoricProcessInstance.class);
+            when(instance.getId()).thenReturn(entry.getKey());
+            when(instance.getEndTime()).thenReturn(new Date());
+            when(instance.getDeleteReason()).thenReturn(entry.getValue().isEmpty() ? null : entry.getValue());
+            instances.add(instance);
+        }
+
+        /* a single query for all the ended processes - never one per process */
+        HistoricProcessInstanceQuery query = mock(HistoricProcessInstanceQuery.class);
+        when(query.processInstanceIds(Matchers.<Set<String>>any())).thenReturn(query);
+        when(query.finished()).thenReturn(query);
+        when(query.list()).thenReturn(instances);
+        when(historyService.createHistoricProcessInstanceQuery()).thenReturn(query);
+
+        return historyService;
+    }
 }
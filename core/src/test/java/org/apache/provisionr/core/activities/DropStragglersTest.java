@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activities;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.apache.provisionr.test.ProcessVariablesCollector;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DropStragglersTest extends CheckProcessesTest {
+
+    private static final String PROCESS_IDS = "process_ids";
+
+    @Test
+    public void testKeepsOnlyMachinesWithEndedSetupProcesses() throws Exception {
+        Machine ready = Machine.builder().localhost().externalId("i-1").createMachine();
+        Machine straggler = Machine.builder().localhost().externalId("i-2").createMachine();
+        Machine withoutProcess = Machine.builder().localhost().externalId("i-3").createMachine();
+
+        DelegateExecution execution = mock(DelegateExecution.class);
+        when(execution.getVariable(eq(CoreProcessVariables.POOL))).thenReturn(mockPool(3));
+        when(execution.getVariable(eq(PROCESS_IDS))).thenReturn(Lists.newArrayList("1", "2"));
+        when(execution.getVariable(eq(CoreProcessVariables.MACHINES)))
+            .thenReturn(Lists.newArrayList(ready, straggler, withoutProcess));
+
+        ProcessVariablesCollector collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        RuntimeService runtimeService = mockRuntimeService(ImmutableMap.of(
+            "1", mockProcessInstance(/* ended= */ true),
+            "2", mockProcessInstance(/* ended= */ false)
+        ));
+
+        new DropStragglers(runtimeService, PROCESS_IDS).execute(execution);
+
+        verify(runtimeService).deleteProcessInstance(eq("2"), anyString());
+        verify(runtimeService, never()).deleteProcessInstance(eq("1"), anyString());
+
+        @SuppressWarnings("unchecked")
+        List<Machine> machines = (List<Machine>) collector.getVariable(CoreProcessVariables.MACHINES);
+        assertThat(machines).containsExactly(ready);
+        assertThat(collector.getVariable(CoreProcessVariables.READY_MACHINES)).isEqualTo(machines);
+        assertThat(collector.getVariable(PROCESS_IDS)).isEqualTo(Lists.newArrayList("1"));
+    }
+
+    @Test
+    public void testKeepsAtMostExpectedSizeMachines() throws Exception {
+        Machine first = Machine.builder().localhost().externalId("i-1").createMachine();
+        Machine second = Machine.builder().localhost().externalId("i-2").createMachine();
+        Machine extra = Machine.builder().localhost().externalId("i-3").createMachine();
+
+        DelegateExecution execution = mock(DelegateExecution.class);
+        when(execution.getVariable(eq(CoreProcessVariables.POOL))).thenReturn(mockPool(2));
+        when(execution.getVariable(eq(PROCESS_IDS))).thenReturn(Lists.newArrayList("1", "2", "3"));
+        when(execution.getVariable(eq(CoreProcessVariables.MACHINES)))
+            .thenReturn(Lists.newArrayList(first, second, extra));
+
+        ProcessVariablesCollector collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        RuntimeService runtimeService = mockRuntimeService(ImmutableMap.of(
+            "1", mockProcessInstance(/* ended= */ true),
+            "2", mockProcessInstance(/* ended= */ true),
+            "3", mockProcessInstance(/* ended= */ true)
+        ));
+
+        new DropStragglers(runtimeService, PROCESS_IDS).execute(execution);
+
+        verify(runtimeService, never()).deleteProcessInstance(anyString(), anyString());
+
+        @SuppressWarnings("unchecked")
+        List<Machine> machines = (List<Machine>) collector.getVariable(CoreProcessVariables.MACHINES);
+        assertThat(machines).containsExactly(first, second);
+    }
+
+    private Pool mockPool(int expectedSize) {
+        Pool pool = mock(Pool.class);
+        when(pool.getExpectedSize()).thenReturn(expectedSize);
+        return pool;
+    }
+}
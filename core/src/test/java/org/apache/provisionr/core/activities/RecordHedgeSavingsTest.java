@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activities;
+
+import com.google.common.collect.Lists;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.activiti.engine.HistoryService;
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.history.HistoricProcessInstance;
+import org.activiti.engine.history.HistoricProcessInstanceQuery;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.apache.provisionr.test.ProcessVariablesCollector;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RecordHedgeSavingsTest {
+
+    private static final String PROCESS_IDS = "process_ids";
+
+    private final long now = System.currentTimeMillis();
+
+    @Test
+    public void testSavingsAreMeasuredAgainstTheMedianSetupTime() throws Exception {
+        HistoryService historyService = mock(HistoryService.class);
+        HistoricProcessInstanceQuery query = mock(HistoricProcessInstanceQuery.class);
+        when(historyService.createHistoricProcessInstanceQuery()).thenReturn(query);
+
+        mockHistoricProcessInstance(query, "1", 100, 40);
+        mockHistoricProcessInstance(query, "2", 100, 50);
+        mockHistoricProcessInstance(query, "3", 100, 60);
+        mockHistoricProcessInstance(query, "4", 100, -1);
+
+        ProcessEngine processEngine = mock(ProcessEngine.class);
+        when(processEngine.getHistoryService()).thenReturn(historyService);
+
+        DelegateExecution execution = mock(DelegateExecution.class);
+        when(execution.getVariable(eq(PROCESS_IDS))).thenReturn(Lists.newArrayList("1", "2", "3", "4"));
+
+        ProcessVariablesCollector collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        new RecordHedgeSavings(processEngine, PROCESS_IDS).execute(execution);
+
+        /* the straggler started 100 seconds ago, the median setup time is 50 seconds */
+        long saved = (Long) collector.getVariable(CoreProcessVariables.HEDGE_TIME_SAVED_IN_SECONDS);
+        assertThat(saved).isGreaterThanOrEqualTo(49).isLessThanOrEqualTo(51);
+    }
+
+    /**
+     * @param durationInSeconds negative for a process that is still running
+     */
+    private void mockHistoricProcessInstance(HistoricProcessInstanceQuery query, String processId,
+                                             long startedSecondsAgo, long durationInSeconds) {
+        final long start = now - TimeUnit.SECONDS.toMillis(startedSecondsAgo);
+
+        HistoricProcessInstance instance = mock(HistoricProcessInstance.class);
+        when(instance.getStartTime()).thenReturn(new Date(start));
+        if (durationInSeconds >= 0) {
+            when(instance.getEndTime()).thenReturn(new Date(start + TimeUnit.SECONDS.toMillis(durationInSeconds)));
+        }
+
+        HistoricProcessInstanceQuery specificQuery = mock(HistoricProcessInstanceQuery.class);
+        when(specificQuery.singleResult()).thenReturn(instance);
+        when(query.processInstanceId(eq(processId))).thenReturn(specificQuery);
+    }
+}
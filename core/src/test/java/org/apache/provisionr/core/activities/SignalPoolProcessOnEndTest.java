@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activities;
+
+import com.google.common.collect.ImmutableList;
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.runtime.Execution;
+import org.activiti.engine.runtime.ExecutionQuery;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SignalPoolProcessOnEndTest {
+
+    private static final String SIGNAL_NAME = "machineSetupProcessesEnded";
+
+    private RuntimeService runtimeService;
+    private DelegateExecution execution;
+
+    @Before
+    public void setUp() {
+        Execution waiting = mock(Execution.class);
+        when(waiting.getId()).thenReturn("e1");
+
+        ExecutionQuery query = mock(ExecutionQuery.class);
+        when(query.processInstanceBusinessKey("pool-1")).thenReturn(query);
+        when(query.signalEventSubscription(SIGNAL_NAME)).thenReturn(query);
+        when(query.list()).thenReturn(ImmutableList.of(waiting));
+
+        runtimeService = mock(RuntimeService.class);
+        when(runtimeService.createExecutionQuery()).thenReturn(query);
+
+        execution = mock(DelegateExecution.class);
+        when(execution.getVariable(CoreProcessVariables.POOL_BUSINESS_KEY)).thenReturn("pool-1");
+    }
+
+    @Test
+    public void testThePoolProcessIsSignaledEveryTimeAProcessEnds() throws Exception {
+        SignalPoolProcessOnEnd listener = new SignalPoolProcessOnEnd(runtimeService, SIGNAL_NAME);
+
+        listener.notify(execution);
+        listener.notify(execution);
+
+        verify(runtimeService, times(2)).signalEventReceived(SIGNAL_NAME, "e1");
+    }
+
+    /**
+     * Outside of an Activiti command the signal is sent right away - the failure
+     * must not escape after the machine process already ended
+     */
+    @Test
+    public void testSignalFailuresDoNotPropagate() throws Exception {
+        doThrow(new ActivitiException("optimistic locking")).when(runtimeService)
+            .signalEventReceived(SIGNAL_NAME, "e1");
+
+        new SignalPoolProcessOnEnd(runtimeService, SIGNAL_NAME).notify(execution);
+
+        verify(runtimeService).signalEventReceived(SIGNAL_NAME, "e1");
+    }
+
+    @Test
+    public void testNothingIsSignaledWithoutAPoolBusinessKey() throws Exception {
+        when(execution.getVariable(CoreProcessVariables.POOL_BUSINESS_KEY)).thenReturn(null);
+
+        new SignalPoolProcessOnEnd(runtimeService, SIGNAL_NAME).notify(execution);
+
+        verify(runtimeService, never()).signalEventReceived(anyString(), anyString());
+    }
+}
@@ -44,6 +44,7 @@ public class SpawnProcessForEachMachineTest {
 
     private static final String EMPTY_PROCESS_KEY = "empty";
     private static final String RESULT = "result";
+    private static final String DONE = "done";
 
     private static final String BUSINESS_KEY = UUID.randomUUID().toString();
 
@@ -85,4 +86,47 @@ public class SpawnProcessForEachMachineTest {
         }
     }
 
+    @Test
+    public void testSpawnProcessesInChunks() throws Exception {
+        DelegateExecution execution = mock(DelegateExecution.class);
+        Pool pool = mock(Pool.class, withSettings().serializable());
+        Software software = mock(Software.class, withSettings().serializable());
+        when(software.isCachedImage()).thenReturn(false);
+        when(pool.getSoftware()).thenReturn(software);
+        when(execution.getVariable(eq(CoreProcessVariables.POOL))).thenReturn(pool);
+        when(execution.getVariable(eq(CoreProcessVariables.POOL_BUSINESS_KEY))).thenReturn(BUSINESS_KEY);
+        when(execution.getProcessBusinessKey()).thenReturn(BUSINESS_KEY);
+
+        List<Machine> machines = Lists.newArrayList(
+            Machine.builder().localhost().createMachine(),
+            Machine.builder().localhost().externalId("local-2").createMachine(),
+            Machine.builder().localhost().externalId("local-3").createMachine()
+        );
+        when(execution.getVariable(eq(CoreProcessVariables.MACHINES))).thenReturn(machines);
+
+        ProcessVariablesCollector collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        ProcessEngine processEngine = new StandaloneInMemProcessEngineConfiguration()
+            .setJobExecutorActivate(true).buildProcessEngine();
+        processEngine.getRepositoryService().createDeployment()
+            .addClasspathResource("diagrams/empty.bpmn20.xml").deploy();
+
+        try {
+            JavaDelegate delegate = new SpawnProcessForEachMachine(processEngine, EMPTY_PROCESS_KEY,
+                "test", RESULT, DONE, 2);
+
+            delegate.execute(execution);
+            assertThat((List<?>) collector.getVariable(RESULT)).hasSize(2);
+            assertThat((Boolean) collector.getVariable(DONE)).isFalse();
+
+            when(execution.getVariable(eq(RESULT))).thenReturn(collector.getVariable(RESULT));
+            delegate.execute(execution);
+            assertThat((List<?>) collector.getVariable(RESULT)).hasSize(3);
+            assertThat((Boolean) collector.getVariable(DONE)).isTrue();
+
+        } finally {
+            processEngine.close();
+        }
+    }
 }
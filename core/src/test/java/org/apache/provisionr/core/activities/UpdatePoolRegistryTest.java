@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.activities;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.util.Map;
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.ProcessEngineConfiguration;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.delegate.JavaDelegate;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.apache.provisionr.core.InMemoryPoolRegistry;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+public class UpdatePoolRegistryTest {
+
+    private static final String PROCESS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<definitions xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\"" +
+        " xmlns:activiti=\"http://activiti.org/bpmn\" targetNamespace=\"http://www.activiti.org/test\">\n" +
+        "  <process id=\"registry\">\n" +
+        "    <extensionElements>\n" +
+        "      <activiti:executionListener event=\"start\" delegateExpression=\"${updatePoolRegistry}\"/>\n" +
+        "    </extensionElements>\n" +
+        "    <startEvent id=\"start\"/>\n" +
+        "    <sequenceFlow id=\"flow1\" sourceRef=\"start\" targetRef=\"work\"/>\n" +
+        "    <serviceTask id=\"work\" activiti:delegateExpression=\"${work}\"/>\n" +
+        "    <sequenceFlow id=\"flow2\" sourceRef=\"work\" targetRef=\"wait\"/>\n" +
+        "    <receiveTask id=\"wait\"/>\n" +
+        "    <sequenceFlow id=\"flow3\" sourceRef=\"wait\" targetRef=\"end\"/>\n" +
+        "    <endEvent id=\"end\"/>\n" +
+        "  </process>\n" +
+        "</definitions>";
+
+    private ProcessEngine processEngine;
+    private InMemoryPoolRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new InMemoryPoolRegistry(mock(RuntimeService.class));
+
+        Map<Object, Object> beans = Maps.newHashMap();
+        beans.put("updatePoolRegistry", new UpdatePoolRegistry(registry));
+        beans.put("work", new JavaDelegate() {
+            @Override
+            public void execute(DelegateExecution execution) {
+                if (Boolean.TRUE.equals(execution.getVariable("fail"))) {
+                    throw new RuntimeException("failing on purpose");
+                }
+            }
+        });
+
+        ProcessEngineConfigurationImpl configuration = (ProcessEngineConfigurationImpl)
+            ProcessEngineConfiguration.createStandaloneInMemProcessEngineConfiguration();
+        configuration.setBeans(beans);
+        configuration.setJobExecutorActivate(false);
+
+        processEngine = configuration.buildProcessEngine();
+        processEngine.getRepositoryService().createDeployment()
+            .addString("registry.bpmn20.xml", PROCESS).deploy();
+    }
+
+    @After
+    public void tearDown() {
+        processEngine.close();
+    }
+
+    @Test
+    public void testPoolIsRegisteredWhenTheTransactionCommits() {
+        processEngine.getRuntimeService().startProcessInstanceByKey("registry", "k1", variables(false));
+
+        assertThat(registry.get("k1").isPresent()).isTrue();
+    }
+
+    @Test
+    public void testNothingIsRegisteredWhenTheTransactionIsRolledBack() {
+        try {
+            processEngine.getRuntimeService().startProcessInstanceByKey("registry", "k1", variables(true));
+            fail("expected the process to fail");
+
+        } catch (RuntimeException e) {
+            assertThat(Throwables.getRootCause(e).getMessage()).isEqualTo("failing on purpose");
+        }
+
+        assertThat(registry.get("k1").isPresent()).isFalse();
+    }
+
+    private Map<String, Object> variables(boolean fail) {
+        return ImmutableMap.<String, Object>of(
+            CoreProcessVariables.POOL, mock(Pool.class, withSettings().serializable()),
+            CoreProcessVariables.POOL_BUSINESS_KEY, "k1",
+            "fail", fail);
+    }
+}
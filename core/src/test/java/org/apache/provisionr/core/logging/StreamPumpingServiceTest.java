@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.core.logging;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamPumpingServiceTest {
+
+    private StreamPumpingService service;
+
+    @Before
+    public void setUp() {
+        service = new StreamPumpingService(1, 10);
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+    }
+
+    @Test
+    public void testPumpManyStreamsWithOneWorker() throws Exception {
+        final List<String> lines = Lists.newCopyOnWriteArrayList();
+
+        List<StreamPumpingService.PumpedStream> streams = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            final byte[] bytes = String.format("line1-%d\r\n\nline2-%d\nline3-%d", i, i, i).getBytes(Charsets.UTF_8);
+            streams.add(service.pump(new ByteArrayInputStream(bytes), new StreamPumpingService.LineHandler() {
+                @Override
+                public void handle(String line) {
+                    lines.add(line);
+                }
+            }));
+        }
+
+        for (StreamPumpingService.PumpedStream stream : streams) {
+            assertThat(stream.finish(5, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(lines).hasSize(15).contains("line1-0", "line2-2", "line3-4");
+        assertThat(service.getActiveStreamsCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLongLinesAreSplit() throws Exception {
+        final List<String> lines = Lists.newCopyOnWriteArrayList();
+
+        final String content = Strings.repeat("x", StreamPumpingService.CHUNK_SIZE_IN_BYTES + 10);
+        StreamPumpingService.PumpedStream stream = service.pump(
+            new ByteArrayInputStream(content.getBytes(Charsets.UTF_8)),
+            new StreamPumpingService.LineHandler() {
+                @Override
+                public void handle(String line) {
+                    lines.add(line);
+                }
+            });
+
+        assertThat(stream.finish(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0)).hasSize(StreamPumpingService.CHUNK_SIZE_IN_BYTES);
+    }
+
+    @Test
+    public void testTheDefaultServiceIsReplacedAfterClose() {
+        StreamPumpingService first = StreamPumpingService.getDefault();
+        first.close();
+
+        StreamPumpingService second = StreamPumpingService.getDefault();
+        try {
+            assertThat(second).isNotSameAs(first);
+            assertThat(StreamPumpingService.getDefault()).isSameAs(second);
+        } finally {
+            second.close();
+        }
+    }
+}
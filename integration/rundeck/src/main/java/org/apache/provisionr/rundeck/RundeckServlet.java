@@ -19,14 +19,18 @@
 package org.apache.provisionr.rundeck;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Objects;
 import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Set;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -34,66 +38,103 @@ import javax.servlet.http.HttpServletResponse;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
-import org.activiti.engine.ProcessEngine;
-import org.activiti.engine.runtime.ProcessInstance;
 import org.apache.provisionr.api.pool.Machine;
 import org.apache.provisionr.api.pool.Pool;
-import org.apache.provisionr.core.CoreProcessVariables;
-
+import org.apache.provisionr.core.PoolRegistry;
+import org.apache.provisionr.core.RegisteredPool;
+
+/**
+ * Rundeck resource model for all the active pools
+ * <p/>
+ * The nodes are rebuilt and the complete model is serialized again only when the
+ * pool registry changes. Responses carry an ETag derived from the registry version
+ * so that Rundeck can poll using If-None-Match. Use the "key" and "tags" (comma
+ * separated, all required) query parameters to get only some of the nodes.
+ */
 public class RundeckServlet extends HttpServlet {
 
-    private final ProcessEngine processEngine;
-    private final Marshaller marshaller;
+    public static final String KEY_PARAMETER = "key";
+    public static final String TAGS_PARAMETER = "tags";
+
+    private static final String CONTENT_TYPE = "application/xml;charset=UTF-8";
 
-    public RundeckServlet(ProcessEngine processEngine) throws JAXBException {
-        this.processEngine = checkNotNull(processEngine, "processEngine is null");
+    /**
+     * Nodes for a single pool together with the tags used for filtering
+     */
+    private static class PoolNodes {
 
-        this.marshaller = JAXBContext.newInstance(Project.class).createMarshaller();
-        this.marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        private final String businessKey;
+        private final Set<String> tags;
+        private final List<Node> nodes;
+
+        PoolNodes(String businessKey, Set<String> tags, List<Node> nodes) {
+            this.businessKey = checkNotNull(businessKey, "businessKey is null");
+            this.tags = ImmutableSet.copyOf(tags);
+            this.nodes = ImmutableList.copyOf(nodes);
+        }
+    }
+
+    private static class Model {
+
+        private final long version;
+        private final List<PoolNodes> pools;
+        private final byte[] xml;
+
+        Model(long version, List<PoolNodes> pools, byte[] xml) {
+            this.version = version;
+            this.pools = ImmutableList.copyOf(pools);
+            this.xml = checkNotNull(xml, "xml is null");
+        }
+    }
+
+    private final PoolRegistry poolRegistry;
+    private final JAXBContext context;
+
+    /**
+     * Makes sure ETags are not reused after a restart when the registry version starts again from 0
+     */
+    private final String epoch = Long.toHexString(System.currentTimeMillis());
+
+    private volatile Model model;
+
+    public RundeckServlet(PoolRegistry poolRegistry) throws JAXBException {
+        this.poolRegistry = checkNotNull(poolRegistry, "poolRegistry is null");
+        this.context = JAXBContext.newInstance(Project.class);
     }
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
         throws ServletException, IOException {
-        response.setContentType("application/xml;charset=UTF-8");
-        writeRundeckResourceModelXmlTo(response.getWriter());
-    }
+        final Model current = getModel();
 
-    @VisibleForTesting
-    void writeRundeckResourceModelXmlTo(PrintWriter writer) {
-        final List<ProcessInstance> processes = processEngine.getRuntimeService()
-            .createProcessInstanceQuery().list();
-
-        Project project = new Project();
-        for (ProcessInstance instance : processes) {
-            final Pool pool = (Pool) processEngine.getRuntimeService()
-                .getVariable(instance.getId(), CoreProcessVariables.POOL);
-            if (pool == null) {
-                continue; /* skip - this process is not a provisionr process */
-            }
+        final String etag = "\"" + epoch + "-" + current.version + "\"";
+        response.setHeader("ETag", etag);
 
-            final String businessKey = (String) processEngine.getRuntimeService()
-                .getVariable(instance.getId(), CoreProcessVariables.POOL_BUSINESS_KEY);
-            if (!Objects.equal(instance.getBusinessKey(), businessKey)) {
-                continue; /* ignore - this is a process started by the main pool management process */
-            }
+        if (matchesAny(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
 
-            @SuppressWarnings("unchecked")
-            List<Machine> machines = (List<Machine>) processEngine.getRuntimeService()
-                .getVariable(instance.getId(), CoreProcessVariables.MACHINES);
-            if (machines == null) {
-                continue;   /* the list of machines is not yet available */
-            }
+        response.setContentType(CONTENT_TYPE);
 
-            project.setNodes(transformMachinesToRundeckNodes(businessKey, pool, machines));
+        String key = request.getParameter(KEY_PARAMETER);
+        Set<String> tags = parseTags(request.getParameter(TAGS_PARAMETER));
+        if (key == null && tags.isEmpty()) {
+            response.setContentLength(current.xml.length);
+            response.getOutputStream().write(current.xml);
+        } else {
+            marshal(filter(current, key, tags), response.getOutputStream());
         }
+    }
 
-        try {
-            marshaller.marshal(project, writer);
+    @VisibleForTesting
+    void writeRundeckResourceModelXmlTo(OutputStream out) throws IOException {
+        out.write(getModel().xml);
+    }
 
-        } catch (JAXBException e) {
-            throw Throwables.propagate(e);
-        }
+    @VisibleForTesting
+    void writeRundeckResourceModelXmlTo(OutputStream out, String key, Set<String> tags) {
+        marshal(filter(getModel(), key, tags), out);
     }
 
     @VisibleForTesting
@@ -124,4 +165,84 @@ public class RundeckServlet extends HttpServlet {
 
         return nodes;
     }
+
+    private Model getModel() {
+        Model current = model;
+        if (current != null && current.version == poolRegistry.getVersion()) {
+            return current;
+        }
+
+        synchronized (this) {
+            long version = poolRegistry.getVersion();
+            if (model == null || model.version != version) {
+                model = buildModel(version);
+            }
+            return model;
+        }
+    }
+
+    private Model buildModel(long version) {
+        List<PoolNodes> pools = Lists.newArrayList();
+        List<Node> allNodes = Lists.newArrayList();
+
+        for (RegisteredPool pool : poolRegistry.list()) {
+            if (pool.getMachines().isEmpty()) {
+                continue;   /* the list of machines is not yet available */
+            }
+
+            List<Node> nodes = transformMachinesToRundeckNodes(pool.getBusinessKey(),
+                pool.getPool(), pool.getMachines());
+
+            pools.add(new PoolNodes(pool.getBusinessKey(), pool.getPool().getSoftware().getPackages(), nodes));
+            allNodes.addAll(nodes);
+        }
+
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        marshal(new Project(allNodes), xml);
+
+        return new Model(version, pools, xml.toByteArray());
+    }
+
+    private Project filter(Model current, String key, Set<String> tags) {
+        List<Node> nodes = Lists.newArrayList();
+        for (PoolNodes pool : current.pools) {
+            if ((key == null || key.equals(pool.businessKey)) && pool.tags.containsAll(tags)) {
+                nodes.addAll(pool.nodes);
+            }
+        }
+        return new Project(nodes);
+    }
+
+    /**
+     * Marshallers are not thread safe so we create a new one for each call
+     */
+    private void marshal(Project project, OutputStream out) {
+        try {
+            Marshaller marshaller = context.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            marshaller.marshal(project, out);
+
+        } catch (JAXBException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private Set<String> parseTags(String tags) {
+        if (tags == null) {
+            return ImmutableSet.of();
+        }
+        return ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(tags));
+    }
+
+    private boolean matchesAny(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : Splitter.on(',').trimResults().split(ifNoneMatch)) {
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
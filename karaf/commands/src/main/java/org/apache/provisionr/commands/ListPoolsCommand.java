@@ -19,21 +19,21 @@
 package org.apache.provisionr.commands;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Objects;
+import com.google.common.base.Optional;
 import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableList;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import java.io.PrintStream;
+import java.util.Collection;
 import java.util.List;
-import org.activiti.engine.ProcessEngine;
-import org.activiti.engine.runtime.ProcessInstance;
 import org.apache.felix.gogo.commands.Command;
 import org.apache.felix.gogo.commands.Option;
 import org.apache.karaf.shell.console.OsgiCommandSupport;
 import org.apache.provisionr.api.pool.Machine;
-import org.apache.provisionr.api.pool.Pool;
-import org.apache.provisionr.core.CoreProcessVariables;
+import org.apache.provisionr.core.PoolRegistry;
+import org.apache.provisionr.core.RegisteredPool;
 
 @Command(scope = "provisionr", name = "pools", description = "List active pools")
 public class ListPoolsCommand extends OsgiCommandSupport {
@@ -44,55 +44,37 @@ public class ListPoolsCommand extends OsgiCommandSupport {
         required = false)
     private String key = "";
 
-    private final ProcessEngine processEngine;
+    private final PoolRegistry poolRegistry;
 
-    public ListPoolsCommand(ProcessEngine processEngine) {
-        this.processEngine = checkNotNull(processEngine, "processEngine is null");
+    public ListPoolsCommand(PoolRegistry poolRegistry) {
+        this.poolRegistry = checkNotNull(poolRegistry, "poolRegistry is null");
     }
 
     @Override
     protected Object doExecute() {
-        List<ProcessInstance> processes;
+        Collection<RegisteredPool> pools;
         if (key.isEmpty()) {
-            processes = processEngine.getRuntimeService().createProcessInstanceQuery().list();
+            pools = poolRegistry.list();
         } else {
-            processes = processEngine.getRuntimeService().createProcessInstanceQuery()
-                .processInstanceBusinessKey(key).list();
+            Optional<RegisteredPool> pool = poolRegistry.get(key);
+            pools = pool.isPresent() ? ImmutableList.of(pool.get()) : ImmutableList.<RegisteredPool>of();
         }
 
-        if (processes.isEmpty()) {
+        if (pools.isEmpty()) {
             out.println("No active pools found. You can create one using provisionr:create");
             return null;
         }
 
         final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        for (ProcessInstance instance : processes) {
-            Pool pool = (Pool) processEngine.getRuntimeService()
-                .getVariable(instance.getId(), CoreProcessVariables.POOL);
-            if (pool == null) {
-                continue; /* skip - this process is not a provisionr process */
-            }
-
-            String businessKey = (String) processEngine.getRuntimeService()
-                .getVariable(instance.getId(), CoreProcessVariables.POOL_BUSINESS_KEY);
-            if (!Objects.equal(instance.getBusinessKey(), businessKey)) {
-                continue; /* ignore - this is a process started by the main pool management process */
-            }
-
-            @SuppressWarnings("unchecked")
-            List<Machine> machines = (List<Machine>) processEngine.getRuntimeService()
-                .getVariable(instance.getId(), CoreProcessVariables.MACHINES);
-
+        for (RegisteredPool pool : pools) {
             out.println("****** Pool Description ******");
-            out.println(gson.toJson(pool));
+            out.println(gson.toJson(pool.getPool()));
 
             out.println("****** List of Machines ******");
-            if (machines != null) {
-                out.println(gson.toJson(machines, new TypeToken<List<Machine>>() {
-                }.getType()));
-            }
+            out.println(gson.toJson(pool.getMachines(), new TypeToken<List<Machine>>() {
+            }.getType()));
 
-            out.println("Pool Key: " + instance.getBusinessKey());
+            out.println("Pool Key: " + pool.getBusinessKey());
             out.println();
         }
 
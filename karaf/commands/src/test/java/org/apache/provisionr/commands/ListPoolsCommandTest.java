@@ -18,26 +18,23 @@
 
 package org.apache.provisionr.commands;
 
-import org.apache.provisionr.api.pool.Pool;
-import org.apache.provisionr.core.CoreProcessVariables;
 import com.google.common.collect.ImmutableList;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.Collections;
-import java.util.List;
-import org.activiti.engine.ProcessEngine;
 import org.activiti.engine.RuntimeService;
-import org.activiti.engine.runtime.ProcessInstance;
-import org.activiti.engine.runtime.ProcessInstanceQuery;
 import org.apache.felix.service.command.CommandSession;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.core.InMemoryPoolRegistry;
+import org.apache.provisionr.core.PoolRegistry;
+import org.apache.provisionr.core.PoolStatus;
+import org.apache.provisionr.core.RegisteredPool;
 import static org.fest.assertions.api.Assertions.assertThat;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.Matchers;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 public class ListPoolsCommandTest {
 
@@ -58,9 +55,7 @@ public class ListPoolsCommandTest {
 
     @Test
     public void testNoProcessesRunning() throws Exception {
-        final ProcessEngine processEngine = newProcessEngineMock(Collections.<ProcessInstance>emptyList());
-
-        ListPoolsCommand command = new ListPoolsCommand(processEngine);
+        ListPoolsCommand command = new ListPoolsCommand(newPoolRegistry());
         command.setOut(out);
 
         CommandSession session = mock(CommandSession.class);
@@ -79,17 +74,11 @@ public class ListPoolsCommandTest {
 
     @Test
     public void testListProcess() throws Exception {
-        final List<ProcessInstance> processes = ImmutableList.of(
-            newProcessInstanceMock("p1", "k1"),
-            newProcessInstanceMock("p2", "k2")
-        );
-        final ProcessEngine processEngine = newProcessEngineMock(processes);
+        PoolRegistry poolRegistry = newPoolRegistry();
+        poolRegistry.put(new RegisteredPool("k1", "p1", mock(Pool.class), PoolStatus.READY,
+            ImmutableList.of(Machine.builder().localhost().createMachine())));
 
-        Pool pool = mock(Pool.class);
-        setVariable(processEngine, "p1", CoreProcessVariables.POOL, pool);
-        setVariable(processEngine, "p1", CoreProcessVariables.POOL_BUSINESS_KEY, "k1");
-
-        ListPoolsCommand command = new ListPoolsCommand(processEngine);
+        ListPoolsCommand command = new ListPoolsCommand(poolRegistry);
         command.setOut(out);
 
         /* list all active pools */
@@ -100,6 +89,7 @@ public class ListPoolsCommandTest {
         assertThat(outputStream.toString())
             .contains("Pool Description")
             .contains("List of Machines")
+            .contains("local-1")
             .contains("Pool Key: k1");
 
         /* run the same command with a filter on business key */
@@ -108,51 +98,10 @@ public class ListPoolsCommandTest {
         command.execute(session);
         out.flush();
 
-        assertThat(outputStream.toString()).isEmpty();
-    }
-
-    private ProcessInstance newProcessInstanceMock(String id, String businessKey) {
-        ProcessInstance instance = mock(ProcessInstance.class);
-
-        when(instance.getId()).thenReturn(id);
-        when(instance.getBusinessKey()).thenReturn(businessKey);
-
-        return instance;
-    }
-
-    private void setVariable(ProcessEngine engine, String instanceId, String key, Object value) {
-        RuntimeService runtimeService = engine.getRuntimeService();
-
-        when(runtimeService.getVariable(instanceId, key)).thenReturn(value);
+        assertThat(outputStream.toString()).containsIgnoringCase("no active pools found");
     }
 
-    private ProcessEngine newProcessEngineMock(List<ProcessInstance> instances) {
-        ProcessEngine processEngine = mock(ProcessEngine.class);
-
-        RuntimeService runtimeService = mock(RuntimeService.class);
-        when(processEngine.getRuntimeService()).thenReturn(runtimeService);
-
-        ProcessInstanceQuery allInstancesQuery = mock(ProcessInstanceQuery.class);
-        when(allInstancesQuery.list()).thenReturn(instances);
-        when(runtimeService.createProcessInstanceQuery()).thenReturn(allInstancesQuery);
-
-        for (ProcessInstance instance : instances) {
-            ProcessInstanceQuery singleResultQuery = mock(ProcessInstanceQuery.class);
-
-            when(singleResultQuery.list()).thenReturn(ImmutableList.of(instance));
-            when(allInstancesQuery.processInstanceBusinessKey(instance.getBusinessKey()))
-                .thenReturn(singleResultQuery);
-        }
-
-        if (instances.isEmpty()) {
-            ProcessInstanceQuery emptyQuery = mock(ProcessInstanceQuery.class);
-
-            when(emptyQuery.list()).thenReturn(Collections.<ProcessInstance>emptyList());
-            when(allInstancesQuery.processInstanceBusinessKey(Matchers.<String>any()))
-                .thenReturn(emptyQuery);
-        }
-
-        return processEngine;
+    private PoolRegistry newPoolRegistry() {
+        return new InMemoryPoolRegistry(mock(RuntimeService.class));
     }
-
 }
@@ -21,13 +21,13 @@ package org.apache.provisionr.amazon;
 import com.google.common.base.Optional;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.Maps;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import org.activiti.engine.ProcessEngine;
 import org.activiti.engine.runtime.ProcessInstance;
 import org.apache.provisionr.amazon.config.DefaultProviderConfig;
+import org.apache.provisionr.amazon.core.LaunchPlan;
 import org.apache.provisionr.amazon.options.ProviderOptions;
 import org.apache.provisionr.api.pool.Machine;
 import org.apache.provisionr.api.pool.Pool;
@@ -35,8 +35,9 @@ import org.apache.provisionr.api.provider.Provider;
 import org.apache.provisionr.core.CoreConstants;
 import org.apache.provisionr.core.CoreProcessVariables;
 import org.apache.provisionr.core.CoreSignals;
-import org.apache.provisionr.core.PoolStatus;
+import org.apache.provisionr.core.PoolRegistry;
 import org.apache.provisionr.core.ProvisionrSupport;
+import org.apache.provisionr.core.RegisteredPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,10 +50,13 @@ public class AmazonProvisionr extends ProvisionrSupport {
 
     private final ProcessEngine processEngine;
     private final Optional<Provider> defaultProvider;
+    private final PoolRegistry poolRegistry;
 
-    public AmazonProvisionr(ProcessEngine processEngine, DefaultProviderConfig defaultProviderConfig) {
+    public AmazonProvisionr(ProcessEngine processEngine, DefaultProviderConfig defaultProviderConfig,
+                            PoolRegistry poolRegistry) {
         this.processEngine = checkNotNull(processEngine, "processEngine is null");
         this.defaultProvider = defaultProviderConfig.createProvider();
+        this.poolRegistry = checkNotNull(poolRegistry, "poolRegistry is null");
 
         if (defaultProvider.isPresent()) {
             LOG.info("Default provider for AmazonProvisionr is {}", defaultProvider.get());
@@ -80,10 +84,17 @@ public class AmazonProvisionr extends ProvisionrSupport {
         arguments.put(CoreProcessVariables.POOL_BUSINESS_KEY, businessKey);
         arguments.put(CoreProcessVariables.BOOTSTRAP_TIMEOUT,
             convertTimeoutToISO8601TimeDuration(pool.getBootstrapTimeInSeconds()));
+        arguments.put(CoreProcessVariables.STRAGGLER_TIMEOUT, convertTimeoutToISO8601TimeDuration(
+            Integer.parseInt(pool.getProvider().getOptionOr(ProviderOptions.STRAGGLER_TIMEOUT_IN_SECONDS,
+                String.valueOf(pool.getBootstrapTimeInSeconds())))));
         arguments.put(CoreProcessVariables.IS_CACHED_IMAGE, pool.getSoftware().isCachedImage());
 
         /* needed because the Activiti EL doesn't work as expected and properties can't be read from the pool. */
         arguments.put(ProcessVariables.SPOT_BID, pool.getProvider().getOption(ProviderOptions.SPOT_BID));
+        arguments.put(ProcessVariables.PIPELINED_SETUP, Boolean.parseBoolean(pool.getProvider()
+            .getOptionOr(ProviderOptions.PIPELINED_SETUP, ProviderOptions.DEFAULT_PIPELINED_SETUP)));
+        arguments.put(ProcessVariables.HEDGED_LAUNCH,
+            LaunchPlan.countInstancesToLaunch(pool) > pool.getExpectedSize());
 
         /* Authenticate as kermit to make the process visible in the Explorer UI */
         processEngine.getIdentityService().setAuthenticatedUserId(CoreConstants.ACTIVITI_EXPLORER_DEFAULT_USER);
@@ -96,34 +107,24 @@ public class AmazonProvisionr extends ProvisionrSupport {
 
     @Override
     public List<Machine> getMachines(String businessKey) {
-        ProcessInstance instance = processEngine.getRuntimeService().createProcessInstanceQuery()
-            .processInstanceBusinessKey(businessKey).singleResult();
-        if (instance == null) {
-            throw new NoSuchElementException("No active pool found with key: " + businessKey);
-        }
-
-        @SuppressWarnings("unchecked") List<Machine> machines = (List<Machine>) processEngine.getRuntimeService()
-            .getVariable(instance.getId(), CoreProcessVariables.MACHINES);
-
-        return Optional.fromNullable(machines).or(Collections.<Machine>emptyList());
+        return getRegisteredPool(businessKey).getMachines();
     }
 
     @Override
     public String getStatus(String businessKey) {
-        ProcessInstance instance = processEngine.getRuntimeService().createProcessInstanceQuery()
-            .processInstanceBusinessKey(businessKey).singleResult();
-        if (instance == null) {
-            throw new NoSuchElementException("No active pool found with key: " + businessKey);
-        }
-
-        String status = (String) processEngine.getRuntimeService().getVariable(instance.getId(),
-            CoreProcessVariables.STATUS);
-
-        return Optional.fromNullable(status).or(PoolStatus.UNDEFINED);
+        return getRegisteredPool(businessKey).getStatus();
     }
 
     @Override
     public void destroyPool(String businessKey) {
         triggerSignalEvent(processEngine, businessKey, CoreSignals.TERMINATE_POOL);
     }
+
+    private RegisteredPool getRegisteredPool(String businessKey) {
+        Optional<RegisteredPool> pool = poolRegistry.get(businessKey);
+        if (!pool.isPresent()) {
+            throw new NoSuchElementException("No active pool found with key: " + businessKey);
+        }
+        return pool.get();
+    }
 }
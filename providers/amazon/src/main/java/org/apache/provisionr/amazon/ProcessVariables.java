@@ -36,6 +36,13 @@ public final class ProcessVariables {
      */
     public static final String RESERVATION_ID = "reservationId";
 
+    /**
+     * All the reservation IDs for a pool started with more than one request
+     *
+     * @see org.apache.provisionr.amazon.activities.RunOnDemandInstances
+     */
+    public static final String RESERVATION_IDS = "reservationIds";
+
     /**
      * The amount the user is willing to pay for spot instances in the
      * Amazon pool he's trying to start. If set, the request is for spot
@@ -46,16 +53,22 @@ public final class ProcessVariables {
     public static final String SPOT_BID = "spotBid";
 
     /**
-     * Flag that gets set when the process attempts to send spot requests
-     * for the first time. Because the describe call is not consistent
-     * until a reasonable delay passes, this will be used to timeout the
-     * Activiti retries so that the requests are not resent if they were
-     * successful.
+     * Flag that gets set when the spot requests were sent or may have been sent
+     * (no response from Amazon). Because the describe call is not consistent
+     * until a reasonable delay passes, the requests are not resent once this
+     * flag is committed - the process polls for them on a timer instead.
      *
      * @see org.apache.provisionr.amazon.activities.RunSpotInstances
      */
     public static final String SPOT_REQUESTS_SENT = "spotRequestsSent";
 
+    /**
+     * Are the IDs of all the spot instance requests known?
+     *
+     * @see org.apache.provisionr.amazon.activities.RunSpotInstances
+     */
+    public static final String SPOT_REQUESTS_FOUND = "spotRequestsFound";
+
     /**
      * List of request IDs as returned by Amazon for spot instances. These need to
      * be followed up to get the actual instance IDs.
@@ -99,6 +112,22 @@ public final class ProcessVariables {
      */
     public static final String ALL_INSTANCES_RUNNING = "allInstancesRunning";
 
+    /**
+     * Start the setup process for each machine as soon as it's running instead of
+     * waiting for the whole pool. Read from the provider options.
+     *
+     * @see org.apache.provisionr.amazon.activities.PublishRunningMachines
+     */
+    public static final String PIPELINED_SETUP = "pipelinedSetup";
+
+    /**
+     * Were extra instances launched as a hedge against slow machines? If true the
+     * machines above the expected size are terminated once enough of them are ready.
+     *
+     * @see org.apache.provisionr.amazon.core.LaunchPlan#countInstancesToLaunch
+     */
+    public static final String HEDGED_LAUNCH = "hedgedLaunch";
+
     /**
      * Are all instances marked as terminated?
      *
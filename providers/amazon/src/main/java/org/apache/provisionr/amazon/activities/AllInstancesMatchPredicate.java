@@ -18,34 +18,44 @@
 
 package org.apache.provisionr.amazon.activities;
 
-import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.ec2.AmazonEC2;
-import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
-import com.amazonaws.services.ec2.model.DescribeInstancesResult;
 import com.amazonaws.services.ec2.model.Instance;
 import com.google.common.base.Optional;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.base.Predicate;
-import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import java.util.List;
+import java.util.Map;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.InstanceStatePoller;
 import org.apache.provisionr.amazon.core.ProviderClientCache;
+import org.apache.provisionr.amazon.core.ProviderClientCacheSupplier;
 import org.apache.provisionr.api.pool.Pool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Instance states are read through a {@link InstanceStatePoller} shared by all the
+ * pools so that concurrent checks in the same region result in a single API call
+ */
 public abstract class AllInstancesMatchPredicate extends AmazonActivity {
 
     private static final Logger LOG = LoggerFactory.getLogger(AllInstancesMatchPredicate.class);
 
     private final String resultVariable;
     private final Predicate<Instance> predicate;
+    private final InstanceStatePoller poller;
 
     protected AllInstancesMatchPredicate(ProviderClientCache cache,
                                          String resultVariable, Predicate<Instance> predicate) {
+        this(cache, new InstanceStatePoller(), resultVariable, predicate);
+    }
+
+    protected AllInstancesMatchPredicate(ProviderClientCache cache, InstanceStatePoller poller,
+                                         String resultVariable, Predicate<Instance> predicate) {
         super(cache);
+        this.poller = checkNotNull(poller, "poller is null");
         this.resultVariable = checkNotNull(resultVariable, "resultVariable is null");
         this.predicate = checkNotNull(predicate, "predicate is null");
     }
@@ -64,27 +74,21 @@ public abstract class AllInstancesMatchPredicate extends AmazonActivity {
             return;
         }
 
-        try {
-            DescribeInstancesResult result = client.describeInstances(new DescribeInstancesRequest()
-                .withInstanceIds(instanceIds.get()));
+        Map<String, Instance> instances = poller.describe(
+            ProviderClientCacheSupplier.formatRegionKey(pool.getProvider()), client, instanceIds.get());
 
-            List<Instance> instances = collectInstancesFromReservations(result.getReservations());
+        if (instances.size() < instanceIds.get().size()) {
+            LOG.warn("<< Only {} of the instances {} were found. Assuming predicate {} is false",
+                new Object[]{instances.size(), instanceIds.get(), predicate});
+            execution.setVariable(resultVariable, false);
 
-            if (Iterables.all(instances, predicate)) {
-                LOG.info(">> All {} instances match predicate {} ", instanceIds, predicate);
-                execution.setVariable(resultVariable, true);
+        } else if (Iterables.all(instances.values(), predicate)) {
+            LOG.info(">> All {} instances match predicate {} ", instanceIds, predicate);
+            execution.setVariable(resultVariable, true);
 
-            } else {
-                LOG.info("<< Not all instances {} match predicate {}", instanceIds, predicate);
-                execution.setVariable(resultVariable, false);
-            }
-        } catch (AmazonServiceException exception) {
-            if (exception.getErrorCode().equalsIgnoreCase("InvalidInstanceID.NotFound")) {
-                LOG.warn("<< Got error InvalidInstanceID.NotFound. Assuming predicate {} is false", predicate);
-                execution.setVariable(resultVariable, false);
-            } else {
-                throw Throwables.propagate(exception);
-            }
+        } else {
+            LOG.info("<< Not all instances {} match predicate {}", instanceIds, predicate);
+            execution.setVariable(resultVariable, false);
         }
     }
 }
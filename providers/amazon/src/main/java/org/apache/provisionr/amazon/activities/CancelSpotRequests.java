@@ -20,16 +20,27 @@ package org.apache.provisionr.amazon.activities;
 
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.CancelSpotInstanceRequestsRequest;
-import static com.google.common.base.Preconditions.checkNotNull;
+import com.amazonaws.services.ec2.model.DescribeSpotInstanceRequestsRequest;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.SpotInstanceRequest;
+import com.google.common.collect.Lists;
 import java.util.List;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.apache.provisionr.amazon.AmazonProvisionr;
 import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.LaunchPlan;
 import org.apache.provisionr.amazon.core.ProviderClientCache;
 import org.apache.provisionr.api.pool.Pool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Cancel all the spot instance requests sent for the pool
+ * <p/>
+ * The list of request IDs can be missing or incomplete if the process gave up waiting
+ * for the requests to become visible. In that case the requests are also looked up
+ * by launch group. The complete list is stored back for the following activities.
+ */
 public class CancelSpotRequests extends AmazonActivity {
 
     public static final Logger LOG = LoggerFactory.getLogger(AmazonProvisionr.class);
@@ -41,11 +52,28 @@ public class CancelSpotRequests extends AmazonActivity {
     @Override
     public void execute(AmazonEC2 client, Pool pool, DelegateExecution execution) {
         @SuppressWarnings("unchecked")
-        List<String> requests = (List<String>) execution.getVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS);
-        checkNotNull(requests, "process variable '{}' not found", ProcessVariables.SPOT_INSTANCE_REQUEST_IDS);
-        if (requests.size() > 0) {
+        List<String> known = (List<String>) execution.getVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS);
+
+        List<String> requestIds = (known == null) ? Lists.<String>newArrayList() : Lists.newArrayList(known);
+        if (requestIds.size() < LaunchPlan.countInstancesToLaunch(pool)) {
+            LOG.info(">> Looking up spot instance requests by launch group {}", execution.getProcessBusinessKey());
+            List<SpotInstanceRequest> found = client.describeSpotInstanceRequests(
+                new DescribeSpotInstanceRequestsRequest().withFilters(new Filter()
+                    .withName("launch-group").withValues(execution.getProcessBusinessKey())))
+                .getSpotInstanceRequests();
+
+            for (SpotInstanceRequest request : found) {
+                if (!requestIds.contains(request.getSpotInstanceRequestId())) {
+                    requestIds.add(request.getSpotInstanceRequestId());
+                }
+            }
+        }
+
+        if (!requestIds.isEmpty()) {
+            LOG.info(">> Cancelling spot instance requests {}", requestIds);
             client.cancelSpotInstanceRequests(new CancelSpotInstanceRequestsRequest()
-                .withSpotInstanceRequestIds(requests));
+                .withSpotInstanceRequestIds(requestIds));
         }
+        execution.setVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS, requestIds);
     }
 }
@@ -20,6 +20,7 @@ package org.apache.provisionr.amazon.activities;
 
 import com.amazonaws.services.ec2.model.Instance;
 import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.InstanceStatePoller;
 import org.apache.provisionr.amazon.core.ProviderClientCache;
 import com.google.common.base.Predicate;
 
@@ -40,4 +41,8 @@ public class CheckAllInstancesAreRunning extends AllInstancesMatchPredicate {
     public CheckAllInstancesAreRunning(ProviderClientCache cache) {
         super(cache, ProcessVariables.ALL_INSTANCES_RUNNING, new InstanceIsRunning());
     }
+
+    public CheckAllInstancesAreRunning(ProviderClientCache cache, InstanceStatePoller poller) {
+        super(cache, poller, ProcessVariables.ALL_INSTANCES_RUNNING, new InstanceIsRunning());
+    }
 }
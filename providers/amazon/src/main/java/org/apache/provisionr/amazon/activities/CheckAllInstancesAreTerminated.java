@@ -20,6 +20,7 @@ package org.apache.provisionr.amazon.activities;
 
 import com.amazonaws.services.ec2.model.Instance;
 import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.InstanceStatePoller;
 import org.apache.provisionr.amazon.core.ProviderClientCache;
 import com.google.common.base.Predicate;
 
@@ -40,4 +41,8 @@ public class CheckAllInstancesAreTerminated extends AllInstancesMatchPredicate {
     public CheckAllInstancesAreTerminated(ProviderClientCache cache) {
         super(cache, ProcessVariables.ALL_INSTANCES_TERMINATED, new InstanceIsTerminated());
     }
+
+    public CheckAllInstancesAreTerminated(ProviderClientCache cache, InstanceStatePoller poller) {
+        super(cache, poller, ProcessVariables.ALL_INSTANCES_TERMINATED, new InstanceIsTerminated());
+    }
 }
@@ -46,6 +46,11 @@ public class GetInstanceIdsFromSpotRequests extends AmazonActivity {
         @SuppressWarnings("unchecked")
         List<String> requestIds =
             (List<String>) execution.getVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS);
+        if (requestIds == null || requestIds.isEmpty()) {
+            /* an empty list of IDs would describe all the requests in the account */
+            execution.setVariable(ProcessVariables.INSTANCE_IDS, new ArrayList<String>());
+            return;
+        }
         DescribeSpotInstanceRequestsResult result = client.describeSpotInstanceRequests(
             new DescribeSpotInstanceRequestsRequest().withSpotInstanceRequestIds(requestIds));
 
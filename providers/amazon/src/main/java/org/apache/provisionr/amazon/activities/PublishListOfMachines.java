@@ -22,13 +22,13 @@ import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
 import com.amazonaws.services.ec2.model.DescribeInstancesResult;
 import com.amazonaws.services.ec2.model.Instance;
-import com.google.common.base.Function;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.collect.Lists;
 import java.util.List;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.apache.provisionr.amazon.ProcessVariables;
 import org.apache.provisionr.amazon.core.ProviderClientCache;
+import org.apache.provisionr.amazon.functions.ConvertInstanceToMachine;
 import org.apache.provisionr.api.pool.Machine;
 import org.apache.provisionr.api.pool.Pool;
 import org.apache.provisionr.core.CoreProcessVariables;
@@ -62,19 +62,7 @@ public class PublishListOfMachines extends AmazonActivity {
         LOG.info("<< Got the following reservations: {}", result.getReservations());
 
         List<Instance> instances = collectInstancesFromReservations(result.getReservations());
-        List<Machine> machines = Lists.transform(instances,
-            new Function<Instance, Machine>() {
-                @Override
-                public Machine apply(Instance instance) {
-                    return Machine.builder()
-                        .externalId(instance.getInstanceId())
-                        .publicDnsName(instance.getPublicDnsName())
-                        .publicIp(instance.getPublicIpAddress())
-                        .privateDnsName(instance.getPrivateDnsName())
-                        .privateIp(instance.getPrivateIpAddress())
-                        .createMachine();
-                }
-            });
+        List<Machine> machines = Lists.transform(instances, ConvertInstanceToMachine.FUNCTION);
 
         /* Create a new ArrayList to force evaluation for lazy collections */
         execution.setVariable(CoreProcessVariables.MACHINES, Lists.newArrayList(machines));
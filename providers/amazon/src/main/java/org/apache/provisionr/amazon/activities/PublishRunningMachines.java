@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.activities;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.Instance;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.base.Predicate;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.InstanceStatePoller;
+import org.apache.provisionr.amazon.core.ProviderClientCache;
+import org.apache.provisionr.amazon.core.ProviderClientCacheSupplier;
+import org.apache.provisionr.amazon.functions.ConvertInstanceToMachine;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publish the instances that are running and have a public address as machines
+ * without waiting for the rest of the pool
+ * <p/>
+ * New machines are appended to the list (machines) so that a setup process can be
+ * spawned for them on the next pass - {@link org.apache.provisionr.core.activities.SpawnProcessForEachMachine}
+ * resumes after the machines that already have one. The allInstancesRunning flag
+ * is set when all the instances were published.
+ */
+public class PublishRunningMachines extends AmazonActivity {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PublishRunningMachines.class);
+
+    private static final Predicate<Instance> IS_RUNNING = new CheckAllInstancesAreRunning.InstanceIsRunning();
+
+    private final InstanceStatePoller poller;
+
+    public PublishRunningMachines(ProviderClientCache cache) {
+        this(cache, new InstanceStatePoller());
+    }
+
+    public PublishRunningMachines(ProviderClientCache cache, InstanceStatePoller poller) {
+        super(cache);
+        this.poller = checkNotNull(poller, "poller is null");
+    }
+
+    @Override
+    public void execute(AmazonEC2 client, Pool pool, DelegateExecution execution) {
+        @SuppressWarnings("unchecked")
+        List<String> instanceIds = (List<String>) execution.getVariable(ProcessVariables.INSTANCE_IDS);
+        checkNotNull(instanceIds, "%s not found as a process variable", ProcessVariables.INSTANCE_IDS);
+
+        @SuppressWarnings("unchecked")
+        List<Machine> previous = (List<Machine>) execution.getVariable(CoreProcessVariables.MACHINES);
+        List<Machine> machines = (previous == null) ? Lists.<Machine>newArrayList() : Lists.newArrayList(previous);
+
+        Set<String> published = Sets.newHashSet();
+        for (Machine machine : machines) {
+            published.add(machine.getExternalId());
+        }
+
+        Map<String, Instance> instances = poller.describe(
+            ProviderClientCacheSupplier.formatRegionKey(pool.getProvider()), client, instanceIds);
+
+        /* keep the launch order to make the list easier to follow */
+        for (String instanceId : instanceIds) {
+            final Instance instance = instances.get(instanceId);
+            if (published.contains(instanceId) || instance == null || !IS_RUNNING.apply(instance)
+                || Strings.isNullOrEmpty(instance.getPublicDnsName())
+                || Strings.isNullOrEmpty(instance.getPublicIpAddress())) {
+                continue;
+            }
+            LOG.info("<< Instance {} is running as {}", instanceId, instance.getPublicDnsName());
+            machines.add(ConvertInstanceToMachine.FUNCTION.apply(instance));
+        }
+
+        final boolean allPublished = machines.size() >= instanceIds.size();
+        LOG.info(">> Published {} out of {} machines", machines.size(), instanceIds.size());
+
+        execution.setVariable(CoreProcessVariables.MACHINES, machines);
+        execution.setVariable(ProcessVariables.ALL_INSTANCES_RUNNING, allPublished);
+    }
+}
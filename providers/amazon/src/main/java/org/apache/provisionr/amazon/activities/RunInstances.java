@@ -28,7 +28,7 @@ import com.amazonaws.services.ec2.model.SpotInstanceType;
 import com.google.common.base.Charsets;
 import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.base.Strings;
-import com.google.common.base.Throwables;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
 import java.io.IOException;
@@ -36,9 +36,10 @@ import java.util.Calendar;
 import java.util.List;
 import net.schmizz.sshj.common.Base64;
 import org.activiti.engine.delegate.DelegateExecution;
-import org.apache.provisionr.amazon.core.ImageTable;
-import org.apache.provisionr.amazon.core.ImageTableQuery;
+import org.apache.provisionr.amazon.core.ImageCatalog;
+import org.apache.provisionr.amazon.core.ImageCatalogSupplier;
 import org.apache.provisionr.amazon.core.KeyPairs;
+import org.apache.provisionr.amazon.core.LaunchPlan;
 import org.apache.provisionr.amazon.core.ProviderClientCache;
 import org.apache.provisionr.amazon.core.SecurityGroups;
 import org.apache.provisionr.amazon.options.ProviderOptions;
@@ -53,28 +54,43 @@ public abstract class RunInstances extends AmazonActivity {
     public static final String DEFAULT_TYPE = "instance-store";
     public static final String DEFAULT_AMI_ID = "ami-0cdf4965"; // Ubuntu 12.10 x64
 
+    private final Supplier<ImageCatalog> imageCatalogSupplier;
+
     protected RunInstances(ProviderClientCache providerClientCache) {
+        this(providerClientCache, new ImageCatalogSupplier());
+    }
+
+    protected RunInstances(ProviderClientCache providerClientCache, Supplier<ImageCatalog> imageCatalogSupplier) {
         super(providerClientCache);
+        this.imageCatalogSupplier = checkNotNull(imageCatalogSupplier, "imageCatalogSupplier is null");
     }
 
     protected RunInstancesRequest createOnDemandInstancesRequest(Pool pool, DelegateExecution execution)
         throws IOException {
-        return (RunInstancesRequest) createRequest(pool, execution, false);
+        return createOnDemandInstancesRequest(pool, execution, pool.getHardware().getType());
+    }
+
+    /**
+     * Same as {@link #createOnDemandInstancesRequest(Pool, DelegateExecution)} but with
+     * a different instance type. The image is selected to match the instance type.
+     */
+    protected RunInstancesRequest createOnDemandInstancesRequest(Pool pool, DelegateExecution execution,
+                                                                 String instanceType) throws IOException {
+        return (RunInstancesRequest) createRequest(pool, execution, instanceType, false);
     }
 
     protected RequestSpotInstancesRequest createSpotInstancesRequest(Pool pool, DelegateExecution execution)
         throws IOException {
-        return (RequestSpotInstancesRequest) createRequest(pool, execution, true);
+        return (RequestSpotInstancesRequest) createRequest(pool, execution, pool.getHardware().getType(), true);
     }
 
-    private AmazonWebServiceRequest createRequest(Pool pool, DelegateExecution execution, boolean spot)
-        throws IOException {
+    private AmazonWebServiceRequest createRequest(Pool pool, DelegateExecution execution,
+                                                  String instanceType, boolean spot) throws IOException {
         final String businessKey = execution.getProcessBusinessKey();
 
         final String securityGroupName = SecurityGroups.formatNameFromBusinessKey(businessKey);
         final String keyPairName = KeyPairs.formatNameFromBusinessKey(businessKey);
 
-        final String instanceType = pool.getHardware().getType();
         final String imageId = getImageIdFromPoolConfigurationOrQueryImageTable(
             pool, pool.getProvider(), instanceType);
 
@@ -113,7 +129,7 @@ public abstract class RunInstances extends AmazonActivity {
                 .withSpotPrice(spotPrice)
                 .withLaunchSpecification(ls)
                 .withLaunchGroup(businessKey)
-                .withInstanceCount(pool.getExpectedSize())
+                .withInstanceCount(LaunchPlan.countInstancesToLaunch(pool))
                 .withType(SpotInstanceType.OneTime)
                 .withValidUntil(validUntil.getTime());
 
@@ -126,7 +142,7 @@ public abstract class RunInstances extends AmazonActivity {
                 .withImageId(imageId)
                 .withBlockDeviceMappings(blockDeviceMappings)
                 .withMinCount(pool.getMinSize())
-                .withMaxCount(pool.getExpectedSize())
+                .withMaxCount(LaunchPlan.countInstancesToLaunch(pool))
                 .withUserData(Base64.encodeBytes(userData.getBytes(Charsets.UTF_8)));
         }
     }
@@ -139,28 +155,11 @@ public abstract class RunInstances extends AmazonActivity {
             return "default".equals(imageId) ? DEFAULT_AMI_ID : imageId;
         }
 
-        ImageTable imageTable;
-        try {
-            imageTable = ImageTable.fromCsvResource("/org/apache/provisionr/amazon/ubuntu.csv");
-        } catch (IOException e) {
-            throw Throwables.propagate(e);
-        }
-
         final String region = provider.getOptionOr(ProviderOptions.REGION, ProviderOptions.DEFAULT_REGION);
         final String version = provider.getOptionOr(SoftwareOptions.BASE_OPERATING_SYSTEM_VERSION,
             SoftwareOptions.DEFAULT_BASE_OPERATING_SYSTEM_VERSION);
+        final String type = instanceType.equals("t1.micro") ? "ebs" : DEFAULT_TYPE;
 
-        ImageTableQuery query = imageTable.query()
-            .filterBy("region", region)
-            .filterBy("version", version)
-            .filterBy("arch", DEFAULT_ARCH);
-
-        if (instanceType.equals("t1.micro")) {
-            query.filterBy("type", "ebs");
-        } else {
-            query.filterBy("type", DEFAULT_TYPE);
-        }
-
-        return query.singleResult();
+        return imageCatalogSupplier.get().lookup(region, version, DEFAULT_ARCH, type);
     }
 }
@@ -18,47 +18,214 @@
 
 package org.apache.provisionr.amazon.activities;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Filter;
 import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Placement;
+import com.amazonaws.services.ec2.model.Reservation;
 import com.amazonaws.services.ec2.model.RunInstancesRequest;
 import com.amazonaws.services.ec2.model.RunInstancesResult;
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.ErrorCodes;
+import org.apache.provisionr.amazon.core.ImageCatalog;
+import org.apache.provisionr.amazon.core.LaunchPlan;
 import org.apache.provisionr.amazon.core.ProviderClientCache;
 import org.apache.provisionr.api.pool.Pool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Launches the pool using a {@link LaunchPlan}: one RunInstances request for each chunk,
+ * sent concurrently. When a request fails because there is no capacity for an instance
+ * type the chunk is retried with the next fallback type.
+ * <p/>
+ * Requests are sent on a small executor shared by all the pools. It also limits the
+ * number of concurrent RunInstances calls.
+ */
 public class RunOnDemandInstances extends RunInstances {
 
     private static final Logger LOG = LoggerFactory.getLogger(RunOnDemandInstances.class);
 
+    public static final int MAX_CONCURRENT_REQUESTS = 4;
+
+    /**
+     * Error codes that mean we should try again with a different instance type
+     */
+    private static final Set<String> CAPACITY_ERROR_CODES = ImmutableSet.of(
+        ErrorCodes.INSUFFICIENT_INSTANCE_CAPACITY, ErrorCodes.UNSUPPORTED);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS,
+        new ThreadFactoryBuilder().setNameFormat("run-instances-%d").setDaemon(true).build());
+
     public RunOnDemandInstances(ProviderClientCache cache) {
         super(cache);
     }
 
+    public RunOnDemandInstances(ProviderClientCache cache, Supplier<ImageCatalog> imageCatalogSupplier) {
+        super(cache, imageCatalogSupplier);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
     @Override
     public void execute(AmazonEC2 client, Pool pool, DelegateExecution execution) throws IOException {
+        final LaunchPlan plan = LaunchPlan.forPool(pool);
+        LOG.info(">> Launching instances for pool {} using {}", execution.getProcessBusinessKey(), plan);
 
-        final RunInstancesRequest request = createOnDemandInstancesRequest(pool, execution);
+        /* All requests are created here because the execution is not thread safe */
+        List<RunInstancesRequest> templates = Lists.newArrayList();
+        for (String instanceType : plan.getInstanceTypes()) {
+            templates.add(createOnDemandInstancesRequest(pool, execution, instanceType));
+        }
         // TODO allow for more options (e.g. monitoring & termination protection etc.)
 
-        LOG.info(">> Sending RunInstances request: {}", request);
-        RunInstancesResult result = client.runInstances(request);
-        LOG.info("<< Got RunInstances result: {}", result);
+        List<Callable<Reservation>> tasks = Lists.newArrayList();
+        for (LaunchPlan.Chunk chunk : plan.getChunks()) {
+            List<RunInstancesRequest> requests = Lists.newArrayList();
+            for (int typeIndex = 0; typeIndex < templates.size(); typeIndex++) {
+                requests.add(createChunkRequest(templates.get(typeIndex), chunk,
+                    chunk.formatClientToken(execution.getProcessBusinessKey(), typeIndex)));
+            }
+            tasks.add(newLaunchTask(client, chunk, requests));
+        }
+
+        List<Reservation> reservations = Lists.newArrayList();
+        List<Throwable> failures = Lists.newArrayList();
+
+        try {
+            for (Future<Reservation> future : executor.invokeAll(tasks)) {
+                try {
+                    reservations.add(future.get());
+
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while launching instances", e);
+        }
 
         // TODO tag instances: managed-by: Apache Provisionr, business-key: ID etc.
 
-        execution.setVariable(ProcessVariables.RESERVATION_ID,
-            result.getReservation().getReservationId());
-        execution.setVariable(ProcessVariables.INSTANCE_IDS,
-            collectInstanceIdsAsList(result.getReservation().getInstances()));
+        List<String> instanceIds = Lists.newArrayList();
+        List<String> reservationIds = Lists.newArrayList();
+        for (Reservation reservation : reservations) {
+            reservationIds.add(reservation.getReservationId());
+            instanceIds.addAll(collectInstanceIdsAsList(reservation.getInstances()));
+        }
+
+        if (instanceIds.size() < plan.getMinSize()) {
+            /* the chunks that succeeded are found again on retry by looking up their client tokens */
+            LOG.error("<< Only {} instances launched for a min size of {}. {} requests failed.",
+                new Object[]{instanceIds.size(), plan.getMinSize(), failures.size()});
+            if (!failures.isEmpty()) {
+                Throwables.propagateIfPossible(failures.get(0), IOException.class);
+                throw Throwables.propagate(failures.get(0));
+            }
+            throw new IllegalStateException(String.format("Only %d instances launched for " +
+                "a min size of %d", instanceIds.size(), plan.getMinSize()));
+        }
+        if (!failures.isEmpty()) {
+            LOG.warn("<< {} launch requests failed. Continuing with {} instances.",
+                failures.size(), instanceIds.size());
+        }
+
+        LOG.info("<< Launched instances {} in reservations {}", instanceIds, reservationIds);
+
+        execution.setVariable(ProcessVariables.RESERVATION_ID, reservationIds.get(0));
+        execution.setVariable(ProcessVariables.RESERVATION_IDS, reservationIds);
+        execution.setVariable(ProcessVariables.INSTANCE_IDS, instanceIds);
+    }
+
+    private Callable<Reservation> newLaunchTask(final AmazonEC2 client, final LaunchPlan.Chunk chunk,
+                                                final List<RunInstancesRequest> requests) {
+        return new Callable<Reservation>() {
+            @Override
+            public Reservation call() throws Exception {
+                /* A previous attempt may have launched this chunk with any of the instance types */
+                Optional<Reservation> existing = findReservationForAnyClientToken(client, requests);
+                if (existing.isPresent()) {
+                    LOG.info("<< Found reservation {} launched by a previous attempt for {}",
+                        existing.get().getReservationId(), chunk);
+                    return existing.get();
+                }
+
+                for (int typeIndex = 0; typeIndex < requests.size(); typeIndex++) {
+                    final RunInstancesRequest request = requests.get(typeIndex);
+                    try {
+                        LOG.info(">> Sending RunInstances request: {}", request);
+                        RunInstancesResult result = client.runInstances(request);
+                        LOG.info("<< Got RunInstances result: {}", result);
+
+                        return result.getReservation();
+
+                    } catch (AmazonServiceException e) {
+                        if (!CAPACITY_ERROR_CODES.contains(e.getErrorCode()) || typeIndex == requests.size() - 1) {
+                            throw e;
+                        }
+                        LOG.warn("<< No capacity for {} in {} ({}). Trying the next instance type.",
+                            new Object[]{request.getInstanceType(), chunk, e.getErrorCode()});
+                    }
+                }
+                throw new IllegalStateException("No instance types to try for " + chunk);
+            }
+        };
     }
 
+    private Optional<Reservation> findReservationForAnyClientToken(AmazonEC2 client,
+                                                                   List<RunInstancesRequest> requests) {
+        List<String> clientTokens = Lists.newArrayList();
+        for (RunInstancesRequest request : requests) {
+            clientTokens.add(request.getClientToken());
+        }
+
+        DescribeInstancesResult result = client.describeInstances(new DescribeInstancesRequest()
+            .withFilters(new Filter().withName("client-token").withValues(clientTokens)));
+
+        List<Reservation> reservations = result.getReservations();
+        return reservations.isEmpty() ? Optional.<Reservation>absent() : Optional.of(reservations.get(0));
+    }
+
+    private RunInstancesRequest createChunkRequest(RunInstancesRequest template, LaunchPlan.Chunk chunk,
+                                                   String clientToken) {
+        RunInstancesRequest request = new RunInstancesRequest()
+            .withClientToken(clientToken)
+            .withSecurityGroups(template.getSecurityGroups())
+            .withKeyName(template.getKeyName())
+            .withInstanceType(template.getInstanceType())
+            .withImageId(template.getImageId())
+            .withBlockDeviceMappings(template.getBlockDeviceMappings())
+            .withMinCount(chunk.getMinCount())
+            .withMaxCount(chunk.getMaxCount())
+            .withUserData(template.getUserData());
+
+        if (chunk.getAvailabilityZone().isPresent()) {
+            request.setPlacement(new Placement().withAvailabilityZone(chunk.getAvailabilityZone().get()));
+        }
+        return request;
+    }
 
     private List<String> collectInstanceIdsAsList(List<Instance> instances) {
         /* Make a copy as an ArrayList to force lazy collection evaluation */
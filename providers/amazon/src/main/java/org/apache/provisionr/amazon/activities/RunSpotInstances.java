@@ -18,6 +18,8 @@
 
 package org.apache.provisionr.amazon.activities;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.DescribeSpotInstanceRequestsRequest;
 import com.amazonaws.services.ec2.model.DescribeSpotInstanceRequestsResult;
@@ -26,21 +28,26 @@ import com.amazonaws.services.ec2.model.RequestSpotInstancesRequest;
 import com.amazonaws.services.ec2.model.RequestSpotInstancesResult;
 import com.amazonaws.services.ec2.model.SpotInstanceRequest;
 import com.google.common.base.Function;
-import com.google.common.base.Optional;
-import com.google.common.base.Stopwatch;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.ImageCatalog;
+import org.apache.provisionr.amazon.core.LaunchPlan;
 import org.apache.provisionr.amazon.core.ProviderClientCache;
 import org.apache.provisionr.api.pool.Pool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-
+/**
+ * Send the spot instance requests for the pool, at most once
+ * <p/>
+ * Also used to poll for the requests on a timer when it's not clear if they were
+ * accepted. {@link ProcessVariables#SPOT_REQUESTS_FOUND} is set to true once all
+ * the request IDs are known.
+ */
 public class RunSpotInstances extends RunInstances {
 
     private static final Logger LOG = LoggerFactory.getLogger(RunSpotInstances.class);
@@ -49,43 +56,79 @@ public class RunSpotInstances extends RunInstances {
         super(cache);
     }
 
+    public RunSpotInstances(ProviderClientCache cache, Supplier<ImageCatalog> imageCatalogSupplier) {
+        super(cache, imageCatalogSupplier);
+    }
+
     @Override
     public void execute(AmazonEC2 client, Pool pool, DelegateExecution execution) throws IOException {
-        /* before sending a new request, we check to see if we already registered
-           a launch group with the process ID, if yes, we don't re-send the request */
         final String businessKey = execution.getProcessBusinessKey();
+        final int expectedCount = LaunchPlan.countInstancesToLaunch(pool);
 
-        /* we timeout if requests have already been sent - the activity is being retried. */
-        Optional<Object> alreadySent = Optional.fromNullable(
-            execution.getVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS));
-
-        if (alreadySent.isPresent()) {
-            DescribeSpotInstanceRequestsRequest describeRequest = new DescribeSpotInstanceRequestsRequest()
-                .withFilters(new Filter()
-                    .withName("launch-group").withValues(businessKey)
-                    .withName("state").withValues("open", "active"));
-
-            Stopwatch stopwatch = new Stopwatch().start();
-            while (stopwatch.elapsedTime(TimeUnit.MINUTES) < 2) {
-                DescribeSpotInstanceRequestsResult result = client.describeSpotInstanceRequests(describeRequest);
-                List<SpotInstanceRequest> pending = result.getSpotInstanceRequests();
-                if (pending.size() > 0) {
-                    LOG.info("Not resending spot instance requests {} for businessKey: {}.", pending, businessKey);
-                    execution.setVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS,
-                        collectSpotInstanceRequestIds(pending));
-                    return;
-                }
-                LOG.info("The describe call has not returned anything yet, waiting 20s and retrying.");
-                Uninterruptibles.sleepUninterruptibly(20, TimeUnit.SECONDS);
-            }
+        List<SpotInstanceRequest> pending = describePendingRequestsInLaunchGroup(client, businessKey);
+        if (pending.size() >= expectedCount) {
+            LOG.info("Not resending spot instance requests {} for businessKey: {}", pending, businessKey);
+            execution.setVariable(ProcessVariables.SPOT_REQUESTS_SENT, true);
+            execution.setVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS,
+                collectSpotInstanceRequestIds(pending));
+            execution.setVariable(ProcessVariables.SPOT_REQUESTS_FOUND, true);
+            return;
+        }
+
+        /* The describe call is eventually consistent. If the requests were sent by a previous
+           attempt we wait for them to become visible instead of sending duplicates */
+        if (Boolean.TRUE.equals(execution.getVariable(ProcessVariables.SPOT_REQUESTS_SENT)) || !pending.isEmpty()) {
+            LOG.info("Found {} out of {} spot instance requests for businessKey: {}. Checking again later.",
+                new Object[]{pending.size(), expectedCount, businessKey});
+            execution.setVariable(ProcessVariables.SPOT_REQUESTS_SENT, true);
+            /* store what is visible so far - used by the teardown if the wait times out */
+            execution.setVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS,
+                collectSpotInstanceRequestIds(pending));
+            execution.setVariable(ProcessVariables.SPOT_REQUESTS_FOUND, false);
+            return;
         }
 
         final RequestSpotInstancesRequest request = createSpotInstancesRequest(pool, execution);
+
+        LOG.info(">> Sending RequestSpotInstances request: {}", request);
+        RequestSpotInstancesResult requestResult;
+        try {
+            requestResult = client.requestSpotInstances(request);
+
+        } catch (AmazonServiceException e) {
+            throw e;    /* rejected by Amazon - nothing was created and the job can be retried */
+
+        } catch (AmazonClientException e) {
+            /* no response (e.g. a read timeout) - the requests may have been accepted. The marker
+               is committed with this job and the process polls on a timer until they show up */
+            LOG.warn("Unable to tell if the spot instance requests were accepted for businessKey: " +
+                businessKey + ". Checking again later.", e);
+            execution.setVariable(ProcessVariables.SPOT_REQUESTS_SENT, true);
+            execution.setVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS,
+                collectSpotInstanceRequestIds(pending));
+            execution.setVariable(ProcessVariables.SPOT_REQUESTS_FOUND, false);
+            return;
+        }
+        LOG.info("<< Got RequestSpotInstances result: {}", requestResult);
+
         execution.setVariable(ProcessVariables.SPOT_REQUESTS_SENT, true);
-        RequestSpotInstancesResult requestResult = client.requestSpotInstances(request);
-        List<String> spotInstanceRequestIds = collectSpotInstanceRequestIds(requestResult.getSpotInstanceRequests());
+        execution.setVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS,
+            collectSpotInstanceRequestIds(requestResult.getSpotInstanceRequests()));
+        execution.setVariable(ProcessVariables.SPOT_REQUESTS_FOUND, true);
+    }
+
+    /**
+     * Open or active requests sent for this pool. A single describe call - any wait
+     * between attempts is handled by a BPMN timer without holding a thread.
+     */
+    private List<SpotInstanceRequest> describePendingRequestsInLaunchGroup(AmazonEC2 client, String businessKey) {
+        DescribeSpotInstanceRequestsRequest describeRequest = new DescribeSpotInstanceRequestsRequest()
+            .withFilters(
+                new Filter().withName("launch-group").withValues(businessKey),
+                new Filter().withName("state").withValues("open", "active"));
 
-        execution.setVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS, spotInstanceRequestIds);
+        DescribeSpotInstanceRequestsResult result = client.describeSpotInstanceRequests(describeRequest);
+        return result.getSpotInstanceRequests();
     }
 
     private List<String> collectSpotInstanceRequestIds(List<SpotInstanceRequest> requestResponses) {
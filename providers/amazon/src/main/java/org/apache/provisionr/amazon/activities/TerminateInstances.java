@@ -19,11 +19,16 @@
 package org.apache.provisionr.amazon.activities;
 
 import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
 import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
-import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import java.util.List;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.LaunchPlan;
 import org.apache.provisionr.amazon.core.ProviderClientCache;
 import org.apache.provisionr.api.pool.Pool;
 import org.slf4j.Logger;
@@ -31,6 +36,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Terminate instances previously started by {@see RunOnDemandInstances}
+ * <p/>
+ * The list of instance IDs is missing if the launch gave up after some of the chunks
+ * succeeded. The instances of the pool are also looked up by the client tokens of the
+ * launch plan so that nothing is left running. The complete list is stored back for
+ * {@link CheckAllInstancesAreTerminated}.
  */
 public class TerminateInstances extends AmazonActivity {
 
@@ -43,12 +53,34 @@ public class TerminateInstances extends AmazonActivity {
     @Override
     public void execute(AmazonEC2 client, Pool pool, DelegateExecution execution) {
         @SuppressWarnings("unchecked")
-        Optional<List<String>> instanceIds =
-            Optional.fromNullable((List<String>) execution.getVariable(ProcessVariables.INSTANCE_IDS));
+        List<String> known = (List<String>) execution.getVariable(ProcessVariables.INSTANCE_IDS);
+
+        List<String> instanceIds = (known == null) ? Lists.<String>newArrayList() : Lists.newArrayList(known);
+        for (String instanceId : findInstanceIdsByClientToken(client, pool, execution.getProcessBusinessKey())) {
+            if (!instanceIds.contains(instanceId)) {
+                instanceIds.add(instanceId);
+            }
+        }
 
         LOG.info(">> Terminating instances: {}", instanceIds);
-        if (instanceIds.isPresent() && instanceIds.get().size() > 0) {
-            client.terminateInstances(new TerminateInstancesRequest().withInstanceIds(instanceIds.get()));
+        if (!instanceIds.isEmpty()) {
+            client.terminateInstances(new TerminateInstancesRequest().withInstanceIds(instanceIds));
+        }
+        execution.setVariable(ProcessVariables.INSTANCE_IDS, instanceIds);
+    }
+
+    private List<String> findInstanceIdsByClientToken(AmazonEC2 client, Pool pool, String businessKey) {
+        List<String> clientTokens = LaunchPlan.forPool(pool).formatAllClientTokens(businessKey);
+
+        List<String> instanceIds = Lists.newArrayList();
+        for (Reservation reservation : client.describeInstances(new DescribeInstancesRequest().withFilters(
+            new Filter().withName("client-token").withValues(clientTokens),
+            new Filter().withName("instance-state-name").withValues("pending", "running", "stopping", "stopped")))
+            .getReservations()) {
+            for (Instance instance : reservation.getInstances()) {
+                instanceIds.add(instance.getInstanceId());
+            }
         }
+        return instanceIds;
     }
 }
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.activities;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.List;
+import java.util.Set;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.ProviderClientCache;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Terminate the instances that are no longer part of the list of machines
+ * after the stragglers were dropped
+ *
+ * @see org.apache.provisionr.core.activities.DropStragglers
+ */
+public class TerminateStragglerInstances extends AmazonActivity {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TerminateStragglerInstances.class);
+
+    public TerminateStragglerInstances(ProviderClientCache cache) {
+        super(cache);
+    }
+
+    @Override
+    public void execute(AmazonEC2 client, Pool pool, DelegateExecution execution) {
+        @SuppressWarnings("unchecked")
+        List<String> instanceIds = (List<String>) execution.getVariable(ProcessVariables.INSTANCE_IDS);
+        checkNotNull(instanceIds, "%s not found as a process variable", ProcessVariables.INSTANCE_IDS);
+
+        @SuppressWarnings("unchecked")
+        List<Machine> machines = (List<Machine>) execution.getVariable(CoreProcessVariables.MACHINES);
+        checkNotNull(machines, "Expecting to find the list of machines as process variable");
+
+        Set<String> kept = Sets.newHashSet();
+        for (Machine machine : machines) {
+            kept.add(machine.getExternalId());
+        }
+
+        List<String> stragglers = Lists.newArrayList();
+        List<String> remaining = Lists.newArrayList();
+        for (String instanceId : instanceIds) {
+            if (kept.contains(instanceId)) {
+                remaining.add(instanceId);
+            } else {
+                stragglers.add(instanceId);
+            }
+        }
+
+        if (!stragglers.isEmpty()) {
+            LOG.info(">> Terminating straggler instances: {}", stragglers);
+            client.terminateInstances(new TerminateInstancesRequest().withInstanceIds(stragglers));
+        }
+
+        execution.setVariable(ProcessVariables.INSTANCE_IDS, remaining);
+    }
+}
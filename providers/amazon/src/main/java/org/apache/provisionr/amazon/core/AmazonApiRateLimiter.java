@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.RateLimiter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client side token bucket for all the EC2 calls made with the same credentials in the same region
+ * <p/>
+ * Describe calls and calls that change state have separate buckets because they
+ * have different limits on the Amazon side. Also keeps track of the time spent by
+ * callers waiting for a permit.
+ */
+public class AmazonApiRateLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AmazonApiRateLimiter.class);
+
+    public static final double DEFAULT_DESCRIBE_REQUESTS_PER_SECOND = 20;
+    public static final double DEFAULT_MUTATE_REQUESTS_PER_SECOND = 5;
+
+    /**
+     * Log a message if a caller has to wait more than this for a permit
+     */
+    private static final long SLOW_ACQUIRE_THRESHOLD_IN_MILLIS = 1000;
+
+    /**
+     * Local methods that don't send any request to Amazon
+     */
+    private static final Set<String> UNLIMITED_METHODS = ImmutableSet.of("setEndpoint", "setRegion",
+        "shutdown", "getCachedResponseMetadata", "equals", "hashCode", "toString");
+
+    public static boolean isDescribeMethod(String methodName) {
+        return methodName.startsWith("describe");
+    }
+
+    /**
+     * Counters for a single bucket
+     */
+    public static class Bucket {
+
+        private final String name;
+        private final RateLimiter limiter;
+
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong totalWaitInMicros = new AtomicLong();
+        private final AtomicLong maxWaitInMicros = new AtomicLong();
+
+        Bucket(String name, double requestsPerSecond) {
+            checkArgument(requestsPerSecond > 0, "requestsPerSecond should be positive");
+            this.name = checkNotNull(name, "name is null");
+            this.limiter = RateLimiter.create(requestsPerSecond);
+        }
+
+        void acquire(String key) {
+            final long start = System.nanoTime();
+            limiter.acquire();
+            final long waitInMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+            requests.incrementAndGet();
+            totalWaitInMicros.addAndGet(waitInMicros);
+
+            long max = maxWaitInMicros.get();
+            while (waitInMicros > max && !maxWaitInMicros.compareAndSet(max, waitInMicros)) {
+                max = maxWaitInMicros.get();
+            }
+
+            if (waitInMicros > TimeUnit.MILLISECONDS.toMicros(SLOW_ACQUIRE_THRESHOLD_IN_MILLIS)) {
+                LOG.info("Waited {} ms for a {} request permit for {}",
+                    new Object[]{TimeUnit.MICROSECONDS.toMillis(waitInMicros), name, key});
+            }
+        }
+
+        public double getRequestsPerSecond() {
+            return limiter.getRate();
+        }
+
+        public long getRequestsCount() {
+            return requests.get();
+        }
+
+        public long getTotalWaitInMicros() {
+            return totalWaitInMicros.get();
+        }
+
+        public long getMaxWaitInMicros() {
+            return maxWaitInMicros.get();
+        }
+
+        @Override
+        public String toString() {
+            return name + "{rate=" + limiter.getRate() + ", requests=" + requests +
+                ", totalWaitInMicros=" + totalWaitInMicros + ", maxWaitInMicros=" + maxWaitInMicros + '}';
+        }
+    }
+
+    private final String key;
+    private final Bucket describe;
+    private final Bucket mutate;
+
+    /**
+     * @param key used only for logging. It should not contain the secret key.
+     */
+    public AmazonApiRateLimiter(String key, double describeRequestsPerSecond, double mutateRequestsPerSecond) {
+        this.key = checkNotNull(key, "key is null");
+        this.describe = new Bucket("describe", describeRequestsPerSecond);
+        this.mutate = new Bucket("mutate", mutateRequestsPerSecond);
+    }
+
+    /**
+     * Block until a request for this API method is allowed
+     */
+    public void acquire(String methodName) {
+        if (UNLIMITED_METHODS.contains(methodName)) {
+            return;
+        }
+        if (isDescribeMethod(methodName)) {
+            describe.acquire(key);
+        } else {
+            mutate.acquire(key);
+        }
+    }
+
+    /**
+     * Wrap a client so that every API call waits for a permit from this limiter
+     */
+    public AmazonEC2 wrap(final AmazonEC2 client) {
+        checkNotNull(client, "client is null");
+        return (AmazonEC2) Proxy.newProxyInstance(AmazonEC2.class.getClassLoader(),
+            new Class<?>[]{AmazonEC2.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                acquire(method.getName());
+                try {
+                    return method.invoke(client, args);
+
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        });
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Bucket getDescribeBucket() {
+        return describe;
+    }
+
+    public Bucket getMutateBucket() {
+        return mutate;
+    }
+
+    @Override
+    public String toString() {
+        return "AmazonApiRateLimiter{key=" + key + ", describe=" + describe + ", mutate=" + mutate + '}';
+    }
+}
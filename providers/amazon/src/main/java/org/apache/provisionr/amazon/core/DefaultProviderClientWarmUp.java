@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.provisionr.amazon.config.DefaultProviderConfig;
+import org.apache.provisionr.api.provider.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the client for the default provider in the background when the bundle
+ * is activated so that the first pool doesn't have to wait for it
+ */
+public class DefaultProviderClientWarmUp {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultProviderClientWarmUp.class);
+
+    private final ProviderClientCache providerClientCache;
+    private final Optional<Provider> defaultProvider;
+
+    private ExecutorService executor;
+
+    public DefaultProviderClientWarmUp(ProviderClientCache providerClientCache,
+                                       DefaultProviderConfig defaultProviderConfig) {
+        this.providerClientCache = checkNotNull(providerClientCache, "providerClientCache is null");
+        this.defaultProvider = defaultProviderConfig.createProvider();
+    }
+
+    public synchronized void start() {
+        if (!defaultProvider.isPresent() || executor != null) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("amazon-client-warm-up-%d").setDaemon(true).build());
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    LOG.info(">> Building client for the default provider");
+                    providerClientCache.getUnchecked(defaultProvider.get());
+                    LOG.info("<< Client for the default provider is ready");
+
+                } catch (RuntimeException e) {
+                    LOG.warn("Unable to build client for the default provider. " +
+                        "It will be built again when the first pool is created", e);
+                }
+            }
+        });
+        executor.shutdown();
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
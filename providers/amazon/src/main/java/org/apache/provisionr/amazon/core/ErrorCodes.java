@@ -32,4 +32,11 @@ public final class ErrorCodes {
 
     public static final String KEYPAIR_NOT_FOUND = "InvalidKeyPair.NotFound";
 
+    public static final String INSUFFICIENT_INSTANCE_CAPACITY = "InsufficientInstanceCapacity";
+
+    /**
+     * Returned when an instance type is not available in an availability zone
+     */
+    public static final String UNSUPPORTED = "Unsupported";
+
 }                         
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.io.IOException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Image IDs from an {@link ImageTable} indexed by region, version, arch and type
+ * <p/>
+ * The table is scanned only once when the catalog is built. After that
+ * every lookup is a single hash map access.
+ */
+public class ImageCatalog {
+
+    public static final String DEFAULT_RESOURCE = "/org/apache/provisionr/amazon/ubuntu.csv";
+
+    private static final Joiner KEY = Joiner.on('|');
+
+    /**
+     * Lazy holder for the catalog built from the bundled resource
+     */
+    private static class DefaultCatalogHolder {
+        static final ImageCatalog INSTANCE = loadDefault();
+
+        private static ImageCatalog loadDefault() {
+            try {
+                return fromImageTable(ImageTable.fromCsvResource(DEFAULT_RESOURCE));
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+
+    /**
+     * @return the catalog built from the list of images shipped with the bundle
+     */
+    public static ImageCatalog getDefault() {
+        return DefaultCatalogHolder.INSTANCE;
+    }
+
+    public static ImageCatalog fromImageTable(ImageTable table) {
+        checkNotNull(table, "table is null");
+
+        Map<String, String> index = Maps.newHashMap();
+        Set<String> ambiguous = Sets.newHashSet();
+
+        for (Map<String, String> row : table.getTable().rowMap().values()) {
+            final String key = formatKey(row.get("region"), row.get("version"), row.get("arch"), row.get("type"));
+            final String imageId = checkNotNull(row.get("ami-id"), "ami-id column is missing");
+
+            String previous = index.put(key, imageId);
+            if (previous != null && !previous.equals(imageId)) {
+                ambiguous.add(key);
+            }
+        }
+
+        return new ImageCatalog(index, ambiguous);
+    }
+
+    private static String formatKey(String region, String version, String arch, String type) {
+        return KEY.join(region, version, arch, type);
+    }
+
+    private final Map<String, String> index;
+    private final Set<String> ambiguous;
+
+    private ImageCatalog(Map<String, String> index, Set<String> ambiguous) {
+        this.index = ImmutableMap.copyOf(index);
+        this.ambiguous = ImmutableSet.copyOf(ambiguous);
+    }
+
+    /**
+     * Same semantics as {@link ImageTableQuery#singleResult()} for a query that
+     * filters on all the indexed columns
+     *
+     * @throws NoSuchElementException   if there is no matching image
+     * @throws IllegalArgumentException if there is more than one matching image
+     */
+    public String lookup(String region, String version, String arch, String type) {
+        final String key = formatKey(region, version, arch, type);
+        checkArgument(!ambiguous.contains(key), "Found multiple images for region %s, " +
+            "version %s, arch %s and type %s", region, version, arch, type);
+
+        String imageId = index.get(key);
+        if (imageId == null) {
+            throw new NoSuchElementException(String.format("No image found for region %s, version %s, " +
+                "arch %s and type %s", region, version, arch, type));
+        }
+        return imageId;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ImageCatalog{" +
+            "size=" + index.size() +
+            ", ambiguous=" + ambiguous +
+            '}';
+    }
+}
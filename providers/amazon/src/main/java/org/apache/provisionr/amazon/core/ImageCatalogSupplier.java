@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.base.Supplier;
+import java.io.File;
+import java.io.IOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Supplies the image catalog used when launching instances
+ * <p/>
+ * By default this is the catalog built from the bundled resource. When an external
+ * csv file is configured it is loaded instead and reloaded when it changes on disk.
+ * If the file can't be read the last catalog loaded successfully is kept.
+ */
+public class ImageCatalogSupplier implements Supplier<ImageCatalog> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ImageCatalogSupplier.class);
+
+    public static final long DEFAULT_CHECK_INTERVAL_IN_MILLIS = 30000;
+
+    private final Optional<File> file;
+    private final long checkIntervalInMillis;
+
+    private volatile ImageCatalog catalog;
+
+    /* guarded by this */
+    private long lastModified = 0;
+    private volatile long lastCheckedAt = 0;
+
+    public ImageCatalogSupplier() {
+        this("");
+    }
+
+    /**
+     * @param fileName external csv file. Use an empty string for the bundled resource
+     */
+    public ImageCatalogSupplier(String fileName) {
+        this(fileName, DEFAULT_CHECK_INTERVAL_IN_MILLIS);
+    }
+
+    public ImageCatalogSupplier(String fileName, long checkIntervalInMillis) {
+        checkNotNull(fileName, "fileName is null");
+        checkArgument(checkIntervalInMillis >= 0, "checkIntervalInMillis should be positive or 0");
+
+        this.file = fileName.isEmpty() ? Optional.<File>absent() : Optional.of(new File(fileName));
+        this.checkIntervalInMillis = checkIntervalInMillis;
+    }
+
+    @Override
+    public ImageCatalog get() {
+        if (!file.isPresent()) {
+            return ImageCatalog.getDefault();
+        }
+
+        if (catalog == null || System.currentTimeMillis() - lastCheckedAt >= checkIntervalInMillis) {
+            reloadIfChanged();
+        }
+        return catalog;
+    }
+
+    @VisibleForTesting
+    synchronized void reloadIfChanged() {
+        lastCheckedAt = System.currentTimeMillis();
+
+        final File source = file.get();
+        final long modified = source.lastModified();
+        if (catalog != null && modified == lastModified) {
+            return;
+        }
+
+        try {
+            catalog = ImageCatalog.fromImageTable(ImageTable.fromCsvFile(source));
+            lastModified = modified;
+            LOG.info("Loaded {} images from {}", catalog.size(), source);
+
+        } catch (IOException e) {
+            handleLoadFailure(source, e);
+        } catch (RuntimeException e) {
+            handleLoadFailure(source, e);
+        }
+    }
+
+    private void handleLoadFailure(File source, Exception e) {
+        if (catalog == null) {
+            LOG.warn("Unable to load images from " + source + ". Using the bundled list of images", e);
+            catalog = ImageCatalog.getDefault();
+        } else {
+            LOG.warn("Unable to reload images from " + source + ". Keeping the previous list of images", e);
+        }
+    }
+}
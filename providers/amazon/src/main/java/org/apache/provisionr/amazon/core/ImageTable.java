@@ -31,7 +31,9 @@ import static com.google.common.collect.Lists.newArrayList;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Table;
 import com.google.common.collect.Tables;
+import com.google.common.io.Files;
 import com.google.common.io.Resources;
+import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
@@ -54,7 +56,21 @@ public class ImageTable {
     public static ImageTable fromCsvResource(String resource) throws IOException {
         checkNotNull(resource, "resource is null");
 
-        List<String> lines = Resources.readLines(Resources.getResource(ImageTable.class, resource), Charsets.UTF_8);
+        return fromCsvLines(Resources.readLines(Resources.getResource(ImageTable.class, resource), Charsets.UTF_8));
+    }
+
+    /**
+     * Load the list of AMIs from an external csv file with the same format
+     *
+     * @see #fromCsvResource(String)
+     */
+    public static ImageTable fromCsvFile(File file) throws IOException {
+        checkNotNull(file, "file is null");
+
+        return fromCsvLines(Files.readLines(file, Charsets.UTF_8));
+    }
+
+    static ImageTable fromCsvLines(List<String> lines) {
         checkArgument(!lines.isEmpty(), "the resource is an empty file");
 
         final ImmutableTable.Builder<String, String, String> table = ImmutableTable.builder();
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared view of instance states for all the pools running in the same region
+ * <p/>
+ * Every caller adds its instance IDs to the set of instances watched in the region and
+ * a single describe request (split in batches) refreshes the state of all of them. Callers
+ * asking again before the snapshot gets too old are answered from memory so the number of
+ * API calls depends on the number of regions, not on the number of pools.
+ * <p/>
+ * Instances are selected using an instance-id filter so that unknown IDs don't fail
+ * the whole request. They are just missing from the result.
+ */
+public class InstanceStatePoller {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstanceStatePoller.class);
+
+    public static final long DEFAULT_MAX_AGE_IN_MILLIS = 5000;
+    public static final long DEFAULT_FORGET_AFTER_IN_MILLIS = 120000;
+
+    /**
+     * Keep the request size reasonable
+     */
+    public static final int MAX_INSTANCE_IDS_PER_REQUEST = 200;
+
+    private static class Region {
+
+        /* guarded by this */
+        private final Map<String, Long> lastRequested = Maps.newHashMap();
+        private Map<String, Instance> snapshot = ImmutableMap.of();
+        private Set<String> covered = ImmutableSet.of();
+        private long refreshedAt = 0;
+    }
+
+    private final long maxAgeInMillis;
+    private final long forgetAfterInMillis;
+
+    private final ConcurrentMap<String, Region> regions = Maps.newConcurrentMap();
+
+    public InstanceStatePoller() {
+        this(DEFAULT_MAX_AGE_IN_MILLIS, DEFAULT_FORGET_AFTER_IN_MILLIS);
+    }
+
+    /**
+     * @param maxAgeInMillis      max age of a snapshot that can be used to answer a request
+     * @param forgetAfterInMillis stop watching instances that nobody asked about for this long
+     */
+    public InstanceStatePoller(long maxAgeInMillis, long forgetAfterInMillis) {
+        checkArgument(maxAgeInMillis >= 0, "maxAgeInMillis should be positive or 0");
+        checkArgument(forgetAfterInMillis > maxAgeInMillis, "forgetAfterInMillis should be greater than maxAgeInMillis");
+
+        this.maxAgeInMillis = maxAgeInMillis;
+        this.forgetAfterInMillis = forgetAfterInMillis;
+    }
+
+    /**
+     * @param regionKey   identifies the credentials and the region used by the client
+     * @param client      any client for this region
+     * @param instanceIds instances the caller is interested in
+     * @return the instances that were found, indexed by ID
+     */
+    public Map<String, Instance> describe(String regionKey, AmazonEC2 client, Collection<String> instanceIds) {
+        checkNotNull(client, "client is null");
+        final Region region = regionFor(regionKey);
+
+        /* concurrent callers for the same region wait here and reuse the snapshot */
+        synchronized (region) {
+            final long now = System.currentTimeMillis();
+            for (String instanceId : instanceIds) {
+                region.lastRequested.put(instanceId, now);
+            }
+
+            if (now - region.refreshedAt > maxAgeInMillis || !region.covered.containsAll(instanceIds)) {
+                refresh(regionKey, region, client, now);
+            } else {
+                LOG.info("<< Using instance states for {} from {} ms ago", regionKey, now - region.refreshedAt);
+            }
+
+            Map<String, Instance> result = Maps.newHashMap();
+            for (String instanceId : instanceIds) {
+                Instance instance = region.snapshot.get(instanceId);
+                if (instance != null) {
+                    result.put(instanceId, instance);
+                }
+            }
+            return result;
+        }
+    }
+
+    /* guarded by region */
+    private void refresh(String regionKey, Region region, AmazonEC2 client, long now) {
+        Iterator<Map.Entry<String, Long>> iterator = region.lastRequested.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue() > forgetAfterInMillis) {
+                iterator.remove();
+            }
+        }
+
+        final Set<String> watched = ImmutableSet.copyOf(region.lastRequested.keySet());
+        LOG.info(">> Describing {} instances watched in {}", watched.size(), regionKey);
+
+        Map<String, Instance> snapshot = Maps.newHashMap();
+        for (List<String> batch : Iterables.partition(watched, MAX_INSTANCE_IDS_PER_REQUEST)) {
+            DescribeInstancesResult result = client.describeInstances(new DescribeInstancesRequest()
+                .withFilters(new Filter().withName("instance-id").withValues(batch)));
+
+            for (Reservation reservation : result.getReservations()) {
+                for (Instance instance : reservation.getInstances()) {
+                    snapshot.put(instance.getInstanceId(), instance);
+                }
+            }
+        }
+
+        region.snapshot = snapshot;
+        region.covered = watched;
+        region.refreshedAt = now;
+    }
+
+    private Region regionFor(String regionKey) {
+        checkNotNull(regionKey, "regionKey is null");
+
+        Region region = regions.get(regionKey);
+        if (region == null) {
+            Region candidate = new Region();
+            region = regions.putIfAbsent(regionKey, candidate);
+            if (region == null) {
+                region = candidate;
+            }
+        }
+        return region;
+    }
+
+    /**
+     * Number of instances watched in a region. Mostly useful for testing.
+     */
+    public int getWatchedInstancesCount(String regionKey) {
+        final Region region = regionFor(regionKey);
+        synchronized (region) {
+            return region.lastRequested.size();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.apache.provisionr.amazon.options.ProviderOptions;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.api.provider.Provider;
+
+/**
+ * Splits the instances of a pool in chunks that can be launched with independent
+ * RunInstances requests, spread evenly between the configured availability zones
+ * <p/>
+ * Each chunk knows the list of instance types to try in order and gets its own
+ * client token for each one of them so that retrying a launch is idempotent.
+ */
+public class LaunchPlan {
+
+    private static final Splitter COMMA_SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
+
+    public static class Chunk {
+
+        private final int index;
+        private final Optional<String> availabilityZone;
+        private final int minCount;
+        private final int maxCount;
+
+        Chunk(int index, Optional<String> availabilityZone, int minCount, int maxCount) {
+            this.index = index;
+            this.availabilityZone = checkNotNull(availabilityZone, "availabilityZone is null");
+            this.minCount = minCount;
+            this.maxCount = maxCount;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Optional<String> getAvailabilityZone() {
+            return availabilityZone;
+        }
+
+        public int getMinCount() {
+            return minCount;
+        }
+
+        public int getMaxCount() {
+            return maxCount;
+        }
+
+        /**
+         * The client token used when launching this chunk with the n-th instance type
+         */
+        public String formatClientToken(String businessKey, int instanceTypeIndex) {
+            return String.format("%s-%d-%d", businessKey, index, instanceTypeIndex);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(index, availabilityZone, minCount, maxCount);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Chunk other = (Chunk) obj;
+            return this.index == other.index
+                && Objects.equal(this.availabilityZone, other.availabilityZone)
+                && this.minCount == other.minCount
+                && this.maxCount == other.maxCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Chunk{" +
+                "index=" + index +
+                ", availabilityZone=" + availabilityZone +
+                ", minCount=" + minCount +
+                ", maxCount=" + maxCount +
+                '}';
+        }
+    }
+
+    /**
+     * Build a launch plan using the provider options and the pool hardware type
+     */
+    public static LaunchPlan forPool(Pool pool) {
+        final Provider provider = pool.getProvider();
+
+        List<String> instanceTypes = Lists.newArrayList(pool.getHardware().getType());
+        for (String type : COMMA_SPLITTER.split(
+            provider.getOptionOr(ProviderOptions.FALLBACK_INSTANCE_TYPES, ""))) {
+            if (!instanceTypes.contains(type)) {
+                instanceTypes.add(type);
+            }
+        }
+
+        final int instancesPerRequest = Integer.parseInt(provider.getOptionOr(
+            ProviderOptions.INSTANCES_PER_REQUEST, String.valueOf(ProviderOptions.DEFAULT_INSTANCES_PER_REQUEST)));
+
+        return create(pool.getMinSize(), countInstancesToLaunch(pool),
+            Lists.newArrayList(COMMA_SPLITTER.split(provider.getOptionOr(ProviderOptions.AVAILABILITY_ZONES, ""))),
+            instanceTypes, instancesPerRequest);
+    }
+
+    /**
+     * The expected size of the pool plus the extra instances launched as a hedge
+     * against slow machines (rounded up)
+     */
+    public static int countInstancesToLaunch(Pool pool) {
+        final int hedgePercentage = Integer.parseInt(pool.getProvider().getOptionOr(
+            ProviderOptions.HEDGE_PERCENTAGE, ProviderOptions.DEFAULT_HEDGE_PERCENTAGE));
+        checkArgument(hedgePercentage >= 0, "hedgePercentage should be positive or 0");
+
+        return pool.getExpectedSize() + (pool.getExpectedSize() * hedgePercentage + 99) / 100;
+    }
+
+    /**
+     * @param availabilityZones   can be empty - Amazon picks the zone in that case
+     * @param instanceTypes       in the order they should be tried
+     * @param instancesPerRequest max number of instances launched by a single chunk
+     */
+    public static LaunchPlan create(int minSize, int expectedSize, List<String> availabilityZones,
+                                    List<String> instanceTypes, int instancesPerRequest) {
+        checkArgument(expectedSize > 0, "expectedSize should be positive");
+        checkArgument(minSize > 0 && minSize <= expectedSize, "minSize should be between 1 and expectedSize");
+        checkArgument(!instanceTypes.isEmpty(), "instanceTypes is empty");
+        checkArgument(instancesPerRequest > 0, "instancesPerRequest should be positive");
+
+        int chunkCount = (expectedSize + instancesPerRequest - 1) / instancesPerRequest;
+        chunkCount = Math.max(chunkCount, Math.min(availabilityZones.size(), expectedSize));
+
+        ImmutableList.Builder<Chunk> chunks = ImmutableList.builder();
+        for (int index = 0; index < chunkCount; index++) {
+            final int count = expectedSize / chunkCount + (index < expectedSize % chunkCount ? 1 : 0);
+            final Optional<String> zone = availabilityZones.isEmpty() ? Optional.<String>absent()
+                : Optional.of(availabilityZones.get(index % availabilityZones.size()));
+
+            /* with more than one chunk minSize is enforced after merging the results */
+            chunks.add(new Chunk(index, zone, chunkCount == 1 ? minSize : 1, count));
+        }
+
+        return new LaunchPlan(minSize, chunks.build(), instanceTypes);
+    }
+
+    private final int minSize;
+    private final List<Chunk> chunks;
+    private final List<String> instanceTypes;
+
+    private LaunchPlan(int minSize, List<Chunk> chunks, List<String> instanceTypes) {
+        this.minSize = minSize;
+        this.chunks = chunks;
+        this.instanceTypes = ImmutableList.copyOf(instanceTypes);
+    }
+
+    /**
+     * The minimum number of instances that should be running for the launch to succeed
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    public List<String> getInstanceTypes() {
+        return instanceTypes;
+    }
+
+    /**
+     * The client tokens of all the requests that could be sent for this plan - one
+     * for each chunk and instance type. Used to find the instances launched for a pool.
+     */
+    public List<String> formatAllClientTokens(String businessKey) {
+        List<String> clientTokens = Lists.newArrayList();
+        for (Chunk chunk : chunks) {
+            for (int typeIndex = 0; typeIndex < instanceTypes.size(); typeIndex++) {
+                clientTokens.add(chunk.formatClientToken(businessKey, typeIndex));
+            }
+        }
+        return clientTokens;
+    }
+
+    @Override
+    public String toString() {
+        return "LaunchPlan{" +
+            "minSize=" + minSize +
+            ", instanceTypes=" + Joiner.on(',').join(instanceTypes) +
+            ", chunks=" + chunks +
+            '}';
+    }
+}
@@ -25,6 +25,7 @@ import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.AmazonEC2Client;
 import com.amazonaws.services.ec2.model.DescribeRegionsRequest;
 import com.amazonaws.services.ec2.model.DescribeRegionsResult;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -35,6 +36,10 @@ import com.google.common.cache.ForwardingLoadingCache;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import org.apache.provisionr.amazon.options.ProviderOptions;
 import org.apache.provisionr.api.provider.Provider;
@@ -50,20 +55,26 @@ public class ProviderClientCacheSupplier implements Supplier<ProviderClientCache
     public static final int MAX_CACHE_SIZE = 100;
     public static final int EXPIRE_AFTER_WRITE_IN_HOURS = 2;
 
-    private static class ProviderClientCacheLoader extends CacheLoader<Provider, AmazonEC2> {
+    private class ProviderClientCacheLoader extends CacheLoader<Provider, AmazonEC2> {
 
         @Override
         public AmazonEC2 load(Provider provider) {
-            String region = Optional.fromNullable(provider.getOptions().get(ProviderOptions.REGION))
-                .or(ProviderOptions.DEFAULT_REGION);
+            String region = provider.getOptionOr(ProviderOptions.REGION, ProviderOptions.DEFAULT_REGION);
 
             AWSCredentials credentials = new BasicAWSCredentials(provider.getAccessKey(), provider.getSecretKey());
-            AmazonEC2 client = new AmazonEC2Client(credentials, new ClientConfiguration()
-                .withUserAgent(PROVISIONR_USER_AGENT));
+            AmazonEC2 client = getRateLimiter(provider).wrap(new AmazonEC2Client(credentials,
+                createClientConfiguration(provider)));
 
             if (provider.getEndpoint().isPresent()) {
                 LOG.info("Using endpoint {} as configured", provider.getEndpoint().get());
                 client.setEndpoint(provider.getEndpoint().get());
+                return client;
+            }
+
+            Optional<String> knownEndpoint = regionEndpoints.get(region);
+            if (knownEndpoint.isPresent()) {
+                LOG.info("Using endpoint {} for region {} as previously resolved", knownEndpoint.get(), region);
+                client.setEndpoint(knownEndpoint.get());
 
             } else {
                 LOG.info(">> Searching endpoint for region {}", region);
@@ -73,12 +84,14 @@ public class ProviderClientCacheSupplier implements Supplier<ProviderClientCache
                 checkArgument(result.getRegions().size() == 1, "Invalid region name %s. Expected one result found %s",
                     region, result.getRegions());
 
-                LOG.info("<< Using endpoint {} for region {}", result.getRegions().get(0).getEndpoint(), region);
-                client.setEndpoint(result.getRegions().get(0).getEndpoint());
+                final String endpoint = result.getRegions().get(0).getEndpoint();
+                LOG.info("<< Using endpoint {} for region {}", endpoint, region);
+
+                regionEndpoints.put(region, endpoint);
+                client.setEndpoint(endpoint);
             }
 
             return client;
-
         }
     }
 
@@ -97,6 +110,105 @@ public class ProviderClientCacheSupplier implements Supplier<ProviderClientCache
         }
     }
 
+    private final double describeRequestsPerSecond;
+    private final double mutateRequestsPerSecond;
+    private final RegionEndpoints regionEndpoints;
+
+    /**
+     * Clients for different providers (e.g. different options) share the same limiter
+     * if they use the same credentials in the same region
+     */
+    private final ConcurrentMap<String, AmazonApiRateLimiter> rateLimiters = Maps.newConcurrentMap();
+
+    public ProviderClientCacheSupplier() {
+        this(AmazonApiRateLimiter.DEFAULT_DESCRIBE_REQUESTS_PER_SECOND,
+            AmazonApiRateLimiter.DEFAULT_MUTATE_REQUESTS_PER_SECOND);
+    }
+
+    public ProviderClientCacheSupplier(double describeRequestsPerSecond, double mutateRequestsPerSecond) {
+        this(describeRequestsPerSecond, mutateRequestsPerSecond, new RegionEndpoints());
+    }
+
+    public ProviderClientCacheSupplier(double describeRequestsPerSecond, double mutateRequestsPerSecond,
+                                       RegionEndpoints regionEndpoints) {
+        checkArgument(describeRequestsPerSecond > 0, "describeRequestsPerSecond should be positive");
+        checkArgument(mutateRequestsPerSecond > 0, "mutateRequestsPerSecond should be positive");
+
+        this.describeRequestsPerSecond = describeRequestsPerSecond;
+        this.mutateRequestsPerSecond = mutateRequestsPerSecond;
+        this.regionEndpoints = checkNotNull(regionEndpoints, "regionEndpoints is null");
+    }
+
+    /**
+     * Client configuration with connection pool size and timeouts taken from the provider options
+     */
+    @VisibleForTesting
+    static ClientConfiguration createClientConfiguration(Provider provider) {
+        ClientConfiguration configuration = new ClientConfiguration().withUserAgent(PROVISIONR_USER_AGENT);
+
+        Optional<Integer> maxConnections = parseIntegerOption(provider, ProviderOptions.MAX_CONNECTIONS);
+        if (maxConnections.isPresent()) {
+            configuration.setMaxConnections(maxConnections.get());
+        }
+        Optional<Integer> connectionTimeout = parseIntegerOption(provider, ProviderOptions.CONNECTION_TIMEOUT);
+        if (connectionTimeout.isPresent()) {
+            configuration.setConnectionTimeout(connectionTimeout.get());
+        }
+        Optional<Integer> socketTimeout = parseIntegerOption(provider, ProviderOptions.SOCKET_TIMEOUT);
+        if (socketTimeout.isPresent()) {
+            configuration.setSocketTimeout(socketTimeout.get());
+        }
+
+        return configuration;
+    }
+
+    private static Optional<Integer> parseIntegerOption(Provider provider, String key) {
+        String value = provider.getOption(key);
+        if (value == null) {
+            return Optional.absent();
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            checkArgument(parsed > 0, "Provider option %s should be positive. Found %s", key, parsed);
+            return Optional.of(parsed);
+
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Provider option %s is not a number: %s", key, value), e);
+        }
+    }
+
+    /**
+     * Rate limiters with their queue wait metrics
+     */
+    public Collection<AmazonApiRateLimiter> getRateLimiters() {
+        return ImmutableList.copyOf(rateLimiters.values());
+    }
+
+    /**
+     * Identifies the credentials and the region used by the clients created for a provider
+     */
+    public static String formatRegionKey(Provider provider) {
+        return provider.getAccessKey() + "@" + provider.getEndpoint().or(
+            Optional.fromNullable(provider.getOption(ProviderOptions.REGION)).or(ProviderOptions.DEFAULT_REGION));
+    }
+
+    private AmazonApiRateLimiter getRateLimiter(Provider provider) {
+        final String key = formatRegionKey(provider);
+
+        AmazonApiRateLimiter limiter = rateLimiters.get(key);
+        if (limiter == null) {
+            AmazonApiRateLimiter candidate = new AmazonApiRateLimiter(key,
+                describeRequestsPerSecond, mutateRequestsPerSecond);
+            limiter = rateLimiters.putIfAbsent(key, candidate);
+            if (limiter == null) {
+                LOG.info("Limiting EC2 requests for {} to {} describe and {} mutate requests per second",
+                    new Object[]{key, describeRequestsPerSecond, mutateRequestsPerSecond});
+                limiter = candidate;
+            }
+        }
+        return limiter;
+    }
+
     @Override
     public ProviderClientCache get() {
         final LoadingCache<Provider, AmazonEC2> cache = CacheBuilder.newBuilder()
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long lived table of endpoints resolved by region name
+ * <p/>
+ * Region endpoints almost never change so there is no need to call describeRegions
+ * every time a client is created. When a file name is configured the table is loaded
+ * on startup and written back every time a new region is resolved.
+ */
+public class RegionEndpoints {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RegionEndpoints.class);
+
+    private final Optional<File> file;
+    private final ConcurrentMap<String, String> endpoints = Maps.newConcurrentMap();
+
+    public RegionEndpoints() {
+        this("");
+    }
+
+    /**
+     * @param fileName use an empty string to keep the table only in memory
+     */
+    public RegionEndpoints(String fileName) {
+        checkNotNull(fileName, "fileName is null");
+        this.file = fileName.isEmpty() ? Optional.<File>absent() : Optional.of(new File(fileName));
+
+        if (file.isPresent()) {
+            load(file.get());
+        }
+    }
+
+    public Optional<String> get(String region) {
+        return Optional.fromNullable(endpoints.get(region));
+    }
+
+    public void put(String region, String endpoint) {
+        checkNotNull(region, "region is null");
+        checkNotNull(endpoint, "endpoint is null");
+
+        String previous = endpoints.put(region, endpoint);
+        if (file.isPresent() && !endpoint.equals(previous)) {
+            save(file.get());
+        }
+    }
+
+    public Map<String, String> asMap() {
+        return ImmutableMap.copyOf(endpoints);
+    }
+
+    private void load(File source) {
+        if (!source.isFile()) {
+            LOG.info("No region endpoints found in {}", source);
+            return;
+        }
+
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(source);
+            properties.load(in);
+
+        } catch (IOException e) {
+            LOG.warn("Unable to load region endpoints from " + source, e);
+            return;
+
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+
+        for (String region : properties.stringPropertyNames()) {
+            endpoints.put(region, properties.getProperty(region));
+        }
+        LOG.info("Loaded {} region endpoints from {}", endpoints.size(), source);
+    }
+
+    private synchronized void save(File destination) {
+        Properties properties = new Properties();
+        properties.putAll(endpoints);
+
+        File parent = destination.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            LOG.warn("Unable to create directory {} for region endpoints", parent);
+            return;
+        }
+
+        /* write to a temporary file first to avoid leaving a partial table behind */
+        File temporary = new File(parent, destination.getName() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temporary);
+            properties.store(out, "EC2 endpoints by region name");
+
+        } catch (IOException e) {
+            LOG.warn("Unable to save region endpoints to " + temporary, e);
+            return;
+
+        } finally {
+            Closeables.closeQuietly(out);
+        }
+
+        if (!temporary.renameTo(destination) && !(destination.delete() && temporary.renameTo(destination))) {
+            LOG.warn("Unable to replace region endpoints file {}", destination);
+        }
+    }
+}
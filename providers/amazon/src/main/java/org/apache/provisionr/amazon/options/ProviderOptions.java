@@ -28,4 +28,47 @@ public final class ProviderOptions {
     public static final String DEFAULT_REGION = "us-east-1";
     public static final String SPOT_BID = "spotBid";
 
+    /**
+     * HTTP connection settings for the EC2 client. Timeouts are in milliseconds.
+     */
+    public static final String MAX_CONNECTIONS = "maxConnections";
+    public static final String CONNECTION_TIMEOUT = "connectionTimeout";
+    public static final String SOCKET_TIMEOUT = "socketTimeout";
+
+    /**
+     * Comma separated list of availability zones. Instances are spread evenly between them.
+     */
+    public static final String AVAILABILITY_ZONES = "availabilityZones";
+
+    /**
+     * Comma separated list of instance types to try in order when there is not enough
+     * capacity for the type requested by the pool
+     */
+    public static final String FALLBACK_INSTANCE_TYPES = "fallbackInstanceTypes";
+
+    /**
+     * Max number of instances started with a single request
+     */
+    public static final String INSTANCES_PER_REQUEST = "instancesPerRequest";
+    public static final int DEFAULT_INSTANCES_PER_REQUEST = 20;
+
+    /**
+     * Set to false to wait for all the instances to start before setting up any of them
+     */
+    public static final String PIPELINED_SETUP = "pipelinedSetup";
+    public static final String DEFAULT_PIPELINED_SETUP = "true";
+
+    /**
+     * How long to wait for the remaining machines once minSize machines are ready.
+     * Defaults to the pool bootstrap time.
+     */
+    public static final String STRAGGLER_TIMEOUT_IN_SECONDS = "stragglerTimeoutInSeconds";
+
+    /**
+     * Extra instances to launch as a percentage of the expected size. The first
+     * expectedSize machines that finish the setup are kept, the others are terminated.
+     */
+    public static final String HEDGE_PERCENTAGE = "hedgePercentage";
+    public static final String DEFAULT_HEDGE_PERCENTAGE = "0";
+
 }
@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Map;
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.ProcessEngineConfiguration;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.delegate.ExecutionListener;
+import org.activiti.engine.delegate.JavaDelegate;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.activiti.engine.impl.jobexecutor.TimerCatchIntermediateEventJobHandler;
+import org.activiti.engine.impl.jobexecutor.TimerExecuteNestedActivityJobHandler;
+import org.activiti.engine.impl.persistence.entity.JobEntity;
+import org.activiti.engine.runtime.Execution;
+import org.activiti.engine.runtime.Job;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.apache.provisionr.core.CoreSignals;
+import org.apache.provisionr.core.activities.AreMachinesPortOpen;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drive the pool management process job by job with fake activities to check
+ * that the paths through the process work end to end
+ * <p/>
+ * Boundary timers are only fired when a test asks for it explicitly - the other
+ * jobs are message jobs and timers between checks.
+ */
+public class AmazonPoolManagementProcessTest {
+
+    private static final int MAX_JOBS = 200;
+
+    private ProcessEngine processEngine;
+    private ServerSocket sshServer;
+
+    private final Map<Object, Object> beans = Maps.newHashMap();
+    private final List<String> executed = Lists.newArrayList();
+
+    @Before
+    public void setUp() throws IOException {
+        sshServer = new ServerSocket(0);
+
+        for (String name : ImmutableList.of("amazon_ensureSecurityGroupExists", "amazon_ensureKeyPairExists",
+            "amazon_killMachineSetUpProcesses", "amazon_terminateInstances", "amazon_deleteKeyPair",
+            "amazon_deleteSecurityGroup", "amazon_recordHedgeSavings", "amazon_dropStragglers",
+            "amazon_terminateStragglerInstances")) {
+            beans.put(name, record(name, ImmutableMap.<String, Object>of()));
+        }
+        beans.put("amazon_runOnDemandInstances", record("amazon_runOnDemandInstances",
+            ImmutableMap.<String, Object>of(ProcessVariables.INSTANCE_IDS, Lists.newArrayList("i-1"))));
+        beans.put("amazon_checkAllInstancesAreRunning", record("amazon_checkAllInstancesAreRunning",
+            ImmutableMap.<String, Object>of(ProcessVariables.ALL_INSTANCES_RUNNING, true)));
+        beans.put("amazon_checkAllInstancesAreTerminated", record("amazon_checkAllInstancesAreTerminated",
+            ImmutableMap.<String, Object>of(ProcessVariables.ALL_INSTANCES_TERMINATED, true)));
+        beans.put("amazon_publishListOfMachines", record("amazon_publishListOfMachines",
+            ImmutableMap.<String, Object>of(CoreProcessVariables.MACHINES, Lists.newArrayList(localhost()))));
+        beans.put("amazon_publishRunningMachines", record("amazon_publishRunningMachines",
+            ImmutableMap.<String, Object>of(CoreProcessVariables.MACHINES, Lists.newArrayList(localhost()),
+                ProcessVariables.ALL_INSTANCES_RUNNING, true)));
+        beans.put("amazon_spawnMachineSetupProcesses", record("amazon_spawnMachineSetupProcesses",
+            ImmutableMap.<String, Object>of("amazonMachineSetupProcessIds", Lists.newArrayList("1"),
+                "amazonMachineSetupProcessIdsDone", true)));
+        beans.put("amazon_checkSetupProcessesEnded", record("amazon_checkSetupProcessesEnded",
+            ImmutableMap.<String, Object>of("setupProcessesEnded", true, "minSetupProcessesEnded", true,
+                CoreProcessVariables.EXPECTED_MACHINES_READY, true,
+                CoreProcessVariables.READY_MACHINES, Lists.newArrayList(localhost()))));
+
+        /* the real port check - it fails if the machines were not published before */
+        beans.put("checkAllSshPortsAreOpen",
+            new AreMachinesPortOpen("allSshPortsOpen", "sshPortOpenPerMachine", sshServer.getLocalPort()));
+
+        ExecutionListener noop = new ExecutionListener() {
+            @Override
+            public void notify(DelegateExecution execution) {
+                /* nothing to do */
+            }
+        };
+        beans.put("updatePoolRegistry", noop);
+        beans.put("removePoolFromRegistry", noop);
+
+        ProcessEngineConfigurationImpl configuration = (ProcessEngineConfigurationImpl)
+            ProcessEngineConfiguration.createStandaloneInMemProcessEngineConfiguration();
+        configuration.setBeans(beans);
+        configuration.setJobExecutorActivate(false);
+
+        processEngine = configuration.buildProcessEngine();
+        processEngine.getRepositoryService().createDeployment()
+            .addClasspathResource("OSGI-INF/activiti/amazonPoolManagement.bpmn20.xml").deploy();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        processEngine.close();
+        sshServer.close();
+    }
+
+    @Test
+    public void testWaitForAllInstancesPathReachesReady() {
+        ProcessInstance instance = startPool(/* pipelinedSetup= */ false, /* hedgedLaunch= */ false);
+
+        runJobsUntilStatus(instance, "ready");
+
+        assertThat(executed).contains("amazon_publishListOfMachines", "amazon_spawnMachineSetupProcesses");
+        assertThat(executed.indexOf("amazon_publishListOfMachines"))
+            .isLessThan(executed.indexOf("amazon_spawnMachineSetupProcesses"));
+        assertThat(executed).doesNotContain("amazon_publishRunningMachines");
+    }
+
+    /**
+     * All the instances are ready on the first check so the loop that completes the
+     * stragglers has nothing left to wait for - the extra machines should still be dropped
+     */
+    @Test
+    public void testHedgedMachinesAreDroppedWhenAllOfThemAreReadyTogether() {
+        ProcessInstance instance = startPool(/* pipelinedSetup= */ false, /* hedgedLaunch= */ true);
+
+        runJobsUntilExecuted(instance, "amazon_terminateStragglerInstances");
+
+        assertThat(executed).contains("amazon_recordHedgeSavings", "amazon_dropStragglers");
+        assertThat(executed.indexOf("amazon_dropStragglers"))
+            .isLessThan(executed.indexOf("amazon_terminateStragglerInstances"));
+    }
+
+    @Test
+    public void testNoMachinesAreDroppedWithoutHedging() {
+        ProcessInstance instance = startPool(/* pipelinedSetup= */ false, /* hedgedLaunch= */ false);
+
+        runJobsUntilStatus(instance, "ready");
+        runAllMessageJobs(instance);
+
+        assertThat(executed).contains("amazon_publishRunningMachines");
+        assertThat(executed).doesNotContain("amazon_dropStragglers", "amazon_terminateStragglerInstances");
+    }
+
+    @Test
+    public void testTerminatingThePoolStopsTheStragglersLoop() {
+        beans.put("amazon_checkSetupProcessesEnded", record("amazon_checkSetupProcessesEnded",
+            ImmutableMap.<String, Object>of("setupProcessesEnded", false, "minSetupProcessesEnded", true,
+                CoreProcessVariables.EXPECTED_MACHINES_READY, false,
+                CoreProcessVariables.READY_MACHINES, Lists.newArrayList(localhost()))));
+
+        ProcessInstance instance = startPool(/* pipelinedSetup= */ true, /* hedgedLaunch= */ false);
+
+        runJobsUntilStatus(instance, "ready");
+        runAllMessageJobs(instance);
+        assertThat(countExecutionsAt(instance, "timerBetweenStragglerChecks")).isEqualTo(1);
+
+        signal(instance, CoreSignals.TERMINATE_POOL);
+        assertThat(countExecutionsAt(instance, "timerBetweenStragglerChecks")).isEqualTo(0);
+
+        final int executedBeforeTermination = executed.size();
+        runJobsUntilStatus(instance, "terminated");
+
+        assertThat(executed.subList(executedBeforeTermination, executed.size()))
+            .contains("amazon_killMachineSetUpProcesses", "amazon_terminateInstances")
+            .doesNotContain("amazon_publishRunningMachines", "amazon_spawnMachineSetupProcesses");
+    }
+
+    /**
+     * The spot requests never become visible so the process gives up waiting - the requests
+     * seen so far must still be available to cancel them
+     */
+    @Test
+    public void testSpotRequestsAreCancelledWhenTheWaitTimesOut() {
+        beans.put("amazon_runSpotInstances", record("amazon_runSpotInstances",
+            ImmutableMap.<String, Object>of(ProcessVariables.SPOT_REQUESTS_SENT, true,
+                ProcessVariables.SPOT_REQUESTS_FOUND, false,
+                ProcessVariables.SPOT_INSTANCE_REQUEST_IDS, Lists.newArrayList("sir-1"))));
+        beans.put("amazon_getInstanceIdsFromSpotRequests", record("amazon_getInstanceIdsFromSpotRequests",
+            ImmutableMap.<String, Object>of(ProcessVariables.INSTANCE_IDS, Lists.newArrayList("i-1"))));
+
+        final List<Object> cancelledRequestIds = Lists.newArrayList();
+        beans.put("amazon_cancelSpotRequests", new JavaDelegate() {
+            @Override
+            public void execute(DelegateExecution execution) {
+                executed.add("amazon_cancelSpotRequests");
+                cancelledRequestIds.add(execution.getVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS));
+            }
+        });
+
+        ProcessInstance instance = startPool(/* pipelinedSetup= */ false, /* hedgedLaunch= */ false, "0.04");
+
+        runAllMessageJobs(instance);
+        assertThat(countExecutionsAt(instance, "timerBetweenSpotRequestLookups")).isEqualTo(1);
+
+        Job timeout = null;
+        for (Job job : processEngine.getManagementService().createJobQuery()
+            .processInstanceId(instance.getId()).timers().list()) {
+            if (TimerExecuteNestedActivityJobHandler.TYPE.equals(((JobEntity) job).getJobHandlerType())) {
+                timeout = job;
+            }
+        }
+        assertThat(timeout).as("bootstrap timeout timer").isNotNull();
+        processEngine.getManagementService().executeJob(timeout.getId());
+
+        runJobsUntilStatus(instance, "terminated");
+
+        assertThat(executed).contains("amazon_cancelSpotRequests", "amazon_terminateInstances");
+        assertThat(executed.indexOf("amazon_cancelSpotRequests"))
+            .isLessThan(executed.indexOf("amazon_terminateInstances"));
+        assertThat(cancelledRequestIds).containsExactly(Lists.newArrayList("sir-1"));
+    }
+
+    private ProcessInstance startPool(boolean pipelinedSetup, boolean hedgedLaunch) {
+        return startPool(pipelinedSetup, hedgedLaunch, null);
+    }
+
+    private ProcessInstance startPool(boolean pipelinedSetup, boolean hedgedLaunch, String spotBid) {
+        Map<String, Object> arguments = Maps.newHashMap();
+        arguments.put(CoreProcessVariables.POOL_BUSINESS_KEY, "k1");
+        arguments.put(CoreProcessVariables.BOOTSTRAP_TIMEOUT, "PT10M");
+        arguments.put(CoreProcessVariables.STRAGGLER_TIMEOUT, "PT10M");
+        arguments.put(ProcessVariables.SPOT_BID, spotBid);
+        arguments.put(ProcessVariables.PIPELINED_SETUP, pipelinedSetup);
+        arguments.put(ProcessVariables.HEDGED_LAUNCH, hedgedLaunch);
+
+        return processEngine.getRuntimeService()
+            .startProcessInstanceByKey(AmazonProvisionr.MANAGEMENT_PROCESS_KEY, "k1", arguments);
+    }
+
+    /**
+     * Execute message jobs first and then timers between checks until the pool
+     * reaches the expected status
+     */
+    private void runJobsUntilStatus(final ProcessInstance instance, final String status) {
+        runJobsUntil(instance, new Supplier<Boolean>() {
+            @Override
+            public Boolean get() {
+                return status.equals(getStatus(instance));
+            }
+        }, "status " + status);
+    }
+
+    private void runJobsUntilExecuted(ProcessInstance instance, final String activity) {
+        runJobsUntil(instance, new Supplier<Boolean>() {
+            @Override
+            public Boolean get() {
+                return executed.contains(activity);
+            }
+        }, activity);
+    }
+
+    private void runJobsUntil(ProcessInstance instance, Supplier<Boolean> done, String description) {
+        for (int count = 0; count < MAX_JOBS; count++) {
+            if (done.get()) {
+                return;
+            }
+            Job next = findNextJob(instance);
+            assertThat(next).as("no job left to execute while waiting for " + description).isNotNull();
+            processEngine.getManagementService().executeJob(next.getId());
+        }
+        throw new AssertionError(description + " not reached after " + MAX_JOBS + " jobs");
+    }
+
+    /**
+     * Execute the pending message jobs without firing any timer
+     */
+    private void runAllMessageJobs(ProcessInstance instance) {
+        for (int count = 0; count < MAX_JOBS; count++) {
+            Job next = findNextJob(instance);
+            if (next == null || next.getDuedate() != null) {
+                return;
+            }
+            processEngine.getManagementService().executeJob(next.getId());
+        }
+    }
+
+    /**
+     * Same as ProvisionrSupport#triggerSignalEvent - all the waiting executions get the signal
+     */
+    private void signal(ProcessInstance instance, String signalName) {
+        RuntimeService runtimeService = processEngine.getRuntimeService();
+        for (Execution execution : runtimeService.createExecutionQuery().processInstanceId(instance.getId())
+            .signalEventSubscriptionName(signalName).list()) {
+            runtimeService.signalEventReceived(signalName, execution.getId());
+        }
+    }
+
+    private long countExecutionsAt(ProcessInstance instance, String activityId) {
+        return processEngine.getRuntimeService().createExecutionQuery()
+            .processInstanceId(instance.getId()).activityId(activityId).count();
+    }
+
+    private String getStatus(ProcessInstance instance) {
+        return (String) processEngine.getRuntimeService().getVariable(instance.getId(), "status");
+    }
+
+    private Job findNextJob(ProcessInstance instance) {
+        List<Job> jobs = processEngine.getManagementService().createJobQuery()
+            .processInstanceId(instance.getId()).list();
+
+        Job timer = null;
+        for (Job job : jobs) {
+            if (job.getDuedate() == null) {
+                return job;
+            }
+            final String type = ((JobEntity) job).getJobHandlerType();
+            if (timer == null && TimerCatchIntermediateEventJobHandler.TYPE.equals(type)) {
+                timer = job;
+            }
+        }
+        return timer;
+    }
+
+    private Machine localhost() {
+        return Machine.builder().localhost().sshPort(sshServer.getLocalPort()).createMachine();
+    }
+
+    private JavaDelegate record(final String name, final Map<String, Object> variables) {
+        return new JavaDelegate() {
+            @Override
+            public void execute(DelegateExecution execution) {
+                executed.add(name);
+                execution.setVariables(variables);
+            }
+        };
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.activities;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.CancelSpotInstanceRequestsRequest;
+import com.amazonaws.services.ec2.model.DescribeSpotInstanceRequestsRequest;
+import com.amazonaws.services.ec2.model.DescribeSpotInstanceRequestsResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.SpotInstanceRequest;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.ProviderClientCache;
+import org.apache.provisionr.amazon.options.ProviderOptions;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.api.provider.Provider;
+import org.apache.provisionr.test.ProcessVariablesCollector;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CancelSpotRequestsTest {
+
+    @Test
+    public void testCompleteListIsCancelledWithoutLookup() throws Exception {
+        AmazonEC2 client = mock(AmazonEC2.class);
+
+        DelegateExecution execution = mock(DelegateExecution.class);
+        when(execution.getProcessBusinessKey()).thenReturn("k1");
+        when(execution.getVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS))
+            .thenReturn(Lists.newArrayList("sir-1", "sir-2"));
+
+        new CancelSpotRequests(mock(ProviderClientCache.class))
+            .execute(client, newPool(2), execution);
+
+        verify(client, never()).describeSpotInstanceRequests(Matchers.<DescribeSpotInstanceRequestsRequest>any());
+        assertThat(captureCancelledIds(client)).containsOnly("sir-1", "sir-2");
+    }
+
+    @Test
+    public void testIncompleteListIsCompletedByLaunchGroup() throws Exception {
+        AmazonEC2 client = mock(AmazonEC2.class);
+        when(client.describeSpotInstanceRequests(Matchers.<DescribeSpotInstanceRequestsRequest>any()))
+            .thenReturn(new DescribeSpotInstanceRequestsResult().withSpotInstanceRequests(
+                new SpotInstanceRequest().withSpotInstanceRequestId("sir-1"),
+                new SpotInstanceRequest().withSpotInstanceRequestId("sir-2")));
+
+        DelegateExecution execution = mock(DelegateExecution.class);
+        when(execution.getProcessBusinessKey()).thenReturn("k1");
+        when(execution.getVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS))
+            .thenReturn(Lists.newArrayList("sir-1"));
+
+        ProcessVariablesCollector collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        new CancelSpotRequests(mock(ProviderClientCache.class))
+            .execute(client, newPool(2), execution);
+
+        ArgumentCaptor<DescribeSpotInstanceRequestsRequest> captor =
+            ArgumentCaptor.forClass(DescribeSpotInstanceRequestsRequest.class);
+        verify(client).describeSpotInstanceRequests(captor.capture());
+        assertThat(captor.getValue().getFilters())
+            .containsOnly(new Filter().withName("launch-group").withValues("k1"));
+
+        assertThat(captureCancelledIds(client)).containsOnly("sir-1", "sir-2");
+
+        @SuppressWarnings("unchecked")
+        List<String> requestIds = (List<String>) collector.getVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS);
+        assertThat(requestIds).containsOnly("sir-1", "sir-2");
+    }
+
+    @Test
+    public void testMissingListIsLookedUpByLaunchGroup() throws Exception {
+        AmazonEC2 client = mock(AmazonEC2.class);
+        when(client.describeSpotInstanceRequests(Matchers.<DescribeSpotInstanceRequestsRequest>any()))
+            .thenReturn(new DescribeSpotInstanceRequestsResult());
+
+        DelegateExecution execution = mock(DelegateExecution.class);
+        when(execution.getProcessBusinessKey()).thenReturn("k1");
+
+        ProcessVariablesCollector collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        new CancelSpotRequests(mock(ProviderClientCache.class))
+            .execute(client, newPool(2), execution);
+
+        verify(client).describeSpotInstanceRequests(Matchers.<DescribeSpotInstanceRequestsRequest>any());
+        verify(client, never()).cancelSpotInstanceRequests(Matchers.<CancelSpotInstanceRequestsRequest>any());
+
+        @SuppressWarnings("unchecked")
+        List<String> requestIds = (List<String>) collector.getVariable(ProcessVariables.SPOT_INSTANCE_REQUEST_IDS);
+        assertThat(requestIds).isEmpty();
+    }
+
+    private List<String> captureCancelledIds(AmazonEC2 client) {
+        ArgumentCaptor<CancelSpotInstanceRequestsRequest> captor =
+            ArgumentCaptor.forClass(CancelSpotInstanceRequestsRequest.class);
+        verify(client).cancelSpotInstanceRequests(captor.capture());
+        return captor.getValue().getSpotInstanceRequestIds();
+    }
+
+    private Pool newPool(int expectedSize) {
+        Provider provider = mock(Provider.class);
+        when(provider.getOptionOr(ProviderOptions.HEDGE_PERCENTAGE, ProviderOptions.DEFAULT_HEDGE_PERCENTAGE))
+            .thenReturn("0");
+
+        Pool pool = mock(Pool.class);
+        when(pool.getProvider()).thenReturn(provider);
+        when(pool.getExpectedSize()).thenReturn(expectedSize);
+        return pool;
+    }
+}
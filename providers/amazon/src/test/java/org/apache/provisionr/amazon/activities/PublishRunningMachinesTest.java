@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.activities;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.InstanceStatePoller;
+import org.apache.provisionr.amazon.core.ProviderClientCache;
+import org.apache.provisionr.api.pool.Machine;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.api.provider.Provider;
+import org.apache.provisionr.core.CoreProcessVariables;
+import org.apache.provisionr.test.ProcessVariablesCollector;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PublishRunningMachinesTest {
+
+    private AmazonEC2 client;
+    private Pool pool;
+    private DelegateExecution execution;
+    private ProcessVariablesCollector collector;
+
+    @Before
+    public void setUp() {
+        client = mock(AmazonEC2.class);
+
+        pool = mock(Pool.class);
+        when(pool.getProvider()).thenReturn(Provider.builder().id("amazon")
+            .accessKey("access").secretKey("secret").createProvider());
+
+        execution = mock(DelegateExecution.class);
+        when(execution.getVariable(ProcessVariables.INSTANCE_IDS))
+            .thenReturn(Lists.newArrayList("i-1", "i-2", "i-3"));
+
+        collector = new ProcessVariablesCollector();
+        collector.install(execution);
+    }
+
+    @Test
+    public void testOnlyRunningInstancesWithAnAddressArePublished() throws Exception {
+        when(client.describeInstances(Matchers.<DescribeInstancesRequest>any()))
+            .thenReturn(new DescribeInstancesResult().withReservations(new Reservation().withInstances(
+                newInstance("i-1", "running", "i1.amazonaws.com"),
+                newInstance("i-2", "pending", ""),
+                newInstance("i-3", "running", "")
+            )));
+
+        execute();
+
+        assertThat(getPublishedInstanceIds()).containsExactly("i-1");
+        assertThat(collector.getVariable(ProcessVariables.ALL_INSTANCES_RUNNING)).isEqualTo(false);
+    }
+
+    @Test
+    public void testNewMachinesAreAppendedToThePreviousList() throws Exception {
+        when(execution.getVariable(CoreProcessVariables.MACHINES)).thenReturn(Lists.newArrayList(
+            Machine.builder().externalId("i-2").publicDnsName("i2.amazonaws.com").publicIp("1.2.3.4")
+                .privateDnsName("ip.internal").privateIp("10.1.2.3").createMachine()));
+
+        when(client.describeInstances(Matchers.<DescribeInstancesRequest>any()))
+            .thenReturn(new DescribeInstancesResult().withReservations(new Reservation().withInstances(
+                newInstance("i-1", "running", "i1.amazonaws.com"),
+                newInstance("i-2", "running", "i2.amazonaws.com"),
+                newInstance("i-3", "running", "i3.amazonaws.com")
+            )));
+
+        execute();
+
+        assertThat(getPublishedInstanceIds()).containsExactly("i-2", "i-1", "i-3");
+        assertThat(collector.getVariable(ProcessVariables.ALL_INSTANCES_RUNNING)).isEqualTo(true);
+    }
+
+    private void execute() throws Exception {
+        ProviderClientCache clientCache = mock(ProviderClientCache.class);
+        new PublishRunningMachines(clientCache, new InstanceStatePoller()).execute(client, pool, execution);
+    }
+
+    private List<String> getPublishedInstanceIds() {
+        @SuppressWarnings("unchecked")
+        List<Machine> machines = (List<Machine>) collector.getVariable(CoreProcessVariables.MACHINES);
+
+        List<String> instanceIds = Lists.newArrayList();
+        for (Machine machine : machines) {
+            instanceIds.add(machine.getExternalId());
+        }
+        return instanceIds;
+    }
+
+    private Instance newInstance(String instanceId, String state, String publicDnsName) {
+        return new Instance().withInstanceId(instanceId).withState(new InstanceState().withName(state))
+            .withPublicDnsName(publicDnsName).withPublicIpAddress("1.2.3.4")
+            .withPrivateDnsName("ip.internal").withPrivateIpAddress("10.1.2.3");
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.activities;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.RunInstancesRequest;
+import com.amazonaws.services.ec2.model.RunInstancesResult;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.ErrorCodes;
+import org.apache.provisionr.amazon.core.ProviderClientCache;
+import org.apache.provisionr.amazon.options.ProviderOptions;
+import org.apache.provisionr.api.hardware.Hardware;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.api.provider.Provider;
+import org.apache.provisionr.test.ProcessVariablesCollector;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RunOnDemandInstancesTest {
+
+    private AmazonEC2 client;
+    private Pool pool;
+    private DelegateExecution execution;
+    private ProcessVariablesCollector collector;
+
+    private RunOnDemandInstances activity;
+
+    @Before
+    public void setUp() {
+        client = mock(AmazonEC2.class);
+
+        pool = mock(Pool.class);
+        when(pool.getProvider()).thenReturn(Provider.builder().id("amazon")
+            .accessKey("access").secretKey("secret")
+            .option(ProviderOptions.FALLBACK_INSTANCE_TYPES, "m1.large").createProvider());
+        when(pool.getHardware()).thenReturn(Hardware.builder().type("m1.small").createHardware());
+        when(pool.getMinSize()).thenReturn(1);
+        when(pool.getExpectedSize()).thenReturn(2);
+
+        execution = mock(DelegateExecution.class);
+        when(execution.getProcessBusinessKey()).thenReturn("k1");
+
+        collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        activity = new RunOnDemandInstances(mock(ProviderClientCache.class)) {
+            @Override
+            protected RunInstancesRequest createOnDemandInstancesRequest(Pool pool, DelegateExecution execution,
+                                                                         String instanceType) {
+                return new RunInstancesRequest().withInstanceType(instanceType);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        activity.stop();
+    }
+
+    @Test
+    public void testReservationFromAPreviousAttemptIsReusedForAnyInstanceType() throws Exception {
+        when(client.describeInstances(Matchers.<DescribeInstancesRequest>any()))
+            .thenReturn(new DescribeInstancesResult().withReservations(
+                newReservation("r-1", "i-1", "i-2")));
+
+        activity.execute(client, pool, execution);
+
+        verify(client, never()).runInstances(Matchers.<RunInstancesRequest>any());
+        assertThat(collector.getVariable(ProcessVariables.RESERVATION_ID)).isEqualTo("r-1");
+        assertThat(getInstanceIds()).containsExactly("i-1", "i-2");
+
+        ArgumentCaptor<DescribeInstancesRequest> captor = ArgumentCaptor.forClass(DescribeInstancesRequest.class);
+        verify(client).describeInstances(captor.capture());
+        assertThat(captor.getValue().getFilters()).containsOnly(
+            new Filter().withName("client-token").withValues("k1-0-0", "k1-0-1"));
+    }
+
+    @Test
+    public void testTheNextInstanceTypeIsTriedWhenThereIsNoCapacity() throws Exception {
+        when(client.describeInstances(Matchers.<DescribeInstancesRequest>any()))
+            .thenReturn(new DescribeInstancesResult());
+
+        AmazonServiceException noCapacity = new AmazonServiceException("No capacity");
+        noCapacity.setErrorCode(ErrorCodes.INSUFFICIENT_INSTANCE_CAPACITY);
+        when(client.runInstances(Matchers.<RunInstancesRequest>any()))
+            .thenThrow(noCapacity)
+            .thenReturn(new RunInstancesResult().withReservation(newReservation("r-1", "i-1", "i-2")));
+
+        activity.execute(client, pool, execution);
+
+        ArgumentCaptor<RunInstancesRequest> captor = ArgumentCaptor.forClass(RunInstancesRequest.class);
+        verify(client, times(2)).runInstances(captor.capture());
+        assertThat(captor.getAllValues().get(1).getInstanceType()).isEqualTo("m1.large");
+        assertThat(captor.getAllValues().get(1).getClientToken()).isEqualTo("k1-0-1");
+
+        assertThat(getInstanceIds()).containsExactly("i-1", "i-2");
+    }
+
+    private List<String> getInstanceIds() {
+        @SuppressWarnings("unchecked")
+        List<String> instanceIds = (List<String>) collector.getVariable(ProcessVariables.INSTANCE_IDS);
+        return instanceIds;
+    }
+
+    private Reservation newReservation(String reservationId, String... instanceIds) {
+        List<Instance> instances = Lists.newArrayList();
+        for (String instanceId : instanceIds) {
+            instances.add(new Instance().withInstanceId(instanceId));
+        }
+        return new Reservation().withReservationId(reservationId).withInstances(instances);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.activities;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.amazon.ProcessVariables;
+import org.apache.provisionr.amazon.core.ProviderClientCache;
+import org.apache.provisionr.amazon.options.ProviderOptions;
+import org.apache.provisionr.api.hardware.Hardware;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.api.provider.Provider;
+import org.apache.provisionr.test.ProcessVariablesCollector;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TerminateInstancesTest {
+
+    private AmazonEC2 client;
+    private Pool pool;
+    private DelegateExecution execution;
+    private ProcessVariablesCollector collector;
+
+    @Before
+    public void setUp() {
+        client = mock(AmazonEC2.class);
+
+        pool = mock(Pool.class);
+        when(pool.getProvider()).thenReturn(Provider.builder().id("amazon")
+            .accessKey("access").secretKey("secret")
+            .option(ProviderOptions.FALLBACK_INSTANCE_TYPES, "m1.large").createProvider());
+        when(pool.getHardware()).thenReturn(Hardware.builder().type("m1.small").createHardware());
+        when(pool.getMinSize()).thenReturn(1);
+        when(pool.getExpectedSize()).thenReturn(2);
+
+        execution = mock(DelegateExecution.class);
+        when(execution.getProcessBusinessKey()).thenReturn("k1");
+
+        collector = new ProcessVariablesCollector();
+        collector.install(execution);
+    }
+
+    /**
+     * The launch gave up after some chunks succeeded so the instance IDs were never stored
+     */
+    @Test
+    public void testInstancesAreFoundByClientTokenWhenTheLaunchFailed() throws Exception {
+        when(client.describeInstances(Matchers.<DescribeInstancesRequest>any()))
+            .thenReturn(new DescribeInstancesResult().withReservations(new Reservation()
+                .withInstances(new Instance().withInstanceId("i-1"), new Instance().withInstanceId("i-2"))));
+
+        new TerminateInstances(mock(ProviderClientCache.class)).execute(client, pool, execution);
+
+        ArgumentCaptor<DescribeInstancesRequest> describe = ArgumentCaptor.forClass(DescribeInstancesRequest.class);
+        verify(client).describeInstances(describe.capture());
+        assertThat(describe.getValue().getFilters()).contains(
+            new Filter().withName("client-token").withValues("k1-0-0", "k1-0-1"));
+
+        ArgumentCaptor<TerminateInstancesRequest> terminate = ArgumentCaptor.forClass(TerminateInstancesRequest.class);
+        verify(client).terminateInstances(terminate.capture());
+        assertThat(terminate.getValue().getInstanceIds()).containsOnly("i-1", "i-2");
+
+        assertThat(getInstanceIds()).containsOnly("i-1", "i-2");
+    }
+
+    @Test
+    public void testKnownInstancesAreMergedWithTheOnesFoundByClientToken() throws Exception {
+        when(execution.getVariable(ProcessVariables.INSTANCE_IDS)).thenReturn(Lists.newArrayList("i-1"));
+        when(client.describeInstances(Matchers.<DescribeInstancesRequest>any()))
+            .thenReturn(new DescribeInstancesResult().withReservations(new Reservation()
+                .withInstances(new Instance().withInstanceId("i-1"), new Instance().withInstanceId("i-3"))));
+
+        new TerminateInstances(mock(ProviderClientCache.class)).execute(client, pool, execution);
+
+        ArgumentCaptor<TerminateInstancesRequest> terminate = ArgumentCaptor.forClass(TerminateInstancesRequest.class);
+        verify(client).terminateInstances(terminate.capture());
+        assertThat(terminate.getValue().getInstanceIds()).containsExactly("i-1", "i-3");
+    }
+
+    @Test
+    public void testNothingToTerminate() throws Exception {
+        when(client.describeInstances(Matchers.<DescribeInstancesRequest>any()))
+            .thenReturn(new DescribeInstancesResult());
+
+        new TerminateInstances(mock(ProviderClientCache.class)).execute(client, pool, execution);
+
+        verify(client, never()).terminateInstances(Matchers.<TerminateInstancesRequest>any());
+        assertThat(getInstanceIds()).isEmpty();
+    }
+
+    private List<String> getInstanceIds() {
+        @SuppressWarnings("unchecked")
+        List<String> instanceIds = (List<String>) collector.getVariable(ProcessVariables.INSTANCE_IDS);
+        return instanceIds;
+    }
+}
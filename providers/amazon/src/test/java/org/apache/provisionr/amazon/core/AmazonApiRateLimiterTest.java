@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
+import com.google.common.base.Stopwatch;
+import java.util.concurrent.TimeUnit;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AmazonApiRateLimiterTest {
+
+    @Test
+    public void testDescribeAndMutateCallsUseSeparateBuckets() {
+        AmazonApiRateLimiter limiter = new AmazonApiRateLimiter("access@us-east-1", 1000, 2);
+
+        AmazonEC2 client = mock(AmazonEC2.class);
+        AmazonEC2 limited = limiter.wrap(client);
+
+        Stopwatch stopwatch = new Stopwatch().start();
+        for (int i = 0; i < 3; i++) {
+            limited.terminateInstances(new TerminateInstancesRequest());
+        }
+        stopwatch.stop();
+
+        /* 2 requests per second - the first permit is available immediately */
+        assertThat(stopwatch.elapsedTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(900);
+
+        for (int i = 0; i < 5; i++) {
+            limited.describeInstances(new DescribeInstancesRequest());
+        }
+        limited.setEndpoint("ec2.us-east-1.amazonaws.com");
+
+        verify(client, times(3)).terminateInstances(any(TerminateInstancesRequest.class));
+        verify(client, times(5)).describeInstances(any(DescribeInstancesRequest.class));
+
+        assertThat(limiter.getMutateBucket().getRequestsCount()).isEqualTo(3);
+        assertThat(limiter.getMutateBucket().getTotalWaitInMicros()).isGreaterThan(0);
+        assertThat(limiter.getDescribeBucket().getRequestsCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void testExceptionsAreNotWrapped() {
+        AmazonEC2 client = mock(AmazonEC2.class);
+        when(client.describeInstances(any(DescribeInstancesRequest.class)))
+            .thenThrow(new AmazonServiceException("RequestLimitExceeded"));
+
+        try {
+            new AmazonApiRateLimiter("access@us-east-1", 10, 10).wrap(client)
+                .describeInstances(new DescribeInstancesRequest());
+            fail("expected AmazonServiceException");
+
+        } catch (AmazonServiceException e) {
+            assertThat(e.getMessage()).contains("RequestLimitExceeded");
+        }
+    }
+}
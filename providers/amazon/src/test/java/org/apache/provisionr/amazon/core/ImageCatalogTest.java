@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImageCatalogTest {
+
+    private static final String HEADER = "region, version, arch, type, ami-id";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLookupMatchesTableQueryForEveryRow() throws IOException {
+        ImageTable table = ImageTable.fromCsvResource(ImageCatalog.DEFAULT_RESOURCE);
+        ImageCatalog catalog = ImageCatalog.getDefault();
+
+        for (Map<String, String> row : table.getTable().rowMap().values()) {
+            String expected = table.query().filterBy("region", row.get("region"))
+                .filterBy("version", row.get("version")).filterBy("arch", row.get("arch"))
+                .filterBy("type", row.get("type")).singleResult();
+
+            assertThat(catalog.lookup(row.get("region"), row.get("version"), row.get("arch"), row.get("type")))
+                .isEqualTo(expected);
+        }
+        assertThat(catalog.size()).isEqualTo(table.getTable().rowKeySet().size());
+    }
+
+    @Test
+    public void testDefaultCatalogIsBuiltOnce() {
+        assertThat(ImageCatalog.getDefault()).isSameAs(ImageCatalog.getDefault());
+        assertThat(ImageCatalog.getDefault().lookup("us-east-1", "12.04 LTS", "amd64", "instance-store"))
+            .isEqualTo("ami-9a873ff3");
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testLookupFailsWithNoResults() {
+        ImageCatalog.getDefault().lookup("us-east-1", "12.04 LTS", "sparc", "ebs");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLookupFailsWithMultipleResults() {
+        ImageCatalog.fromImageTable(ImageTable.fromCsvLines(ImmutableList.of(HEADER,
+            "us-east-1, 12.04 LTS, amd64, ebs, ami-1",
+            "us-east-1, 12.04 LTS, amd64, ebs, ami-2"
+        ))).lookup("us-east-1", "12.04 LTS", "amd64", "ebs");
+    }
+
+    @Test
+    public void testExternalFileIsReloadedWhenChanged() throws IOException {
+        File file = folder.newFile("images.csv");
+        Files.write(HEADER + "\nus-east-1, 12.04 LTS, amd64, ebs, ami-1\n", file, Charsets.UTF_8);
+
+        ImageCatalogSupplier supplier = new ImageCatalogSupplier(file.getAbsolutePath(), 0);
+        assertThat(supplier.get().lookup("us-east-1", "12.04 LTS", "amd64", "ebs")).isEqualTo("ami-1");
+
+        ImageCatalog loaded = supplier.get();
+        assertThat(supplier.get()).isSameAs(loaded);
+
+        Files.write(HEADER + "\nus-east-1, 12.04 LTS, amd64, ebs, ami-2\n", file, Charsets.UTF_8);
+        assertThat(file.setLastModified(file.lastModified() + 2000)).isTrue();
+
+        assertThat(supplier.get().lookup("us-east-1", "12.04 LTS", "amd64", "ebs")).isEqualTo("ami-2");
+    }
+
+    @Test
+    public void testBrokenExternalFileFallsBackToPreviousCatalog() throws IOException {
+        File file = new File(folder.getRoot(), "missing.csv");
+
+        ImageCatalogSupplier supplier = new ImageCatalogSupplier(file.getAbsolutePath(), 0);
+        assertThat(supplier.get()).isSameAs(ImageCatalog.getDefault());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.Map;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstanceStatePollerTest {
+
+    private static final String REGION_KEY = "access@us-east-1";
+
+    @Test
+    public void testRequestsFromDifferentPoolsAreCoalesced() {
+        AmazonEC2 client = mock(AmazonEC2.class);
+        when(client.describeInstances(any(DescribeInstancesRequest.class))).thenReturn(
+            new DescribeInstancesResult().withReservations(new Reservation().withInstances(
+                new Instance().withInstanceId("i-1"), new Instance().withInstanceId("i-2"))));
+
+        InstanceStatePoller poller = new InstanceStatePoller(60000, 120000);
+
+        /* first pool */
+        assertThat(poller.describe(REGION_KEY, client, ImmutableList.of("i-1")).keySet()).containsOnly("i-1");
+
+        /* second pool - not yet covered by the snapshot so all watched instances are refreshed */
+        assertThat(poller.describe(REGION_KEY, client, ImmutableList.of("i-2")).keySet()).containsOnly("i-2");
+
+        /* both answered from memory */
+        poller.describe(REGION_KEY, client, ImmutableList.of("i-1"));
+        poller.describe(REGION_KEY, client, ImmutableList.of("i-2"));
+
+        ArgumentCaptor<DescribeInstancesRequest> requests = ArgumentCaptor.forClass(DescribeInstancesRequest.class);
+        verify(client, times(2)).describeInstances(requests.capture());
+
+        List<String> lastRequestIds = requests.getValue().getFilters().get(0).getValues();
+        assertThat(lastRequestIds).containsOnly("i-1", "i-2");
+        assertThat(poller.getWatchedInstancesCount(REGION_KEY)).isEqualTo(2);
+    }
+
+    @Test
+    public void testMissingInstancesAreNotReturned() {
+        AmazonEC2 client = mock(AmazonEC2.class);
+        when(client.describeInstances(any(DescribeInstancesRequest.class))).thenReturn(
+            new DescribeInstancesResult().withReservations(new Reservation().withInstances(
+                new Instance().withInstanceId("i-1"))));
+
+        Map<String, Instance> instances = new InstanceStatePoller(0, 1000)
+            .describe(REGION_KEY, client, ImmutableList.of("i-1", "i-unknown"));
+
+        assertThat(instances.keySet()).containsOnly("i-1");
+    }
+}
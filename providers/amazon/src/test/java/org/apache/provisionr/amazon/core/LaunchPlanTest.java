@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.provisionr.amazon.options.ProviderOptions;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.api.provider.Provider;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LaunchPlanTest {
+
+    private static final List<String> NO_ZONES = Collections.emptyList();
+    private static final List<String> TYPES = ImmutableList.of("m1.small", "m1.medium");
+
+    @Test
+    public void testSmallPoolIsLaunchedWithASingleRequest() {
+        LaunchPlan plan = LaunchPlan.create(2, 3, NO_ZONES, TYPES, 20);
+
+        assertThat(plan.getChunks()).containsExactly(
+            new LaunchPlan.Chunk(0, Optional.<String>absent(), 2, 3));
+        assertThat(plan.getInstanceTypes()).isEqualTo(TYPES);
+    }
+
+    @Test
+    public void testLargePoolIsSplitInEvenChunks() {
+        LaunchPlan plan = LaunchPlan.create(30, 50, NO_ZONES, TYPES, 20);
+
+        assertThat(plan.getChunks()).containsExactly(
+            new LaunchPlan.Chunk(0, Optional.<String>absent(), 1, 17),
+            new LaunchPlan.Chunk(1, Optional.<String>absent(), 1, 17),
+            new LaunchPlan.Chunk(2, Optional.<String>absent(), 1, 16));
+        assertThat(plan.getMinSize()).isEqualTo(30);
+    }
+
+    @Test
+    public void testClientTokensCoverAllChunksAndInstanceTypes() {
+        LaunchPlan plan = LaunchPlan.create(30, 50, NO_ZONES, TYPES, 20);
+
+        assertThat(plan.formatAllClientTokens("k1")).containsExactly(
+            "k1-0-0", "k1-0-1", "k1-1-0", "k1-1-1", "k1-2-0", "k1-2-1");
+    }
+
+    @Test
+    public void testInstancesAreSpreadBetweenAvailabilityZones() {
+        LaunchPlan plan = LaunchPlan.create(1, 5, ImmutableList.of("us-east-1a", "us-east-1b"), TYPES, 20);
+
+        assertThat(plan.getChunks()).containsExactly(
+            new LaunchPlan.Chunk(0, Optional.of("us-east-1a"), 1, 3),
+            new LaunchPlan.Chunk(1, Optional.of("us-east-1b"), 1, 2));
+    }
+
+    @Test
+    public void testNoEmptyChunksWhenThereAreMoreZonesThanInstances() {
+        LaunchPlan plan = LaunchPlan.create(1, 1, ImmutableList.of("us-east-1a", "us-east-1b"), TYPES, 20);
+
+        assertThat(plan.getChunks()).containsExactly(
+            new LaunchPlan.Chunk(0, Optional.of("us-east-1a"), 1, 1));
+    }
+
+    @Test
+    public void testClientTokensAreUniquePerChunkAndInstanceType() {
+        LaunchPlan plan = LaunchPlan.create(2, 2, ImmutableList.of("us-east-1a", "us-east-1b"), TYPES, 20);
+
+        LaunchPlan.Chunk first = plan.getChunks().get(0);
+        LaunchPlan.Chunk second = plan.getChunks().get(1);
+
+        assertThat(first.formatClientToken("k1", 0)).isEqualTo("k1-0-0");
+        assertThat(first.formatClientToken("k1", 1)).isEqualTo("k1-0-1");
+        assertThat(second.formatClientToken("k1", 0)).isEqualTo("k1-1-0");
+    }
+
+    @Test
+    public void testHedgePercentageIsRoundedUp() {
+        assertThat(LaunchPlan.countInstancesToLaunch(mockPool(10, "0"))).isEqualTo(10);
+        assertThat(LaunchPlan.countInstancesToLaunch(mockPool(10, "20"))).isEqualTo(12);
+        assertThat(LaunchPlan.countInstancesToLaunch(mockPool(3, "10"))).isEqualTo(4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMinSizeLargerThanExpectedSizeIsRejected() {
+        LaunchPlan.create(3, 2, NO_ZONES, TYPES, 20);
+    }
+
+    private Pool mockPool(int expectedSize, String hedgePercentage) {
+        Provider provider = mock(Provider.class);
+        when(provider.getOptionOr(ProviderOptions.HEDGE_PERCENTAGE, ProviderOptions.DEFAULT_HEDGE_PERCENTAGE))
+            .thenReturn(hedgePercentage);
+
+        Pool pool = mock(Pool.class);
+        when(pool.getProvider()).thenReturn(provider);
+        when(pool.getExpectedSize()).thenReturn(expectedSize);
+        return pool;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.amazon.core;
+
+import com.amazonaws.ClientConfiguration;
+import java.io.File;
+import org.apache.provisionr.amazon.options.ProviderOptions;
+import org.apache.provisionr.api.provider.Provider;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RegionEndpointsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEndpointsAreKeptBetweenRestarts() {
+        String fileName = new File(folder.getRoot(), "endpoints/amazon.properties").getAbsolutePath();
+
+        RegionEndpoints endpoints = new RegionEndpoints(fileName);
+        assertThat(endpoints.get("us-east-1").isPresent()).isFalse();
+
+        endpoints.put("us-east-1", "ec2.us-east-1.amazonaws.com");
+        endpoints.put("eu-west-1", "ec2.eu-west-1.amazonaws.com");
+
+        RegionEndpoints reloaded = new RegionEndpoints(fileName);
+        assertThat(reloaded.asMap()).isEqualTo(endpoints.asMap());
+        assertThat(reloaded.get("eu-west-1").get()).isEqualTo("ec2.eu-west-1.amazonaws.com");
+    }
+
+    @Test
+    public void testInMemoryOnly() {
+        RegionEndpoints endpoints = new RegionEndpoints();
+        endpoints.put("us-east-1", "ec2.us-east-1.amazonaws.com");
+
+        assertThat(endpoints.get("us-east-1").get()).isEqualTo("ec2.us-east-1.amazonaws.com");
+        assertThat(folder.getRoot().list()).isEmpty();
+    }
+
+    @Test
+    public void testClientConfigurationFromProviderOptions() {
+        Provider provider = Provider.builder().id("amazon").accessKey("access").secretKey("secret")
+            .option(ProviderOptions.MAX_CONNECTIONS, "100")
+            .option(ProviderOptions.SOCKET_TIMEOUT, "30000")
+            .createProvider();
+
+        ClientConfiguration configuration = ProviderClientCacheSupplier.createClientConfiguration(provider);
+
+        assertThat(configuration.getMaxConnections()).isEqualTo(100);
+        assertThat(configuration.getSocketTimeout()).isEqualTo(30000);
+        assertThat(configuration.getConnectionTimeout())
+            .isEqualTo(new ClientConfiguration().getConnectionTimeout());
+        assertThat(configuration.getUserAgent()).isEqualTo(ProviderClientCacheSupplier.PROVISIONR_USER_AGENT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidClientOptionIsRejected() {
+        ProviderClientCacheSupplier.createClientConfiguration(Provider.builder().id("amazon")
+            .accessKey("access").secretKey("secret").option(ProviderOptions.MAX_CONNECTIONS, "many")
+            .createProvider());
+    }
+}
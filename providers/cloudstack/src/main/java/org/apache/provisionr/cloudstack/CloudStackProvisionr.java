@@ -29,6 +29,7 @@ import org.apache.provisionr.api.pool.Pool;
 import org.apache.provisionr.api.provider.Provider;
 import org.apache.provisionr.core.CoreConstants;
 import org.apache.provisionr.core.CoreProcessVariables;
+import org.apache.provisionr.core.CoreSignals;
 import org.apache.provisionr.core.ProvisionrSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -88,7 +89,6 @@ public class CloudStackProvisionr extends ProvisionrSupport {
 
     @Override
     public void destroyPool(String businessKey) {
-        LOG.info("**** CloudStack (destroyPool) id: " + businessKey);
-        // TODO use triggerSignalEvent as needed
+        triggerSignalEvent(processEngine, businessKey, CoreSignals.TERMINATE_POOL);
     }
 }
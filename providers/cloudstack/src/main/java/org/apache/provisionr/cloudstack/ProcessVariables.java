@@ -25,4 +25,64 @@ public final class ProcessVariables {
     }
 
     public static final String NETWORK_ID = "networkId";
+
+    /**
+     * IDs of the virtual machines deployed for the pool
+     *
+     * @see org.apache.provisionr.cloudstack.activities.RunInstances
+     */
+    public static final String VIRTUAL_MACHINE_IDS = "virtualMachineIds";
+
+    /**
+     * IDs of the async jobs deploying the virtual machines, indexed by virtual machine ID.
+     * Used to find out why a deployment failed.
+     */
+    public static final String DEPLOY_JOB_IDS = "deployJobIds";
+
+    /**
+     * Flag set by {@link org.apache.provisionr.cloudstack.activities.CheckAllVirtualMachinesAreRunning}
+     */
+    public static final String ALL_VIRTUAL_MACHINES_RUNNING = "allVirtualMachinesRunning";
+
+    /**
+     * IDs of the async jobs started while synchronizing the security group rules that
+     * did not complete yet
+     *
+     * @see org.apache.provisionr.cloudstack.activities.EnsureSecurityGroupExists
+     */
+    public static final String PENDING_SECURITY_GROUP_JOB_IDS = "pendingSecurityGroupJobIds";
+
+    /**
+     * Time (in milliseconds) after which the security group jobs are considered stuck
+     */
+    public static final String SECURITY_GROUP_JOBS_DEADLINE = "securityGroupJobsDeadline";
+
+    /**
+     * Flag set by {@link org.apache.provisionr.cloudstack.activities.CheckSecurityGroupJobsCompleted}
+     */
+    public static final String SECURITY_GROUP_JOBS_COMPLETED = "securityGroupJobsCompleted";
+
+    /**
+     * Flag set when the security group jobs did not complete before the deadline
+     *
+     * @see org.apache.provisionr.cloudstack.activities.CheckSecurityGroupJobsCompleted
+     */
+    public static final String SECURITY_GROUP_JOBS_TIMED_OUT = "securityGroupJobsTimedOut";
+
+    /**
+     * IDs of the async jobs destroying the virtual machines that did not complete yet
+     *
+     * @see org.apache.provisionr.cloudstack.activities.DestroyInstances
+     */
+    public static final String PENDING_DESTROY_JOB_IDS = "pendingDestroyJobIds";
+
+    /**
+     * Time (in milliseconds) after which the teardown stops waiting for the destroy jobs
+     */
+    public static final String DESTROY_JOBS_DEADLINE = "destroyJobsDeadline";
+
+    /**
+     * Flag set by {@link org.apache.provisionr.cloudstack.activities.CheckDestroyJobsCompleted}
+     */
+    public static final String DESTROY_JOBS_COMPLETED = "destroyJobsCompleted";
 }
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.activities;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.Map;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.ProcessVariables;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
+import org.apache.provisionr.cloudstack.core.VirtualMachines;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.jclouds.cloudstack.domain.AsyncJob;
+import org.jclouds.cloudstack.domain.VirtualMachine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the state of all the virtual machines in the pool with a single list request
+ * <p/>
+ * The result is stored in {@link ProcessVariables#ALL_VIRTUAL_MACHINES_RUNNING}. The
+ * async job results are only queried for the machines that failed to get the reason.
+ */
+public class CheckAllVirtualMachinesAreRunning extends CloudStackActivity {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckAllVirtualMachinesAreRunning.class);
+
+    public CheckAllVirtualMachinesAreRunning() {
+    }
+
+    public CheckAllVirtualMachinesAreRunning(CloudStackContextCache contextCache) {
+        super(contextCache);
+    }
+
+    @Override
+    public void execute(CloudStackClient cloudStackClient, Pool pool, DelegateExecution execution) {
+        @SuppressWarnings("unchecked")
+        List<String> virtualMachineIds = (List<String>) checkNotNull(
+            execution.getVariable(ProcessVariables.VIRTUAL_MACHINE_IDS), "no virtual machines deployed");
+
+        Map<String, VirtualMachine> machines = VirtualMachines.mapByIdForDisplayName(cloudStackClient,
+            execution.getProcessBusinessKey());
+
+        int running = 0;
+        List<String> failures = Lists.newArrayList();
+        for (String id : virtualMachineIds) {
+            VirtualMachine machine = machines.get(id);
+            if (machine == null) {
+                continue;   /* not visible yet */
+            }
+            switch (machine.getState()) {
+                case RUNNING:
+                    running++;
+                    break;
+
+                case ERROR:
+                case DESTROYED:
+                case EXPUNGING:
+                    failures.add(String.format("%s is %s: %s", machine.getName(), machine.getState(),
+                        getDeployJobError(cloudStackClient, execution, id)));
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Unable to deploy virtual machines. " + failures);
+        }
+
+        LOG.info("{} of {} virtual machines are running", running, virtualMachineIds.size());
+        execution.setVariable(ProcessVariables.ALL_VIRTUAL_MACHINES_RUNNING, running == virtualMachineIds.size());
+    }
+
+    private String getDeployJobError(CloudStackClient cloudStackClient, DelegateExecution execution, String id) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> deployJobIds = (Map<String, String>) execution.getVariable(ProcessVariables.DEPLOY_JOB_IDS);
+
+        String jobId = (deployJobIds == null ? ImmutableMap.<String, String>of() : deployJobIds).get(id);
+        if (jobId == null) {
+            return "unknown deploy job";
+        }
+
+        AsyncJob<?> job = cloudStackClient.getAsyncJobClient().getAsyncJob(jobId);
+        if (job == null || job.getError() == null) {
+            return "no error reported by job " + jobId;
+        }
+        return job.getError().getErrorText();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.activities;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.ProcessVariables;
+import org.apache.provisionr.cloudstack.core.AsyncJobs;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the async jobs started by {@link DestroyInstances} with a single list request
+ * <p/>
+ * The result is stored in {@link ProcessVariables#DESTROY_JOBS_COMPLETED}. This is part of
+ * the teardown so failed jobs and the deadline only stop the wait - the security group
+ * is deleted anyway.
+ */
+public class CheckDestroyJobsCompleted extends CloudStackActivity {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckDestroyJobsCompleted.class);
+
+    public CheckDestroyJobsCompleted() {
+    }
+
+    public CheckDestroyJobsCompleted(CloudStackContextCache contextCache) {
+        super(contextCache);
+    }
+
+    @Override
+    public void execute(CloudStackClient cloudStackClient, Pool pool, DelegateExecution execution) {
+        @SuppressWarnings("unchecked")
+        List<String> jobIds = (List<String>) checkNotNull(
+            execution.getVariable(ProcessVariables.PENDING_DESTROY_JOB_IDS), "no destroy jobs");
+
+        List<String> pending;
+        try {
+            pending = AsyncJobs.checkAll(cloudStackClient, jobIds);
+
+        } catch (IllegalStateException e) {
+            LOG.warn("Unable to destroy all the virtual machines for " + execution.getProcessBusinessKey(), e);
+            pending = Lists.newArrayList();
+        }
+
+        if (!pending.isEmpty()) {
+            Long deadline = (Long) execution.getVariable(ProcessVariables.DESTROY_JOBS_DEADLINE);
+            if (deadline != null && System.currentTimeMillis() >= deadline) {
+                LOG.warn("Timeout while waiting for destroy jobs {}. Continuing with the teardown.", pending);
+                pending = Lists.newArrayList();
+            } else {
+                LOG.info("Waiting for {} destroy jobs to complete", pending.size());
+            }
+        }
+
+        execution.setVariable(ProcessVariables.PENDING_DESTROY_JOB_IDS, pending);
+        execution.setVariable(ProcessVariables.DESTROY_JOBS_COMPLETED, pending.isEmpty());
+    }
+}
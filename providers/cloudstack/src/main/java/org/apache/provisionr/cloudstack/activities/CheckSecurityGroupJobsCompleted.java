@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.activities;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.List;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.ProcessVariables;
+import org.apache.provisionr.cloudstack.core.AsyncJobs;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the async jobs started by {@link EnsureSecurityGroupExists} with a single list request
+ * <p/>
+ * The result is stored in {@link ProcessVariables#SECURITY_GROUP_JOBS_COMPLETED}. The wait
+ * between checks is a process timer so no job executor thread is blocked. Once the deadline
+ * passes {@link ProcessVariables#SECURITY_GROUP_JOBS_TIMED_OUT} is set and the process
+ * goes straight to the teardown path.
+ */
+public class CheckSecurityGroupJobsCompleted extends CloudStackActivity {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckSecurityGroupJobsCompleted.class);
+
+    public CheckSecurityGroupJobsCompleted() {
+    }
+
+    public CheckSecurityGroupJobsCompleted(CloudStackContextCache contextCache) {
+        super(contextCache);
+    }
+
+    @Override
+    public void execute(CloudStackClient cloudStackClient, Pool pool, DelegateExecution execution) {
+        @SuppressWarnings("unchecked")
+        List<String> jobIds = (List<String>) checkNotNull(
+            execution.getVariable(ProcessVariables.PENDING_SECURITY_GROUP_JOB_IDS), "no security group jobs");
+
+        List<String> pending = AsyncJobs.checkAll(cloudStackClient, jobIds);
+        boolean timedOut = false;
+        if (!pending.isEmpty()) {
+            Long deadline = (Long) execution.getVariable(ProcessVariables.SECURITY_GROUP_JOBS_DEADLINE);
+            if (deadline != null && System.currentTimeMillis() >= deadline) {
+                LOG.error("Timeout while waiting for security group async jobs {} for pool {}. " +
+                    "Tearing down.", pending, execution.getProcessBusinessKey());
+                timedOut = true;
+            } else {
+                LOG.info("Waiting for {} security group async jobs to complete", pending.size());
+            }
+        }
+
+        execution.setVariable(ProcessVariables.PENDING_SECURITY_GROUP_JOB_IDS, pending);
+        execution.setVariable(ProcessVariables.SECURITY_GROUP_JOBS_COMPLETED, pending.isEmpty());
+        execution.setVariable(ProcessVariables.SECURITY_GROUP_JOBS_TIMED_OUT, timedOut);
+    }
+}
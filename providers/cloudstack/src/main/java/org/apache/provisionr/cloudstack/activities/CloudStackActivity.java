@@ -18,30 +18,38 @@
 
 package org.apache.provisionr.cloudstack.activities;
 
-import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.base.Optional;
 import static com.google.common.base.Preconditions.checkNotNull;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Closeables;
-import com.google.inject.Module;
-import java.util.Properties;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.activiti.engine.delegate.JavaDelegate;
 import org.apache.provisionr.api.pool.Pool;
 import org.apache.provisionr.api.provider.Provider;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCacheSupplier;
 import org.apache.provisionr.core.CoreProcessVariables;
-import org.jclouds.Constants;
-import org.jclouds.ContextBuilder;
-import org.jclouds.cloudstack.CloudStackApiMetadata;
 import org.jclouds.cloudstack.CloudStackAsyncClient;
 import org.jclouds.cloudstack.CloudStackClient;
-import org.jclouds.logging.slf4j.config.SLF4JLoggingModule;
 import org.jclouds.rest.RestContext;
 
 /**
  * Base class for all activities that require access to a CloudStack based cloud.
+ * <p/>
+ * When a {@link CloudStackContextCache} is available the jclouds context is shared
+ * with other activities. Otherwise a new context is created for every call.
  */
 public abstract class CloudStackActivity implements JavaDelegate {
 
+    private final Optional<CloudStackContextCache> contextCache;
+
+    protected CloudStackActivity() {
+        this.contextCache = Optional.absent();
+    }
+
+    protected CloudStackActivity(CloudStackContextCache contextCache) {
+        this.contextCache = Optional.of(checkNotNull(contextCache, "contextCache is null"));
+    }
+
     /**
      * Implement activity logic in this method. It will be called with a reference to the {@link CloudStackClient}
      */
@@ -49,11 +57,16 @@ public abstract class CloudStackActivity implements JavaDelegate {
 
     @Override
     public void execute(DelegateExecution execution) throws Exception {
+        Pool pool = Pool.class.cast(checkNotNull(execution.getVariable(CoreProcessVariables.POOL),
+            "Please add 'pool' variable to the process"));
+
+        if (contextCache.isPresent()) {
+            execute(contextCache.get().getUnchecked(pool.getProvider()).getApi(), pool, execution);
+            return;
+        }
 
         RestContext<CloudStackClient, CloudStackAsyncClient> restContext = null;
         try {
-            Pool pool = Pool.class.cast(checkNotNull(execution.getVariable(CoreProcessVariables.POOL),
-                "Please add 'pool' variable to the process"));
             // delegate
             restContext = newCloudStackClient(pool.getProvider());
             execute(restContext.getApi(), pool, execution);
@@ -67,16 +80,6 @@ public abstract class CloudStackActivity implements JavaDelegate {
      * Creates a new {@link CloudStackClient} with {@link Provider} supplied credentials.
      */
     RestContext<CloudStackClient, CloudStackAsyncClient> newCloudStackClient(Provider provider) {
-        checkArgument(provider.getEndpoint().isPresent(), "please specify an endpoint for this provider");
-
-        Properties overrides = new Properties();
-        overrides.setProperty(Constants.PROPERTY_TRUST_ALL_CERTS, "true");
-
-        return ContextBuilder.newBuilder(new CloudStackApiMetadata())
-            .endpoint(provider.getEndpoint().get())
-            .modules(ImmutableSet.<Module>of(new SLF4JLoggingModule()))
-            .credentials(provider.getAccessKey(), provider.getSecretKey())
-            .overrides(overrides)
-            .build(CloudStackApiMetadata.CONTEXT_TOKEN);
+        return CloudStackContextCacheSupplier.newCloudStackContext(provider);
     }
 }
@@ -19,6 +19,7 @@
 package org.apache.provisionr.cloudstack.activities;
 
 import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
 import org.apache.provisionr.cloudstack.core.KeyPairs;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.jclouds.cloudstack.CloudStackClient;
@@ -29,6 +30,13 @@ public class DeleteKeyPair extends CloudStackActivity {
 
     private static final Logger LOG = LoggerFactory.getLogger(DeleteKeyPair.class);
 
+    public DeleteKeyPair() {
+    }
+
+    public DeleteKeyPair(CloudStackContextCache contextCache) {
+        super(contextCache);
+    }
+
     @Override
     public void execute(CloudStackClient cloudStackClient, Pool pool, DelegateExecution execution) {
         String keyName = KeyPairs.formatNameFromBusinessKey(execution.getProcessBusinessKey());
@@ -20,11 +20,19 @@ package org.apache.provisionr.cloudstack.activities;
 
 import org.activiti.engine.delegate.DelegateExecution;
 import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
 import org.apache.provisionr.cloudstack.core.SecurityGroups;
 import org.jclouds.cloudstack.CloudStackClient;
 
 public class DeleteSecurityGroup extends CloudStackActivity {
 
+    public DeleteSecurityGroup() {
+    }
+
+    public DeleteSecurityGroup(CloudStackContextCache contextCache) {
+        super(contextCache);
+    }
+
     @Override
     public void execute(CloudStackClient cloudStackClient, Pool pool, DelegateExecution execution) {
         String securityGroupName = SecurityGroups.formatNameFromBusinessKey(execution.getProcessBusinessKey());
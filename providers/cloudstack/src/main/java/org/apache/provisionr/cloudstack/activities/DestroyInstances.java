@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.activities;
+
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.ProcessVariables;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
+import org.apache.provisionr.cloudstack.core.VirtualMachines;
+import org.jclouds.cloudstack.CloudStackClient;
+
+/**
+ * Starts the async jobs destroying all the virtual machines of the pool
+ * <p/>
+ * The job IDs are stored in {@link ProcessVariables#PENDING_DESTROY_JOB_IDS} and checked
+ * by {@link CheckDestroyJobsCompleted} before the security group is deleted.
+ */
+public class DestroyInstances extends CloudStackActivity {
+
+    public static final long DEFAULT_JOBS_TIMEOUT_IN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    public DestroyInstances() {
+    }
+
+    public DestroyInstances(CloudStackContextCache contextCache) {
+        super(contextCache);
+    }
+
+    @Override
+    public void execute(CloudStackClient cloudStackClient, Pool pool, DelegateExecution execution) {
+        List<String> jobIds = VirtualMachines.destroyAllVirtualMachineByName(cloudStackClient,
+            execution.getProcessBusinessKey());
+
+        execution.setVariable(ProcessVariables.PENDING_DESTROY_JOB_IDS, Lists.newArrayList(jobIds));
+        execution.setVariable(ProcessVariables.DESTROY_JOBS_DEADLINE,
+            System.currentTimeMillis() + DEFAULT_JOBS_TIMEOUT_IN_MILLIS);
+        execution.setVariable(ProcessVariables.DESTROY_JOBS_COMPLETED, jobIds.isEmpty());
+    }
+}
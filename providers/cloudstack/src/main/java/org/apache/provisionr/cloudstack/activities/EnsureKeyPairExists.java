@@ -19,6 +19,7 @@
 package org.apache.provisionr.cloudstack.activities;
 
 import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
 import org.apache.provisionr.cloudstack.core.KeyPairs;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.jclouds.cloudstack.CloudStackClient;
@@ -32,6 +33,13 @@ public class EnsureKeyPairExists extends CloudStackActivity {
 
     private static final Logger LOG = LoggerFactory.getLogger(EnsureKeyPairExists.class);
 
+    public EnsureKeyPairExists() {
+    }
+
+    public EnsureKeyPairExists(CloudStackContextCache contextCache) {
+        super(contextCache);
+    }
+
     @Override
     public void execute(CloudStackClient cloudStackClient, Pool pool, DelegateExecution execution) {
         String keyName = KeyPairs.formatNameFromBusinessKey(execution.getProcessBusinessKey());
@@ -22,6 +22,7 @@ import org.apache.provisionr.api.pool.Pool;
 import org.apache.provisionr.cloudstack.NetworkOptions;
 import org.apache.provisionr.cloudstack.ProcessVariables;
 import org.apache.provisionr.cloudstack.ProviderOptions;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
 import org.apache.provisionr.cloudstack.core.Networks;
 import static com.google.common.base.Preconditions.checkNotNull;
 import java.util.NoSuchElementException;
@@ -36,6 +37,13 @@ public class EnsureNetworkExists extends CloudStackActivity {
 
     private static final Logger LOG = LoggerFactory.getLogger(EnsureNetworkExists.class);
 
+    public EnsureNetworkExists() {
+    }
+
+    public EnsureNetworkExists(CloudStackContextCache contextCache) {
+        super(contextCache);
+    }
+
     @Override
     public void execute(CloudStackClient cloudStackClient, Pool pool, DelegateExecution execution) {
         if (execution.getVariable(ProcessVariables.NETWORK_ID) != null) {
@@ -18,8 +18,13 @@
 
 package org.apache.provisionr.cloudstack.activities;
 
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.apache.provisionr.api.network.Network;
 import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.ProcessVariables;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
 import org.apache.provisionr.cloudstack.core.SecurityGroups;
 import static com.google.common.base.Preconditions.checkNotNull;
 import org.activiti.engine.delegate.DelegateExecution;
@@ -30,12 +35,23 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Creates a CloudStack {@link SecurityGroup} with specified rules. If a SecurityGroup with the same name exists,
- * it will be deleted first.
+ * only the rules that changed are revoked or authorized.
+ * <p/>
+ * The async jobs started for the rules are checked later by {@link CheckSecurityGroupJobsCompleted}
  */
 public class EnsureSecurityGroupExists extends CloudStackActivity {
 
     private static final Logger LOG = LoggerFactory.getLogger(EnsureSecurityGroupExists.class);
 
+    public static final long DEFAULT_JOBS_TIMEOUT_IN_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    public EnsureSecurityGroupExists() {
+    }
+
+    public EnsureSecurityGroupExists(CloudStackContextCache contextCache) {
+        super(contextCache);
+    }
+
     @Override
     public void execute(CloudStackClient cloudStackClient, Pool pool, DelegateExecution execution) {
         Network network = checkNotNull(pool.getNetwork(), "Please configure a network for the pool");
@@ -47,12 +63,14 @@ public class EnsureSecurityGroupExists extends CloudStackActivity {
         } catch (IllegalStateException e) {
             LOG.info("Failed creating SecurityGroup {} - checking if it exists", securityGroupName);
             securityGroup = SecurityGroups.getByName(cloudStackClient, securityGroupName);
-            LOG.info("Delete old SecurityGroup rules for {}", securityGroupName);
-            SecurityGroups.deleteNetworkRules(cloudStackClient, securityGroup);
         }
+        List<String> jobIds = Lists.newArrayList();
         if (securityGroup != null) {
-            LOG.info("Applying network rules on SecurityGroup {}", securityGroupName);
-            SecurityGroups.applyNetworkRules(cloudStackClient, securityGroup, network);
+            LOG.info("Synchronizing network rules on SecurityGroup {}", securityGroupName);
+            jobIds.addAll(SecurityGroups.synchronizeNetworkRules(cloudStackClient, securityGroup, network));
         }
+        execution.setVariable(ProcessVariables.PENDING_SECURITY_GROUP_JOB_IDS, jobIds);
+        execution.setVariable(ProcessVariables.SECURITY_GROUP_JOBS_DEADLINE,
+            System.currentTimeMillis() + DEFAULT_JOBS_TIMEOUT_IN_MILLIS);
     }
 }
\ No newline at end of file
@@ -18,21 +18,45 @@
 
 package org.apache.provisionr.cloudstack.activities;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.ProcessVariables;
 import org.apache.provisionr.cloudstack.ProviderOptions;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
 import org.apache.provisionr.cloudstack.core.KeyPairs;
 import org.apache.provisionr.cloudstack.core.Networks;
 import org.apache.provisionr.cloudstack.core.VirtualMachines;
 import org.jclouds.cloudstack.CloudStackClient;
+import org.jclouds.cloudstack.domain.AsyncCreateResponse;
+import org.jclouds.cloudstack.domain.VirtualMachine;
 import org.jclouds.cloudstack.options.DeployVirtualMachineOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Starts the deployment of all the virtual machines in the pool
+ * <p/>
+ * Each deployment is an async job on the CloudStack side so all the machines are
+ * created at the same time. This activity doesn't wait for them - the IDs are stored
+ * as process variables and {@link CheckAllVirtualMachinesAreRunning} is called on a timer.
+ */
 public class RunInstances extends CloudStackActivity {
 
     public static final Logger LOG = LoggerFactory.getLogger(RunInstances.class);
 
+    public RunInstances() {
+    }
+
+    public RunInstances(CloudStackContextCache contextCache) {
+        super(contextCache);
+    }
+
     @Override
     public void execute(CloudStackClient cloudStackClient, Pool pool, DelegateExecution execution) {
         final String businessKey = execution.getProcessBusinessKey();
@@ -43,17 +67,39 @@ public class RunInstances extends CloudStackActivity {
         final String templateId = pool.getSoftware().getImageId();
         final String serviceOffering = pool.getHardware().getType();
 
-        LOG.info("Starting instances!");
+        /* machines deployed by a previous attempt are kept - the names are unique */
+        Set<String> existingNames = Sets.newHashSet();
+        List<String> virtualMachineIds = Lists.newArrayList();
+        for (VirtualMachine machine : VirtualMachines.mapByIdForDisplayName(cloudStackClient, businessKey).values()) {
+            existingNames.add(machine.getName());
+            virtualMachineIds.add(machine.getId());
+        }
+
+        Map<String, String> deployJobIds = Maps.newHashMap();
+        for (int index = 0; index < pool.getExpectedSize(); index++) {
+            final String name = VirtualMachines.formatNameFromBusinessKey(businessKey, index);
+            if (existingNames.contains(name)) {
+                LOG.info("Virtual machine {} already exists. Not deploying again.", name);
+                continue;
+            }
+
+            LOG.info(">> Deploying virtual machine {}", name);
+            AsyncCreateResponse response = cloudStackClient.getVirtualMachineClient().deployVirtualMachineInZone(
+                zoneId, serviceOffering, templateId,
+                DeployVirtualMachineOptions.Builder
+                    .displayName(businessKey)
+                    .group(businessKey)
+                    .networkId(Networks.formatNameFromBusinessKey(businessKey))
+                    .keyPair(keyPairName)
+                    .name(name));
+            LOG.info("<< Virtual machine {} has ID {}. Deploy job ID is {}",
+                new Object[]{name, response.getId(), response.getJobId()});
 
-        cloudStackClient.getVirtualMachineClient().deployVirtualMachineInZone(
-            zoneId, serviceOffering, templateId,
-            DeployVirtualMachineOptions.Builder
-                .displayName(businessKey)
-                .group(businessKey)
-                .networkId(Networks.formatNameFromBusinessKey(businessKey))
-                .keyPair(keyPairName)
-                .name(businessKey));
+            virtualMachineIds.add(response.getId());
+            deployJobIds.put(response.getId(), response.getJobId());
+        }
 
-        VirtualMachines.waitForVMtoStart(cloudStackClient, businessKey);
+        execution.setVariable(ProcessVariables.VIRTUAL_MACHINE_IDS, virtualMachineIds);
+        execution.setVariable(ProcessVariables.DEPLOY_JOB_IDS, deployJobIds);
     }
 }
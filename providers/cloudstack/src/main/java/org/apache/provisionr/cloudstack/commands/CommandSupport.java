@@ -18,40 +18,50 @@
 
 package org.apache.provisionr.cloudstack.commands;
 
-import com.google.common.collect.ImmutableSet;
+import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.io.Closeables;
 import java.io.PrintStream;
-import java.util.Properties;
 import org.apache.karaf.shell.console.OsgiCommandSupport;
 import org.apache.provisionr.api.provider.Provider;
 import org.apache.provisionr.cloudstack.DefaultProviderConfig;
-import org.jclouds.Constants;
-import org.jclouds.ContextBuilder;
-import org.jclouds.cloudstack.CloudStackApiMetadata;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCacheSupplier;
 import org.jclouds.cloudstack.CloudStackAsyncClient;
 import org.jclouds.cloudstack.CloudStackClient;
-import org.jclouds.logging.slf4j.config.SLF4JLoggingModule;
 import org.jclouds.rest.RestContext;
 
 
 /**
- * Base class for CloudStack  Karaf Shell commands. It takes care of creating and cleaning a
- * {@link org.jclouds.cloudstack.CloudStackContext} for each command.
+ * Base class for CloudStack  Karaf Shell commands. It takes care of getting a
+ * {@link org.jclouds.cloudstack.CloudStackContext} for each command - from the shared
+ * cache when available or a new one that is closed after the command.
  */
 public abstract class CommandSupport extends OsgiCommandSupport {
 
     public static final String CLOUDSTACK_SCOPE = "cloudstack";
 
     private final Provider provider;
+    private final Optional<CloudStackContextCache> contextCache;
 
     protected CommandSupport(DefaultProviderConfig providerConfig) {
         this.provider = providerConfig.createProvider().get();
+        this.contextCache = Optional.absent();
+    }
+
+    protected CommandSupport(DefaultProviderConfig providerConfig, CloudStackContextCache contextCache) {
+        this.provider = providerConfig.createProvider().get();
+        this.contextCache = Optional.of(checkNotNull(contextCache, "contextCache is null"));
     }
 
     public abstract Object doExecuteWithContext(CloudStackClient client, PrintStream out) throws Exception;
 
     @Override
     protected Object doExecute() throws Exception {
+        if (contextCache.isPresent()) {
+            return doExecuteWithContext(contextCache.get().getUnchecked(provider).getApi(), System.out);
+        }
+
         RestContext<CloudStackClient, CloudStackAsyncClient> context = null;
         try {
             context = newCloudStackContext(provider);
@@ -63,14 +73,7 @@ public abstract class CommandSupport extends OsgiCommandSupport {
     }
 
     protected RestContext<CloudStackClient, CloudStackAsyncClient> newCloudStackContext(Provider provider) {
-        Properties overrides = new Properties();
-        overrides.setProperty(Constants.PROPERTY_TRUST_ALL_CERTS, "true");
-        return ContextBuilder.newBuilder(new CloudStackApiMetadata())
-            .endpoint(provider.getEndpoint().get())
-            .modules(ImmutableSet.of(new SLF4JLoggingModule()))
-            .credentials(provider.getAccessKey(), provider.getSecretKey())
-            .overrides(overrides)
-            .build(CloudStackApiMetadata.CONTEXT_TOKEN);
+        return CloudStackContextCacheSupplier.newCloudStackContext(provider);
     }
 
     public Provider getProvider() {
@@ -22,6 +22,7 @@ import java.io.PrintStream;
 import org.apache.felix.gogo.commands.Command;
 import org.apache.felix.gogo.commands.Option;
 import org.apache.provisionr.cloudstack.DefaultProviderConfig;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
 import org.jclouds.cloudstack.CloudStackClient;
 import org.jclouds.cloudstack.domain.DiskOffering;
 import org.jclouds.cloudstack.domain.NetworkOffering;
@@ -46,6 +47,10 @@ public class OfferingsCommand extends CommandSupport {
         super(providerConfig);
     }
 
+    public OfferingsCommand(DefaultProviderConfig providerConfig, CloudStackContextCache contextCache) {
+        super(providerConfig, contextCache);
+    }
+
     @Override
     public Object doExecuteWithContext(CloudStackClient client, PrintStream out) {
         if (isDiskOfferingListed() || isServiceOfferingListed() || isNetworkOfferingListed()) {
@@ -21,6 +21,7 @@ package org.apache.provisionr.cloudstack.commands;
 import java.io.PrintStream;
 import org.apache.felix.gogo.commands.Command;
 import org.apache.provisionr.cloudstack.DefaultProviderConfig;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
 import org.jclouds.cloudstack.CloudStackClient;
 import org.jclouds.cloudstack.domain.Template;
 
@@ -34,6 +35,10 @@ public class TemplatesCommand extends CommandSupport {
         super(providerConfig);
     }
 
+    public TemplatesCommand(DefaultProviderConfig providerConfig, CloudStackContextCache contextCache) {
+        super(providerConfig, contextCache);
+    }
+
     @Override
     public Object doExecuteWithContext(CloudStackClient client, PrintStream out) {
         out.printf("CloudStack templates for provider %s\n", getProvider().getId());
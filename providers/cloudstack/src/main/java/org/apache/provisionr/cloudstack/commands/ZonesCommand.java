@@ -21,6 +21,7 @@ package org.apache.provisionr.cloudstack.commands;
 import java.io.PrintStream;
 import org.apache.felix.gogo.commands.Command;
 import org.apache.provisionr.cloudstack.DefaultProviderConfig;
+import org.apache.provisionr.cloudstack.core.CloudStackContextCache;
 import org.jclouds.cloudstack.CloudStackClient;
 import org.jclouds.cloudstack.domain.Zone;
 
@@ -34,6 +35,10 @@ public class ZonesCommand extends CommandSupport {
         super(defaultProviderConfig);
     }
 
+    public ZonesCommand(DefaultProviderConfig defaultProviderConfig, CloudStackContextCache contextCache) {
+        super(defaultProviderConfig, contextCache);
+    }
+
     @Override
     public Object doExecuteWithContext(CloudStackClient client, PrintStream out) {
         out.printf("CloudStack zones for provider %s%n", getProvider().getId());
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.core;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.jclouds.cloudstack.domain.AsyncJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public final class AsyncJobs {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncJobs.class);
+
+    private AsyncJobs() {
+    }
+
+    /**
+     * Check a set of async jobs that were started together using a single list request.
+     * Nothing waits here - the caller is expected to check again later (e.g. from a timer).
+     *
+     * @return the jobs that are still in progress or not visible yet
+     * @throws IllegalStateException if any of the jobs failed
+     */
+    public static List<String> checkAll(CloudStackClient client, Collection<String> jobIds) {
+        if (jobIds.isEmpty()) {
+            return Lists.newArrayList();
+        }
+
+        Map<String, AsyncJob<?>> jobsById = Maps.newHashMap();
+        for (AsyncJob<?> job : client.getAsyncJobClient().listAsyncJobs()) {
+            jobsById.put(job.getId(), job);
+        }
+
+        List<String> pending = Lists.newArrayList();
+        List<String> failures = Lists.newArrayList();
+        for (String jobId : jobIds) {
+            AsyncJob<?> job = jobsById.get(jobId);
+            if (job == null) {
+                pending.add(jobId);
+
+            } else if (job.hasFailed()) {
+                failures.add(String.format("job %s: %s", jobId, job.getError()));
+
+            } else if (!job.hasSucceed()) {
+                pending.add(jobId);
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Some async jobs failed: " + failures);
+        }
+
+        LOG.info("{} of {} async jobs completed", jobIds.size() - pending.size(), jobIds.size());
+        return pending;
+    }
+}
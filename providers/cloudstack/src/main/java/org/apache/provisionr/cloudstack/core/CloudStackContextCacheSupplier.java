@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.core;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.base.Supplier;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.ForwardingLoadingCache;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Closeables;
+import com.google.inject.Module;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.apache.provisionr.api.provider.Provider;
+import org.jclouds.Constants;
+import org.jclouds.ContextBuilder;
+import org.jclouds.cloudstack.CloudStackApiMetadata;
+import org.jclouds.cloudstack.CloudStackAsyncClient;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.jclouds.logging.slf4j.config.SLF4JLoggingModule;
+import org.jclouds.rest.RestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates a cache of jclouds contexts shared by all the activities and shell commands
+ * <p/>
+ * Building a context means creating a Guice injector and a new HTTP stack so it's
+ * worth keeping them around. Contexts are closed when they are evicted. Hit rates
+ * and load times are available through {@link LoadingCache#stats()}.
+ */
+public class CloudStackContextCacheSupplier implements Supplier<CloudStackContextCache> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CloudStackContextCacheSupplier.class);
+
+    public static final int DEFAULT_MAX_CACHE_SIZE = 100;
+    public static final int DEFAULT_EXPIRE_AFTER_ACCESS_IN_MINUTES = 30;
+
+    /**
+     * Creates a new {@link CloudStackClient} context with {@link Provider} supplied credentials.
+     */
+    public static RestContext<CloudStackClient, CloudStackAsyncClient> newCloudStackContext(Provider provider) {
+        checkArgument(provider.getEndpoint().isPresent(), "please specify an endpoint for this provider");
+
+        Properties overrides = new Properties();
+        overrides.setProperty(Constants.PROPERTY_TRUST_ALL_CERTS, "true");
+
+        return ContextBuilder.newBuilder(new CloudStackApiMetadata())
+            .endpoint(provider.getEndpoint().get())
+            .modules(ImmutableSet.<Module>of(new SLF4JLoggingModule()))
+            .credentials(provider.getAccessKey(), provider.getSecretKey())
+            .overrides(overrides)
+            .build(CloudStackApiMetadata.CONTEXT_TOKEN);
+    }
+
+    private static class CloudStackContextLoader
+        extends CacheLoader<Provider, RestContext<CloudStackClient, CloudStackAsyncClient>> {
+
+        @Override
+        public RestContext<CloudStackClient, CloudStackAsyncClient> load(Provider provider) {
+            LOG.info("Creating CloudStack context for provider: {}", provider.getId());
+            return newCloudStackContext(provider);
+        }
+    }
+
+    public static class WrapLoadingCacheAsCloudStackContextCache
+        extends ForwardingLoadingCache<Provider, RestContext<CloudStackClient, CloudStackAsyncClient>>
+        implements CloudStackContextCache {
+
+        private final LoadingCache<Provider, RestContext<CloudStackClient, CloudStackAsyncClient>> delegate;
+
+        public WrapLoadingCacheAsCloudStackContextCache(
+            LoadingCache<Provider, RestContext<CloudStackClient, CloudStackAsyncClient>> delegate) {
+            this.delegate = checkNotNull(delegate, "delegate is null");
+        }
+
+        @Override
+        protected LoadingCache<Provider, RestContext<CloudStackClient, CloudStackAsyncClient>> delegate() {
+            return delegate;
+        }
+    }
+
+    private final int maxCacheSize;
+    private final int expireAfterAccessInMinutes;
+
+    public CloudStackContextCacheSupplier() {
+        this(DEFAULT_MAX_CACHE_SIZE, DEFAULT_EXPIRE_AFTER_ACCESS_IN_MINUTES);
+    }
+
+    public CloudStackContextCacheSupplier(int maxCacheSize, int expireAfterAccessInMinutes) {
+        checkArgument(maxCacheSize > 0, "maxCacheSize should be positive");
+        checkArgument(expireAfterAccessInMinutes > 0, "expireAfterAccessInMinutes should be positive");
+
+        this.maxCacheSize = maxCacheSize;
+        this.expireAfterAccessInMinutes = expireAfterAccessInMinutes;
+    }
+
+    @Override
+    public CloudStackContextCache get() {
+        final LoadingCache<Provider, RestContext<CloudStackClient, CloudStackAsyncClient>> cache =
+            CacheBuilder.newBuilder()
+                .maximumSize(maxCacheSize)
+                .expireAfterAccess(expireAfterAccessInMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .removalListener(new RemovalListener<Provider, RestContext<CloudStackClient, CloudStackAsyncClient>>() {
+                    @Override
+                    public void onRemoval(
+                        RemovalNotification<Provider, RestContext<CloudStackClient, CloudStackAsyncClient>> notification
+                    ) {
+                        LOG.info("Closing CloudStack context for provider {} ({})",
+                            notification.getKey().getId(), notification.getCause());
+                        Closeables.closeQuietly(notification.getValue());
+                    }
+                })
+                .build(new CloudStackContextLoader());
+
+        return new WrapLoadingCacheAsCloudStackContextCache(cache);
+    }
+}
@@ -21,6 +21,10 @@ package org.apache.provisionr.cloudstack.core;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import org.apache.provisionr.api.network.Network;
@@ -77,25 +81,58 @@ public final class SecurityGroups {
         return securityGroupClient.createSecurityGroup(securityGroupName);
     }
 
-    public static void deleteNetworkRules(CloudStackClient cloudStackClient, SecurityGroup securityGroup) {
-        for (IngressRule rule : securityGroup.getIngressRules()) {
-            cloudStackClient.getSecurityGroupClient().revokeIngressRule(rule.getId());
-        }
-    }
+    /**
+     * Bring the ingress rules of the security group in line with the network. Only the
+     * rules that changed are authorized or revoked. The async jobs are started together
+     * and are not awaited. An unchanged network makes no calls at all.
+     *
+     * @return the IDs of the async jobs started
+     * @see AsyncJobs#checkAll
+     */
+    public static List<String> synchronizeNetworkRules(CloudStackClient cloudStackClient,
+                                               SecurityGroup securityGroup, Network network) {
+        Map<Rule, IngressRule> existing = Maps.newHashMap();
+        List<IngressRule> toRevoke = Lists.newArrayList();
 
-    public static void applyNetworkRules(CloudStackClient cloudStackClient, SecurityGroup securityGroup, Network network) {
-        SecurityGroupClient securityGroupClient = cloudStackClient.getSecurityGroupClient();
-        for (Rule rule : network.getIngress()) {
-            if (rule.getProtocol() == Protocol.ICMP) {
-                securityGroupClient.authorizeIngressICMPToCIDRs(securityGroup.getId(), DEFAULT_ICMP_CODE,
-                    DEFAULT_ICMP_TYPE, ImmutableList.of(rule.getCidr()));
+        for (IngressRule ingressRule : securityGroup.getIngressRules()) {
+            Rule rule = ConvertIngressRuleToRule.FUNCTION.apply(ingressRule);
+            if (!network.getIngress().contains(rule) || existing.containsKey(rule)) {
+                toRevoke.add(ingressRule);     /* no longer needed or duplicate */
             } else {
-                securityGroupClient.authorizeIngressPortsToCIDRs(securityGroup.getId(),
-                    rule.getProtocol().name(),
-                    rule.getPorts().lowerEndpoint(),
-                    rule.getPorts().upperEndpoint(),
-                    Lists.newArrayList(rule.getCidr()));
+                existing.put(rule, ingressRule);
             }
         }
+        Set<Rule> toAuthorize = Sets.difference(network.getIngress(), existing.keySet()).immutableCopy();
+
+        if (toAuthorize.isEmpty() && toRevoke.isEmpty()) {
+            LOG.info("Network rules for SecurityGroup {} are up to date", securityGroup.getName());
+            return ImmutableList.of();
+        }
+
+        List<String> jobIds = Lists.newArrayList();
+        SecurityGroupClient securityGroupClient = cloudStackClient.getSecurityGroupClient();
+        for (IngressRule ingressRule : toRevoke) {
+            LOG.info("Revoking rule {} on SecurityGroup {}", ingressRule, securityGroup.getName());
+            jobIds.add(securityGroupClient.revokeIngressRule(ingressRule.getId()));
+        }
+        for (Rule rule : toAuthorize) {
+            LOG.info("Authorizing rule {} on SecurityGroup {}", rule, securityGroup.getName());
+            jobIds.add(authorizeIngressRule(securityGroupClient, securityGroup, rule));
+        }
+        return jobIds;
+    }
+
+    private static String authorizeIngressRule(SecurityGroupClient securityGroupClient,
+                                               SecurityGroup securityGroup, Rule rule) {
+        if (rule.getProtocol() == Protocol.ICMP) {
+            return securityGroupClient.authorizeIngressICMPToCIDRs(securityGroup.getId(), DEFAULT_ICMP_CODE,
+                DEFAULT_ICMP_TYPE, ImmutableList.of(rule.getCidr()));
+        } else {
+            return securityGroupClient.authorizeIngressPortsToCIDRs(securityGroup.getId(),
+                rule.getProtocol().name(),
+                rule.getPorts().lowerEndpoint(),
+                rule.getPorts().upperEndpoint(),
+                ImmutableList.of(rule.getCidr()));
+        }
     }
 }
@@ -19,17 +19,15 @@
 package org.apache.provisionr.cloudstack.core;
 
 import com.google.common.base.Predicate;
-import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 import org.jclouds.cloudstack.CloudStackClient;
 import org.jclouds.cloudstack.domain.VirtualMachine;
-import static org.jclouds.cloudstack.domain.VirtualMachine.State.STARTING;
 import org.jclouds.cloudstack.options.ListVirtualMachinesOptions;
 import static org.jclouds.util.Preconditions2.checkNotEmpty;
 import org.slf4j.Logger;
@@ -39,22 +37,21 @@ public class VirtualMachines {
 
     private static final Logger LOG = LoggerFactory.getLogger(VirtualMachines.class);
 
-    public static final int WAIT_TIME_OUT_IN_SECONDS = 180;
-    public static final int BETWEEN_REQUESTS_SLEEP_TIME = WAIT_TIME_OUT_IN_SECONDS / 10;
-
     private VirtualMachines() {
     }
 
+    /**
+     * Name of the virtual machine with the given index. All the machines in a pool
+     * share the same display name but names must be unique.
+     */
+    public static String formatNameFromBusinessKey(String businessKey, int index) {
+        return String.format("%s-%d", businessKey, index);
+    }
+
     public static List<String> destroyAllVirtualMachineByName(final CloudStackClient client, final String vmName) {
         checkNotEmpty(vmName);
 
-        Set<VirtualMachine> vms = Sets.filter(client.getVirtualMachineClient()
-            .listVirtualMachines(ListVirtualMachinesOptions.Builder.name(vmName)), new Predicate<VirtualMachine>() {
-            @Override
-            public boolean apply(VirtualMachine input) {
-                return input != null && vmName.equals(input.getDisplayName());
-            }
-        });
+        Set<VirtualMachine> vms = listByDisplayName(client, vmName);
 
         List<String> jobIds = Lists.newArrayList();
         LOG.info("Deleting a total of {} virtual machine instances", vms.size());
@@ -65,46 +62,26 @@ public class VirtualMachines {
         return ImmutableList.copyOf(jobIds);
     }
 
-    public static void waitForVMtoStart(final CloudStackClient client, final String vmName) {
-        checkNotEmpty(vmName);
-        VirtualMachine machine = getVirtualMachineByName(client, vmName);
-        String id = machine.getId();
-        long startTime = System.currentTimeMillis();
-        while (machine.getState() == STARTING) {
-            try {
-                LOG.info("Waiting for VM {} - id {} to start", machine.getName(), machine.getId());
-                TimeUnit.SECONDS.sleep(BETWEEN_REQUESTS_SLEEP_TIME);
-                machine = client.getVirtualMachineClient().getVirtualMachine(id);
-            } catch (InterruptedException e) {
-                LOG.info("Interrupted while waiting for VM's to start");
-                Throwables.propagateIfPossible(e);
-            }
-            if (timeOutExceeded(startTime)) {
-                break;
-            }
-        }
-
-        switch (machine.getState()) {
-            case RUNNING:
-                LOG.info("VM {} is running, as expected", vmName);
-                break;
-            default:
-                throw new IllegalStateException("VM " + machine + "is not in RUNNING state");
+    /**
+     * All the virtual machines with this display name indexed by ID. A single API call.
+     */
+    public static Map<String, VirtualMachine> mapByIdForDisplayName(CloudStackClient client, String displayName) {
+        ImmutableMap.Builder<String, VirtualMachine> builder = ImmutableMap.builder();
+        for (VirtualMachine machine : listByDisplayName(client, displayName)) {
+            builder.put(machine.getId(), machine);
         }
+        return builder.build();
     }
 
-    private static boolean timeOutExceeded(long startTime) {
-        return System.currentTimeMillis() - startTime > (WAIT_TIME_OUT_IN_SECONDS * 1000);
-    }
+    private static Set<VirtualMachine> listByDisplayName(CloudStackClient client, final String displayName) {
+        checkNotEmpty(displayName);
 
-    private static VirtualMachine getVirtualMachineByName(CloudStackClient client, final String vmName) {
-        Set<VirtualMachine> machines = Sets.filter(client.getVirtualMachineClient()
-            .listVirtualMachines(ListVirtualMachinesOptions.Builder.name(vmName)), new Predicate<VirtualMachine>() {
+        return Sets.filter(client.getVirtualMachineClient()
+            .listVirtualMachines(ListVirtualMachinesOptions.Builder.name(displayName)), new Predicate<VirtualMachine>() {
             @Override
             public boolean apply(VirtualMachine input) {
-                return input != null && vmName.equals(input.getDisplayName());
+                return input != null && displayName.equals(input.getDisplayName());
             }
         });
-        return Iterables.getOnlyElement(machines);
     }
 }
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.activities;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.ProcessVariables;
+import static org.apache.provisionr.cloudstack.activities.RunInstancesTest.newVirtualMachine;
+import org.apache.provisionr.test.ProcessVariablesCollector;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.jclouds.cloudstack.domain.AsyncJob;
+import org.jclouds.cloudstack.domain.AsyncJobError;
+import org.jclouds.cloudstack.domain.VirtualMachine;
+import org.jclouds.cloudstack.features.AsyncJobClient;
+import org.jclouds.cloudstack.features.VirtualMachineClient;
+import org.jclouds.cloudstack.options.ListVirtualMachinesOptions;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CheckAllVirtualMachinesAreRunningTest {
+
+    private CloudStackClient client;
+    private VirtualMachineClient virtualMachineClient;
+    private DelegateExecution execution;
+    private ProcessVariablesCollector collector;
+
+    @Before
+    public void setUp() {
+        client = mock(CloudStackClient.class);
+        virtualMachineClient = mock(VirtualMachineClient.class);
+        when(client.getVirtualMachineClient()).thenReturn(virtualMachineClient);
+
+        execution = mock(DelegateExecution.class);
+        when(execution.getProcessBusinessKey()).thenReturn("k1");
+        when(execution.getVariable(ProcessVariables.VIRTUAL_MACHINE_IDS))
+            .thenReturn(Lists.newArrayList("vm-0", "vm-1"));
+        when(execution.getVariable(ProcessVariables.DEPLOY_JOB_IDS))
+            .thenReturn(ImmutableMap.of("vm-0", "job-0", "vm-1", "job-1"));
+
+        collector = new ProcessVariablesCollector();
+        collector.install(execution);
+    }
+
+    @Test
+    public void testAllVirtualMachinesAreRunning() {
+        listVirtualMachines(
+            newVirtualMachine("vm-0", "k1-0", VirtualMachine.State.RUNNING),
+            newVirtualMachine("vm-1", "k1-1", VirtualMachine.State.RUNNING));
+
+        new CheckAllVirtualMachinesAreRunning().execute(client, mock(Pool.class), execution);
+
+        assertThat((Boolean) collector.getVariable(ProcessVariables.ALL_VIRTUAL_MACHINES_RUNNING)).isTrue();
+    }
+
+    @Test
+    public void testVirtualMachinesStillStartingOrNotVisibleYet() {
+        listVirtualMachines(newVirtualMachine("vm-0", "k1-0", VirtualMachine.State.STARTING));
+
+        new CheckAllVirtualMachinesAreRunning().execute(client, mock(Pool.class), execution);
+
+        assertThat((Boolean) collector.getVariable(ProcessVariables.ALL_VIRTUAL_MACHINES_RUNNING)).isFalse();
+    }
+
+    @Test
+    public void testFailedDeploymentIsReportedWithTheJobError() {
+        listVirtualMachines(
+            newVirtualMachine("vm-0", "k1-0", VirtualMachine.State.RUNNING),
+            newVirtualMachine("vm-1", "k1-1", VirtualMachine.State.ERROR));
+
+        AsyncJobError error = mock(AsyncJobError.class);
+        when(error.getErrorText()).thenReturn("insufficient capacity");
+        AsyncJob<?> job = mock(AsyncJob.class);
+        doReturn(error).when(job).getError();
+
+        AsyncJobClient asyncJobClient = mock(AsyncJobClient.class);
+        when(client.getAsyncJobClient()).thenReturn(asyncJobClient);
+        doReturn(job).when(asyncJobClient).getAsyncJob("job-1");
+
+        try {
+            new CheckAllVirtualMachinesAreRunning().execute(client, mock(Pool.class), execution);
+            fail("expected the check to fail for the virtual machine in ERROR state");
+
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("k1-1").contains("insufficient capacity");
+        }
+        assertThat(collector.getVariable(ProcessVariables.ALL_VIRTUAL_MACHINES_RUNNING)).isNull();
+    }
+
+    private void listVirtualMachines(VirtualMachine... machines) {
+        when(virtualMachineClient.listVirtualMachines(Matchers.<ListVirtualMachinesOptions>anyVararg()))
+            .thenReturn(ImmutableSet.copyOf(machines));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.activities;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.ProcessVariables;
+import org.apache.provisionr.test.ProcessVariablesCollector;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.jclouds.cloudstack.domain.AsyncJob;
+import org.jclouds.cloudstack.features.AsyncJobClient;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CheckDestroyJobsCompletedTest {
+
+    private AsyncJobClient asyncJobClient;
+    private CloudStackClient client;
+    private DelegateExecution execution;
+    private ProcessVariablesCollector collector;
+
+    @Before
+    public void setUp() {
+        asyncJobClient = mock(AsyncJobClient.class);
+        client = mock(CloudStackClient.class);
+        when(client.getAsyncJobClient()).thenReturn(asyncJobClient);
+
+        execution = mock(DelegateExecution.class);
+        when(execution.getProcessBusinessKey()).thenReturn("k1");
+        when(execution.getVariable(ProcessVariables.PENDING_DESTROY_JOB_IDS))
+            .thenReturn(Lists.newArrayList("job-1", "job-2"));
+        when(execution.getVariable(ProcessVariables.DESTROY_JOBS_DEADLINE))
+            .thenReturn(System.currentTimeMillis() + 60000);
+
+        collector = new ProcessVariablesCollector();
+        collector.install(execution);
+    }
+
+    @Test
+    public void testWaitsForThePendingJobs() {
+        doReturn(ImmutableSet.of(newJob("job-1", true, false), newJob("job-2", false, false)))
+            .when(asyncJobClient).listAsyncJobs();
+
+        new CheckDestroyJobsCompleted().execute(client, mock(Pool.class), execution);
+
+        assertThat(collector.getVariable(ProcessVariables.DESTROY_JOBS_COMPLETED)).isEqualTo(false);
+
+        @SuppressWarnings("unchecked")
+        List<String> pending = (List<String>) collector.getVariable(ProcessVariables.PENDING_DESTROY_JOB_IDS);
+        assertThat(pending).containsExactly("job-2");
+    }
+
+    @Test
+    public void testCompletesWhenAllJobsSucceeded() {
+        doReturn(ImmutableSet.of(newJob("job-1", true, false), newJob("job-2", true, false)))
+            .when(asyncJobClient).listAsyncJobs();
+
+        new CheckDestroyJobsCompleted().execute(client, mock(Pool.class), execution);
+
+        assertThat(collector.getVariable(ProcessVariables.DESTROY_JOBS_COMPLETED)).isEqualTo(true);
+    }
+
+    @Test
+    public void testFailedJobsDoNotBlockTheTeardown() {
+        doReturn(ImmutableSet.of(newJob("job-1", false, true), newJob("job-2", false, false)))
+            .when(asyncJobClient).listAsyncJobs();
+
+        new CheckDestroyJobsCompleted().execute(client, mock(Pool.class), execution);
+
+        assertThat(collector.getVariable(ProcessVariables.DESTROY_JOBS_COMPLETED)).isEqualTo(true);
+    }
+
+    @Test
+    public void testStopsWaitingAfterTheDeadline() {
+        when(execution.getVariable(ProcessVariables.DESTROY_JOBS_DEADLINE))
+            .thenReturn(System.currentTimeMillis() - 1);
+        doReturn(ImmutableSet.of(newJob("job-1", false, false))).when(asyncJobClient).listAsyncJobs();
+
+        new CheckDestroyJobsCompleted().execute(client, mock(Pool.class), execution);
+
+        assertThat(collector.getVariable(ProcessVariables.DESTROY_JOBS_COMPLETED)).isEqualTo(true);
+    }
+
+    private AsyncJob<?> newJob(String id, boolean succeeded, boolean failed) {
+        AsyncJob<?> job = mock(AsyncJob.class);
+        when(job.getId()).thenReturn(id);
+        when(job.hasSucceed()).thenReturn(succeeded);
+        when(job.hasFailed()).thenReturn(failed);
+        return job;
+    }
+}
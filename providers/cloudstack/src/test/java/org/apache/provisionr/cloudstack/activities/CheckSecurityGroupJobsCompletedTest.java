@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.activities;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import java.util.List;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.ProcessVariables;
+import org.apache.provisionr.test.ProcessVariablesCollector;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.jclouds.cloudstack.domain.AsyncJob;
+import org.jclouds.cloudstack.features.AsyncJobClient;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CheckSecurityGroupJobsCompletedTest {
+
+    private AsyncJobClient asyncJobClient;
+    private CloudStackClient client;
+    private DelegateExecution execution;
+    private ProcessVariablesCollector collector;
+
+    @Before
+    public void setUp() {
+        asyncJobClient = mock(AsyncJobClient.class);
+        client = mock(CloudStackClient.class);
+        when(client.getAsyncJobClient()).thenReturn(asyncJobClient);
+
+        execution = mock(DelegateExecution.class);
+        when(execution.getProcessBusinessKey()).thenReturn("k1");
+        when(execution.getVariable(ProcessVariables.PENDING_SECURITY_GROUP_JOB_IDS))
+            .thenReturn(Lists.newArrayList("job-1", "job-2"));
+        when(execution.getVariable(ProcessVariables.SECURITY_GROUP_JOBS_DEADLINE))
+            .thenReturn(System.currentTimeMillis() + 60000);
+
+        collector = new ProcessVariablesCollector();
+        collector.install(execution);
+    }
+
+    @Test
+    public void testWaitsForThePendingJobs() {
+        doReturn(ImmutableSet.of(newJob("job-1", true), newJob("job-2", false)))
+            .when(asyncJobClient).listAsyncJobs();
+
+        new CheckSecurityGroupJobsCompleted().execute(client, mock(Pool.class), execution);
+
+        assertThat(collector.getVariable(ProcessVariables.SECURITY_GROUP_JOBS_COMPLETED)).isEqualTo(false);
+        assertThat(collector.getVariable(ProcessVariables.SECURITY_GROUP_JOBS_TIMED_OUT)).isEqualTo(false);
+
+        @SuppressWarnings("unchecked")
+        List<String> pending = (List<String>) collector.getVariable(ProcessVariables.PENDING_SECURITY_GROUP_JOB_IDS);
+        assertThat(pending).containsExactly("job-2");
+    }
+
+    @Test
+    public void testCompletesWhenAllJobsSucceeded() {
+        doReturn(ImmutableSet.of(newJob("job-1", true), newJob("job-2", true)))
+            .when(asyncJobClient).listAsyncJobs();
+
+        new CheckSecurityGroupJobsCompleted().execute(client, mock(Pool.class), execution);
+
+        assertThat(collector.getVariable(ProcessVariables.SECURITY_GROUP_JOBS_COMPLETED)).isEqualTo(true);
+        assertThat(collector.getVariable(ProcessVariables.SECURITY_GROUP_JOBS_TIMED_OUT)).isEqualTo(false);
+    }
+
+    @Test
+    public void testTimesOutAfterTheDeadlineInsteadOfFailing() {
+        when(execution.getVariable(ProcessVariables.SECURITY_GROUP_JOBS_DEADLINE))
+            .thenReturn(System.currentTimeMillis() - 1);
+        doReturn(ImmutableSet.of(newJob("job-1", true), newJob("job-2", false)))
+            .when(asyncJobClient).listAsyncJobs();
+
+        new CheckSecurityGroupJobsCompleted().execute(client, mock(Pool.class), execution);
+
+        assertThat(collector.getVariable(ProcessVariables.SECURITY_GROUP_JOBS_COMPLETED)).isEqualTo(false);
+        assertThat(collector.getVariable(ProcessVariables.SECURITY_GROUP_JOBS_TIMED_OUT)).isEqualTo(true);
+    }
+
+    private AsyncJob<?> newJob(String id, boolean succeeded) {
+        AsyncJob<?> job = mock(AsyncJob.class);
+        when(job.getId()).thenReturn(id);
+        when(job.hasSucceed()).thenReturn(succeeded);
+        when(job.hasFailed()).thenReturn(false);
+        return job;
+    }
+}
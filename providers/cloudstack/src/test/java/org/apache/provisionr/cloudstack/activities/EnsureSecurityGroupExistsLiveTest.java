@@ -20,14 +20,20 @@ package org.apache.provisionr.cloudstack.activities;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 import org.activiti.engine.delegate.DelegateExecution;
 import org.apache.provisionr.api.network.Network;
 import org.apache.provisionr.api.network.Rule;
 import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.cloudstack.ProcessVariables;
+import org.apache.provisionr.cloudstack.core.AsyncJobs;
 import org.apache.provisionr.cloudstack.core.ConvertIngressRuleToRule;
 import org.apache.provisionr.cloudstack.core.SecurityGroups;
 import org.apache.provisionr.core.CoreProcessVariables;
+import org.apache.provisionr.test.ProcessVariablesCollector;
 import static org.fest.assertions.api.Assertions.assertThat;
 import org.jclouds.cloudstack.domain.SecurityGroup;
 import static org.jclouds.cloudstack.options.ListSecurityGroupsOptions.Builder.named;
@@ -93,7 +99,7 @@ public class EnsureSecurityGroupExistsLiveTest extends CloudStackActivityLiveTes
         when(execution.getVariable(CoreProcessVariables.POOL)).thenReturn(pool);
         when(execution.getProcessBusinessKey()).thenReturn(BUSINESS_KEY);
 
-        activity.execute(execution);
+        executeAndWaitForJobs(execution);
         assertSecurityGroupExistsWithRules(SecurityGroups.getByName(
             context.getApi(), SECURITY_GROUP_NAME), ingressRules);
     }
@@ -112,16 +118,33 @@ public class EnsureSecurityGroupExistsLiveTest extends CloudStackActivityLiveTes
         when(pool.getNetwork()).thenReturn(network.toBuilder().addRules(
             Rule.builder().anySource().tcp().port(80).createRule()).createNetwork());
 
-        activity.execute(execution);
+        executeAndWaitForJobs(execution);
         // call the process again with the old network rules and check the rules
         when(pool.getNetwork()).thenReturn(network);
 
-        activity.execute(execution);
+        executeAndWaitForJobs(execution);
 
         assertSecurityGroupExistsWithRules(SecurityGroups.getByName(context.getApi(),
             SECURITY_GROUP_NAME), ingressRules);
     }
 
+    /**
+     * The activity only starts the async jobs - they are normally checked by the process
+     */
+    private void executeAndWaitForJobs(DelegateExecution execution) throws Exception {
+        ProcessVariablesCollector collector = new ProcessVariablesCollector();
+        collector.install(execution);
+
+        activity.execute(execution);
+
+        @SuppressWarnings("unchecked")
+        List<String> pending = (List<String>) collector.getVariable(ProcessVariables.PENDING_SECURITY_GROUP_JOB_IDS);
+        while (!pending.isEmpty()) {
+            Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
+            pending = AsyncJobs.checkAll(context.getApi(), pending);
+        }
+    }
+
     private void assertSecurityGroupExistsWithRules(SecurityGroup securityGroup, ImmutableSet<Rule> ingressRules) {
         assertThat(ingressRules).containsAll(Iterables.transform(securityGroup.getIngressRules(),
             ConvertIngressRuleToRule.FUNCTION));
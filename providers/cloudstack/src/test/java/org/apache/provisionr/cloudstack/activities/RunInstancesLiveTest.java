@@ -79,6 +79,7 @@ public class RunInstancesLiveTest extends CloudStackActivityLiveTest<RunInstance
         when(pool.getHardware()).thenReturn(hardware);
         when(pool.getSoftware()).thenReturn(software);
         when(pool.getOptions()).thenReturn(options);
+        when(pool.getExpectedSize()).thenReturn(2);
 
         when(execution.getProcessBusinessKey()).thenReturn(BUSINESS_KEY);
         when(execution.getVariable(CoreProcessVariables.POOL)).thenReturn(pool);
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.activities;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.List;
+import java.util.Map;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.apache.provisionr.api.hardware.Hardware;
+import org.apache.provisionr.api.pool.Pool;
+import org.apache.provisionr.api.software.Software;
+import org.apache.provisionr.cloudstack.ProcessVariables;
+import org.apache.provisionr.cloudstack.ProviderOptions;
+import org.apache.provisionr.test.ProcessVariablesCollector;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.jclouds.cloudstack.domain.AsyncCreateResponse;
+import org.jclouds.cloudstack.domain.VirtualMachine;
+import org.jclouds.cloudstack.features.VirtualMachineClient;
+import org.jclouds.cloudstack.options.DeployVirtualMachineOptions;
+import org.jclouds.cloudstack.options.ListVirtualMachinesOptions;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RunInstancesTest {
+
+    private static final String BUSINESS_KEY = "k1";
+
+    private CloudStackClient client;
+    private VirtualMachineClient virtualMachineClient;
+    private Pool pool;
+    private DelegateExecution execution;
+    private ProcessVariablesCollector collector;
+
+    @Before
+    public void setUp() {
+        client = mock(CloudStackClient.class);
+        virtualMachineClient = mock(VirtualMachineClient.class);
+        when(client.getVirtualMachineClient()).thenReturn(virtualMachineClient);
+
+        Software software = mock(Software.class);
+        when(software.getImageId()).thenReturn("template-1");
+        Hardware hardware = mock(Hardware.class);
+        when(hardware.getType()).thenReturn("offering-1");
+
+        pool = mock(Pool.class);
+        when(pool.getOptions()).thenReturn(ImmutableMap.of(ProviderOptions.ZONE_ID, "zone-1"));
+        when(pool.getSoftware()).thenReturn(software);
+        when(pool.getHardware()).thenReturn(hardware);
+        when(pool.getExpectedSize()).thenReturn(2);
+
+        execution = mock(DelegateExecution.class);
+        when(execution.getProcessBusinessKey()).thenReturn(BUSINESS_KEY);
+
+        collector = new ProcessVariablesCollector();
+        collector.install(execution);
+    }
+
+    @Test
+    public void testDeploysAllVirtualMachinesWithoutWaiting() {
+        listVirtualMachines();
+        AsyncCreateResponse first = newAsyncCreateResponse("vm-0", "job-0");
+        AsyncCreateResponse second = newAsyncCreateResponse("vm-1", "job-1");
+        when(virtualMachineClient.deployVirtualMachineInZone(eq("zone-1"), eq("offering-1"), eq("template-1"),
+            Matchers.<DeployVirtualMachineOptions>anyVararg())).thenReturn(first, second);
+
+        new RunInstances().execute(client, pool, execution);
+
+        @SuppressWarnings("unchecked")
+        List<String> virtualMachineIds = (List<String>) collector.getVariable(ProcessVariables.VIRTUAL_MACHINE_IDS);
+        assertThat(virtualMachineIds).containsExactly("vm-0", "vm-1");
+
+        @SuppressWarnings("unchecked")
+        Map<String, String> deployJobIds = (Map<String, String>) collector.getVariable(ProcessVariables.DEPLOY_JOB_IDS);
+        assertThat(deployJobIds).isEqualTo(ImmutableMap.of("vm-0", "job-0", "vm-1", "job-1"));
+    }
+
+    @Test
+    public void testVirtualMachinesDeployedByAPreviousAttemptAreKept() {
+        listVirtualMachines(newVirtualMachine("vm-0", "k1-0", VirtualMachine.State.STARTING));
+        AsyncCreateResponse response = newAsyncCreateResponse("vm-1", "job-1");
+        when(virtualMachineClient.deployVirtualMachineInZone(eq("zone-1"), eq("offering-1"), eq("template-1"),
+            Matchers.<DeployVirtualMachineOptions>anyVararg())).thenReturn(response);
+
+        new RunInstances().execute(client, pool, execution);
+
+        verify(virtualMachineClient, times(1)).deployVirtualMachineInZone(eq("zone-1"), eq("offering-1"),
+            eq("template-1"), Matchers.<DeployVirtualMachineOptions>anyVararg());
+
+        @SuppressWarnings("unchecked")
+        List<String> virtualMachineIds = (List<String>) collector.getVariable(ProcessVariables.VIRTUAL_MACHINE_IDS);
+        assertThat(virtualMachineIds).containsExactly("vm-0", "vm-1");
+    }
+
+    private void listVirtualMachines(VirtualMachine... machines) {
+        when(virtualMachineClient.listVirtualMachines(Matchers.<ListVirtualMachinesOptions>anyVararg()))
+            .thenReturn(ImmutableSet.copyOf(machines));
+    }
+
+    static VirtualMachine newVirtualMachine(String id, String name, VirtualMachine.State state) {
+        VirtualMachine machine = mock(VirtualMachine.class);
+        when(machine.getId()).thenReturn(id);
+        when(machine.getName()).thenReturn(name);
+        when(machine.getDisplayName()).thenReturn(BUSINESS_KEY);
+        when(machine.getState()).thenReturn(state);
+        return machine;
+    }
+
+    private AsyncCreateResponse newAsyncCreateResponse(String id, String jobId) {
+        AsyncCreateResponse response = mock(AsyncCreateResponse.class);
+        when(response.getId()).thenReturn(id);
+        when(response.getJobId()).thenReturn(jobId);
+        return response;
+    }
+}
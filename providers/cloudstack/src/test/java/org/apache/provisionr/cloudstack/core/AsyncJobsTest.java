@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.core;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.jclouds.cloudstack.domain.AsyncJob;
+import org.jclouds.cloudstack.features.AsyncJobClient;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class AsyncJobsTest {
+
+    private CloudStackClient client;
+    private AsyncJobClient asyncJobClient;
+
+    @Before
+    public void setUp() {
+        asyncJobClient = mock(AsyncJobClient.class);
+
+        client = mock(CloudStackClient.class);
+        when(client.getAsyncJobClient()).thenReturn(asyncJobClient);
+    }
+
+    @Test
+    public void testAllJobsAreCheckedWithASingleListRequest() {
+        doReturn(ImmutableSet.of(newJob("job-1", true, false), newJob("job-2", false, false)))
+            .when(asyncJobClient).listAsyncJobs();
+
+        assertThat(AsyncJobs.checkAll(client, ImmutableList.of("job-1", "job-2", "job-3")))
+            .containsExactly("job-2", "job-3");
+
+        verify(asyncJobClient, times(1)).listAsyncJobs();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailedJobsAreReported() {
+        doReturn(ImmutableSet.of(newJob("job-1", false, true))).when(asyncJobClient).listAsyncJobs();
+
+        AsyncJobs.checkAll(client, ImmutableList.of("job-1"));
+    }
+
+    @Test
+    public void testNoJobsMakesNoCalls() {
+        assertThat(AsyncJobs.checkAll(client, ImmutableList.<String>of())).isEmpty();
+        verifyZeroInteractions(asyncJobClient);
+    }
+
+    private AsyncJob<?> newJob(String id, boolean succeeded, boolean failed) {
+        AsyncJob<?> job = mock(AsyncJob.class);
+        when(job.getId()).thenReturn(id);
+        when(job.hasSucceed()).thenReturn(succeeded);
+        when(job.hasFailed()).thenReturn(failed);
+        return job;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.provisionr.cloudstack.core;
+
+import org.apache.provisionr.api.provider.Provider;
+import org.apache.provisionr.cloudstack.CloudStackProvisionr;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.jclouds.cloudstack.CloudStackAsyncClient;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.jclouds.rest.RestContext;
+import org.junit.Test;
+
+public class CloudStackContextCacheSupplierTest {
+
+    private final Provider provider = Provider.builder().id(CloudStackProvisionr.ID)
+        .endpoint("http://localhost:8080/client/api").accessKey("access").secretKey("secret").createProvider();
+
+    @Test
+    public void testContextsAreReusedUntilEvicted() {
+        CloudStackContextCache cache = new CloudStackContextCacheSupplier(10, 30).get();
+
+        RestContext<CloudStackClient, CloudStackAsyncClient> first = cache.getUnchecked(provider);
+        assertThat(cache.getUnchecked(provider)).isSameAs(first);
+
+        assertThat(cache.stats().loadCount()).isEqualTo(1);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+
+        cache.invalidateAll();
+        assertThat(cache.getUnchecked(provider)).isNotSameAs(first);
+
+        cache.invalidateAll();
+    }
+}
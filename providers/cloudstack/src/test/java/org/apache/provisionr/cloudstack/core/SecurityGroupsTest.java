@@ -18,13 +18,75 @@
 
 package org.apache.provisionr.cloudstack.core;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.List;
+import org.apache.provisionr.api.network.Network;
+import org.apache.provisionr.api.network.Rule;
 import static org.fest.assertions.api.Assertions.assertThat;
+import org.jclouds.cloudstack.CloudStackClient;
+import org.jclouds.cloudstack.domain.IngressRule;
+import org.jclouds.cloudstack.domain.SecurityGroup;
+import org.jclouds.cloudstack.features.SecurityGroupClient;
+import org.junit.Before;
 import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 public class SecurityGroupsTest {
 
+    private final IngressRule ssh = IngressRule.builder().id("rule-ssh").protocol("tcp")
+        .startPort(22).endPort(22).CIDR("0.0.0.0/0").build();
+
+    private final IngressRule http = IngressRule.builder().id("rule-http").protocol("tcp")
+        .startPort(80).endPort(80).CIDR("0.0.0.0/0").build();
+
+    private CloudStackClient client;
+    private SecurityGroupClient securityGroupClient;
+
+    @Before
+    public void setUp() {
+        client = mock(CloudStackClient.class);
+        securityGroupClient = mock(SecurityGroupClient.class);
+        when(client.getSecurityGroupClient()).thenReturn(securityGroupClient);
+    }
+
     @Test
     public void testSecurityNameFromBusinessProcessKey() throws Exception {
         assertThat(SecurityGroups.formatNameFromBusinessKey("test")).isEqualTo("network-test");
     }
+
+    @Test
+    public void testUnchangedNetworkMakesNoCalls() {
+        SecurityGroup securityGroup = SecurityGroup.builder().id("sg-1").name("network-test")
+            .ingressRules(ImmutableSet.of(ssh)).build();
+
+        List<String> jobIds = SecurityGroups.synchronizeNetworkRules(client, securityGroup, Network.builder()
+            .addRules(Rule.builder().anySource().tcp().port(22).createRule()).createNetwork());
+
+        assertThat(jobIds).isEmpty();
+        verifyZeroInteractions(securityGroupClient);
+    }
+
+    @Test
+    public void testOnlyChangedRulesAreRevokedOrAuthorized() {
+        SecurityGroup securityGroup = SecurityGroup.builder().id("sg-1").name("network-test")
+            .ingressRules(ImmutableSet.of(ssh, http)).build();
+
+        when(securityGroupClient.revokeIngressRule("rule-http")).thenReturn("job-1");
+        when(securityGroupClient.authorizeIngressPortsToCIDRs("sg-1", "TCP", 443, 443,
+            ImmutableList.of("0.0.0.0/0"))).thenReturn("job-2");
+
+        List<String> jobIds = SecurityGroups.synchronizeNetworkRules(client, securityGroup, Network.builder().addRules(
+            Rule.builder().anySource().tcp().port(22).createRule(),
+            Rule.builder().anySource().tcp().port(443).createRule()
+        ).createNetwork());
+
+        verify(securityGroupClient).revokeIngressRule("rule-http");
+        verify(securityGroupClient).authorizeIngressPortsToCIDRs("sg-1", "TCP", 443, 443,
+            ImmutableList.of("0.0.0.0/0"));
+        assertThat(jobIds).containsOnly("job-1", "job-2");
+    }
 }